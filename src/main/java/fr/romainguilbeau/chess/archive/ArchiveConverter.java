@@ -0,0 +1,132 @@
+package fr.romainguilbeau.chess.archive;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.pgn.PgnGame;
+import fr.romainguilbeau.chess.pgn.PgnReader;
+import fr.romainguilbeau.chess.pgn.PgnWriter;
+import fr.romainguilbeau.chess.pgn.San;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * PGN to game archive converter, and back
+ * <p>
+ * Only the start position, the moves and the result are archived : the other PGN tags are dropped. Invalid PGN
+ * games (illegal or ambiguous move, invalid FEN tag) are skipped.
+ * <p>
+ * Usage :
+ * <ul>
+ * <li>{@code ArchiveConverter <in.pgn> <out archive>}</li>
+ * <li>{@code ArchiveConverter --to-pgn <in archive> <out.pgn>}</li>
+ * </ul>
+ */
+public class ArchiveConverter {
+
+    /**
+     * Static entry point only
+     */
+    private ArchiveConverter() {
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args See the class documentation
+     * @throws IOException If a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("--to-pgn")) {
+            toPgn(Paths.get(args[1]), Paths.get(args[2]));
+        } else if (args.length == 2) {
+            toArchive(Paths.get(args[0]), Paths.get(args[1]));
+        } else {
+            System.err.println("Usage: ArchiveConverter <in.pgn> <out archive> | --to-pgn <in archive> <out.pgn>");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Convert a PGN file to a game archive
+     *
+     * @param pgnPath     The PGN file
+     * @param archivePath The archive file
+     * @throws IOException If a file cannot be read or written
+     */
+    public static void toArchive(Path pgnPath, Path archivePath) throws IOException {
+        San san = new San();
+        int[] moves = new int[256];
+        int skipped = 0;
+        long start = System.nanoTime();
+
+        int games;
+        try (PgnReader reader = PgnReader.open(pgnPath);
+             GameArchiveWriter writer = GameArchiveWriter.create(archivePath)) {
+            PgnGame pgnGame;
+            while ((pgnGame = reader.next()) != null) {
+                try {
+                    Game game = pgnGame.createStartGame();
+                    int count = 0;
+                    for (String sanMove : pgnGame.getMoves()) {
+                        int move = san.parse(game, sanMove);
+                        if (move == Move.NONE) {
+                            throw new IllegalArgumentException("Illegal move " + sanMove);
+                        }
+                        if (count == moves.length) {
+                            moves = Arrays.copyOf(moves, moves.length * 2);
+                        }
+                        moves[count++] = move;
+                        game.makeMove(move);
+                    }
+                    writer.write(pgnGame.getTag("FEN"), moves, count, GameArchive.Result.fromPgn(pgnGame.getResult()));
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                }
+            }
+            games = writer.getGameCount();
+        }
+
+        System.out.printf("%d games archived, %d skipped in %.2f s : %d bytes of PGN, %d bytes archived%n", games, skipped,
+                (System.nanoTime() - start) / 1e9, Files.size(pgnPath), Files.size(archivePath));
+    }
+
+    /**
+     * Convert a game archive to a PGN file
+     *
+     * @param archivePath The archive file
+     * @param pgnPath     The PGN file
+     * @throws IOException If a file cannot be read or written
+     */
+    public static void toPgn(Path archivePath, Path pgnPath) throws IOException {
+        GameArchive archive = GameArchive.open(archivePath);
+        San san = new San();
+        Game game = new Game();
+
+        try (PgnWriter writer = PgnWriter.create(pgnPath)) {
+            for (int i = 0; i < archive.size(); i++) {
+                PgnGame pgnGame = new PgnGame();
+                String fen = archive.getStartFen(i);
+                if (fen == null) {
+                    game.reset();
+                } else {
+                    pgnGame.setTag("SetUp", "1");
+                    pgnGame.setTag("FEN", fen);
+                    game.loadFen(fen, false);
+                }
+                int plies = archive.getPlyCount(i);
+                for (int ply = 0; ply < plies; ply++) {
+                    int move = archive.getMove(i, ply);
+                    pgnGame.getMoves().add(san.format(game, move));
+                    game.makeMove(move);
+                }
+                pgnGame.setResult(archive.getResult(i).getPgn());
+                writer.write(pgnGame);
+            }
+        }
+        System.out.printf("%d games exported%n", archive.size());
+    }
+}
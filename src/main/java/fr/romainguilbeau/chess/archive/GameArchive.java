@@ -0,0 +1,338 @@
+package fr.romainguilbeau.chess.archive;
+
+import fr.romainguilbeau.chess.models.game.Game;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary game archive, read through memory mapped segments : any game is replayed without copying nor parsing
+ * <p>
+ * Format (big endian) :
+ * <ul>
+ * <li>Header : magic, version, reserved short, game count, reserved int, index offset (long)</li>
+ * <li>Games : result (byte), flags (byte), ply count (unsigned short), the start position FEN if
+ * {@link #FLAG_START_FEN} (unsigned short length then ASCII), then one encoded {@link fr.romainguilbeau.chess.models.game.Move}
+ * (short) per ply</li>
+ * <li>Index : the offset (long) of each game</li>
+ * </ul>
+ * The moves are trusted : they are played without legality check. Instances are immutable and can be shared
+ * between threads.
+ */
+public class GameArchive {
+
+    /**
+     * File magic ("CHGA")
+     */
+    static final int MAGIC = 0x43484741;
+    /**
+     * Format version
+     */
+    static final short VERSION = 1;
+    /**
+     * Header size, the first game follows
+     */
+    static final int HEADER_SIZE = 24;
+    /**
+     * Offset of the game count in the header
+     */
+    static final int GAME_COUNT_OFFSET = 8;
+    /**
+     * Offset of the index offset in the header
+     */
+    static final int INDEX_OFFSET_OFFSET = 16;
+    /**
+     * Game flag : the game starts from a FEN position
+     */
+    static final int FLAG_START_FEN = 1;
+    /**
+     * Max plies of a game
+     */
+    static final int MAX_PLIES = 0xFFFF;
+    /**
+     * Max length of a start position FEN
+     */
+    static final int MAX_FEN_LENGTH = 255;
+    /**
+     * Max size of a game record
+     */
+    static final int MAX_RECORD_SIZE = 6 + MAX_FEN_LENGTH + 2 * MAX_PLIES;
+    /**
+     * Mapped segment size (power of 2), a mapping is limited to 2 GB
+     */
+    private static final int SEGMENT_SHIFT = 30;
+    /**
+     * Mask of the offset in a segment
+     */
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    /**
+     * Each segment also maps the start of the next one, so that a game record is never split
+     */
+    private static final int SEGMENT_OVERLAP = MAX_RECORD_SIZE;
+    /**
+     * Results by ordinal
+     */
+    private static final Result[] RESULTS = Result.values();
+
+    /**
+     * Mapped segments
+     */
+    private final MappedByteBuffer[] segments;
+    /**
+     * Number of games
+     */
+    private final int gameCount;
+    /**
+     * Offset of the index
+     */
+    private final long indexOffset;
+
+    /**
+     * Create new game archive
+     *
+     * @param segments    Mapped segments
+     * @param gameCount   Number of games
+     * @param indexOffset Offset of the index
+     */
+    private GameArchive(MappedByteBuffer[] segments, int gameCount, long indexOffset) {
+        this.segments = segments;
+        this.gameCount = gameCount;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * Map an archive file (the mapping is released by the garbage collector)
+     *
+     * @param path The file path
+     * @return The archive
+     * @throws IOException If the file cannot be read or is not a valid archive
+     */
+    public static GameArchive open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a game archive: " + path);
+            }
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size - 1) >>> SEGMENT_SHIFT) + 1];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                long length = Math.min(size - start, (1L << SEGMENT_SHIFT) + SEGMENT_OVERLAP);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+
+            MappedByteBuffer header = segments[0];
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a game archive: " + path);
+            }
+            if (header.getShort(4) != VERSION) {
+                throw new IOException("Unsupported game archive version " + header.getShort(4) + ": " + path);
+            }
+            int gameCount = header.getInt(GAME_COUNT_OFFSET);
+            long indexOffset = header.getLong(INDEX_OFFSET_OFFSET);
+            if (gameCount < 0 || indexOffset < HEADER_SIZE || indexOffset + 8L * gameCount > size) {
+                throw new IOException("Truncated game archive: " + path);
+            }
+            return new GameArchive(segments, gameCount, indexOffset);
+        }
+    }
+
+    /**
+     * Get the number of games
+     *
+     * @return The game count
+     */
+    public int size() {
+        return gameCount;
+    }
+
+    /**
+     * Get the result of a game
+     *
+     * @param game The game index
+     * @return The result
+     */
+    public Result getResult(int game) {
+        long offset = gameOffset(game);
+        return RESULTS[segment(offset).get(position(offset))];
+    }
+
+    /**
+     * Get the number of plies of a game
+     *
+     * @param game The game index
+     * @return The ply count
+     */
+    public int getPlyCount(int game) {
+        long offset = gameOffset(game);
+        return segment(offset).getShort(position(offset) + 2) & 0xFFFF;
+    }
+
+    /**
+     * Get the start position of a game
+     *
+     * @param game The game index
+     * @return The start position FEN, null for the initial position
+     */
+    public String getStartFen(int game) {
+        long offset = gameOffset(game);
+        MappedByteBuffer segment = segment(offset);
+        int position = position(offset);
+        if ((segment.get(position + 1) & FLAG_START_FEN) == 0) {
+            return null;
+        }
+        byte[] fen = new byte[segment.getShort(position + 4) & 0xFFFF];
+        for (int i = 0; i < fen.length; i++) {
+            fen[i] = segment.get(position + 6 + i);
+        }
+        return new String(fen, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Get a move of a game
+     *
+     * @param game The game index
+     * @param ply  The ply, from 0 to the ply count (excluded)
+     * @return The encoded move
+     */
+    public int getMove(int game, int ply) {
+        long offset = gameOffset(game);
+        MappedByteBuffer segment = segment(offset);
+        return segment.getShort(movesPosition(segment, position(offset)) + 2 * ply) & 0xFFFF;
+    }
+
+    /**
+     * Replay a whole game
+     *
+     * @param game   The game index
+     * @param target The game receiving the position (reset, its history is cleared)
+     */
+    public void replay(int game, Game target) {
+        replay(game, Integer.MAX_VALUE, target);
+    }
+
+    /**
+     * Replay the start of a game
+     *
+     * @param game   The game index
+     * @param plies  The number of plies to play (capped to the ply count)
+     * @param target The game receiving the position (reset, its history is cleared)
+     */
+    public void replay(int game, int plies, Game target) {
+        long offset = gameOffset(game);
+        MappedByteBuffer segment = segment(offset);
+        int position = position(offset);
+
+        String fen = getStartFen(game);
+        if (fen == null) {
+            target.reset();
+        } else {
+            target.loadFen(fen, false);
+        }
+
+        int count = Math.min(plies, segment.getShort(position + 2) & 0xFFFF);
+        int move = movesPosition(segment, position);
+        for (int ply = 0; ply < count; ply++, move += 2) {
+            target.makeMove(segment.getShort(move) & 0xFFFF);
+        }
+    }
+
+    /**
+     * Get the offset of a game record
+     *
+     * @param game The game index
+     * @return The offset in the file
+     */
+    private long gameOffset(int game) {
+        if (game < 0 || game >= gameCount) {
+            throw new IndexOutOfBoundsException("Game " + game + " of " + gameCount);
+        }
+        long offset = indexOffset + 8L * game;
+        return segment(offset).getLong(position(offset));
+    }
+
+    /**
+     * Get the position of the first move of a game record
+     *
+     * @param segment  The segment of the record
+     * @param position The position of the record in the segment
+     * @return The position of the first move in the segment
+     */
+    private static int movesPosition(MappedByteBuffer segment, int position) {
+        if ((segment.get(position + 1) & FLAG_START_FEN) == 0) {
+            return position + 4;
+        }
+        return position + 6 + (segment.getShort(position + 4) & 0xFFFF);
+    }
+
+    /**
+     * Get the segment mapping an offset
+     *
+     * @param offset The offset in the file
+     * @return The segment
+     */
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)];
+    }
+
+    /**
+     * Get the position of an offset in its segment
+     *
+     * @param offset The offset in the file
+     * @return The position in the segment
+     */
+    private static int position(long offset) {
+        return (int) (offset & SEGMENT_MASK);
+    }
+
+    /**
+     * Game results, stored by ordinal
+     */
+    public enum Result {
+        UNKNOWN("*"),
+        WHITE_WIN("1-0"),
+        BLACK_WIN("0-1"),
+        DRAW("1/2-1/2");
+
+        /**
+         * PGN game termination marker
+         */
+        private final String pgn;
+
+        /**
+         * Create new result
+         *
+         * @param pgn PGN game termination marker
+         */
+        Result(String pgn) {
+            this.pgn = pgn;
+        }
+
+        /**
+         * Get the PGN game termination marker
+         *
+         * @return "1-0", "0-1", "1/2-1/2" or "*"
+         */
+        public String getPgn() {
+            return pgn;
+        }
+
+        /**
+         * Get the result of a PGN game termination marker
+         *
+         * @param pgn The game termination marker
+         * @return The result, UNKNOWN if not a termination marker
+         */
+        public static Result fromPgn(String pgn) {
+            for (Result result : values()) {
+                if (result.pgn.equals(pgn)) {
+                    return result;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package fr.romainguilbeau.chess.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Game archive writer : appends the games then writes the index and the header on close (see {@link GameArchive}
+ * for the format)
+ */
+public class GameArchiveWriter implements Closeable {
+
+    /**
+     * Size of the write buffer
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Initial capacity of the index
+     */
+    private static final int INDEX_INITIAL_CAPACITY = 1024;
+
+    /**
+     * The archive file
+     */
+    private final FileChannel channel;
+    /**
+     * Bytes not yet written
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Offset of each game
+     */
+    private long[] index;
+    /**
+     * Number of games
+     */
+    private int gameCount;
+    /**
+     * Offset of the first buffered byte
+     */
+    private long bufferOffset;
+
+    /**
+     * Create new game archive writer
+     *
+     * @param channel The archive file, written from its start
+     * @throws IOException If the file cannot be written
+     */
+    public GameArchiveWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.index = new long[INDEX_INITIAL_CAPACITY];
+        this.gameCount = 0;
+        this.bufferOffset = 0L;
+
+        // Header written again on close
+        channel.position(0L);
+        buffer.put(new byte[GameArchive.HEADER_SIZE]);
+    }
+
+    /**
+     * Create an archive file (replaced if it exists)
+     *
+     * @param path The file path
+     * @return The new game archive writer
+     * @throws IOException If the file cannot be created
+     */
+    public static GameArchiveWriter create(Path path) throws IOException {
+        return new GameArchiveWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Append a game
+     *
+     * @param startFen The start position FEN, null for the initial position
+     * @param moves    The encoded moves
+     * @param count    The number of moves
+     * @param result   The result
+     * @throws IOException              If the file cannot be written
+     * @throws IllegalArgumentException If more than 65535 moves, or if the FEN is not ASCII or longer than 255 chars
+     */
+    public void write(String startFen, int[] moves, int count, GameArchive.Result result) throws IOException, IllegalArgumentException {
+        if (count > GameArchive.MAX_PLIES) {
+            throw new IllegalArgumentException("Too many moves: " + count);
+        }
+        if (startFen != null && (startFen.length() > GameArchive.MAX_FEN_LENGTH || !isAscii(startFen))) {
+            throw new IllegalArgumentException("Invalid start position: " + startFen);
+        }
+
+        if (gameCount == index.length) {
+            index = Arrays.copyOf(index, index.length * 2);
+        }
+        index[gameCount++] = bufferOffset + buffer.position();
+
+        ensureRemaining(6);
+        buffer.put((byte) result.ordinal());
+        buffer.put((byte) (startFen == null ? 0 : GameArchive.FLAG_START_FEN));
+        buffer.putShort((short) count);
+        if (startFen != null) {
+            buffer.putShort((short) startFen.length());
+            for (int i = 0; i < startFen.length(); i++) {
+                ensureRemaining(1);
+                buffer.put((byte) startFen.charAt(i));
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            ensureRemaining(2);
+            buffer.putShort((short) moves[i]);
+        }
+    }
+
+    /**
+     * Get the number of written games
+     *
+     * @return The game count
+     */
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Write the index and the header, then close the file
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = bufferOffset + buffer.position();
+            for (int i = 0; i < gameCount; i++) {
+                ensureRemaining(8);
+                buffer.putLong(index[i]);
+            }
+            flush();
+
+            buffer.putInt(GameArchive.MAGIC);
+            buffer.putShort(GameArchive.VERSION);
+            buffer.putShort((short) 0);
+            buffer.putInt(gameCount);
+            buffer.putInt(0);
+            buffer.putLong(indexOffset);
+            buffer.flip();
+            long position = 0L;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Make room in the buffer
+     *
+     * @param bytes The bytes to put
+     * @throws IOException If the file cannot be written
+     */
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the buffered bytes
+     *
+     * @throws IOException If the file cannot be written
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bufferOffset += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Check if a string is ASCII
+     *
+     * @param value The string
+     * @return true if all chars are ASCII
+     */
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
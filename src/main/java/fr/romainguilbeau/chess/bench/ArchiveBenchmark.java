@@ -0,0 +1,126 @@
+package fr.romainguilbeau.chess.bench;
+
+import fr.romainguilbeau.chess.archive.GameArchive;
+import fr.romainguilbeau.chess.models.game.Game;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Game archive read benchmark : raw move decoding, sequential replay and random access replay, in games and moves
+ * per second
+ * <p>
+ * Usage : {@code ArchiveBenchmark <archive> [threads=1] [random games=100000]}
+ */
+public class ArchiveBenchmark {
+
+    /**
+     * Static entry point only
+     */
+    private ArchiveBenchmark() {
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args See the class documentation
+     * @throws Exception If the benchmark cannot run
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: ArchiveBenchmark <archive> [threads=1] [random games=100000]");
+            System.exit(2);
+        }
+        GameArchive archive = GameArchive.open(Paths.get(args[0]));
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int randomGames = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        if (archive.size() == 0) {
+            System.out.println("Empty archive");
+            return;
+        }
+
+        // Warm-up
+        run(archive, threads, Mode.REPLAY, Math.min(archive.size(), 10000));
+
+        for (Mode mode : Mode.values()) {
+            int games = mode == Mode.RANDOM ? randomGames : archive.size();
+            long start = System.nanoTime();
+            long moves = run(archive, threads, mode, games);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-8s : %d games, %d moves in %.2f s, %.0f games/s, %.0f moves/s%n", mode, games, moves, seconds,
+                    games / seconds, moves / seconds);
+        }
+    }
+
+    /**
+     * Read games on several threads
+     *
+     * @param archive The archive
+     * @param threads The number of threads
+     * @param mode    The read mode
+     * @param games   The number of games to read
+     * @return The number of read moves
+     * @throws InterruptedException If interrupted while waiting for the threads
+     */
+    private static long run(GameArchive archive, int threads, Mode mode, int games) throws InterruptedException {
+        AtomicLong moves = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = (int) ((long) games * t / threads);
+            int last = (int) ((long) games * (t + 1) / threads);
+            long seed = t;
+            workers[t] = new Thread(() -> moves.addAndGet(read(archive, mode, first, last, seed)), "archive-bench-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return moves.get();
+    }
+
+    /**
+     * Read a range of games
+     *
+     * @param archive The archive
+     * @param mode    The read mode
+     * @param first   The first game (or the first draw in random mode)
+     * @param last    The last game, excluded
+     * @param seed    The seed of the random games
+     * @return The number of read moves
+     */
+    private static long read(GameArchive archive, Mode mode, int first, int last, long seed) {
+        Game game = new Game();
+        SplittableRandom random = new SplittableRandom(seed);
+        long moves = 0;
+        long checksum = 0;
+        for (int i = first; i < last; i++) {
+            int index = mode == Mode.RANDOM ? random.nextInt(archive.size()) : i;
+            int plies = archive.getPlyCount(index);
+            if (mode == Mode.DECODE) {
+                for (int ply = 0; ply < plies; ply++) {
+                    checksum += archive.getMove(index, ply);
+                }
+            } else {
+                archive.replay(index, game);
+                checksum += game.getPositionKey();
+            }
+            moves += plies;
+        }
+        // Keeps the reads alive
+        if (checksum == 42) {
+            System.out.print("");
+        }
+        return moves;
+    }
+
+    /**
+     * Read modes
+     */
+    private enum Mode {
+        DECODE,
+        REPLAY,
+        RANDOM
+    }
+}
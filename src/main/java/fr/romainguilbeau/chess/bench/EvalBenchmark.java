@@ -0,0 +1,116 @@
+package fr.romainguilbeau.chess.bench;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.MoveList;
+import fr.romainguilbeau.chess.search.Evaluator;
+
+import java.util.Random;
+
+/**
+ * Evaluation benchmark : evaluations per second from the game accumulators against a full recompute over the chess
+ * pieces, on positions of random games (the two evaluations are checked to be equal)
+ * <p>
+ * Usage : {@code EvalBenchmark [positions] [passes]}
+ */
+public class EvalBenchmark {
+
+    /**
+     * Default number of positions
+     */
+    private static final int DEFAULT_POSITIONS = 10_000;
+    /**
+     * Default number of passes over the positions
+     */
+    private static final int DEFAULT_PASSES = 20;
+    /**
+     * Max plies of a random game
+     */
+    private static final int MAX_PLIES = 120;
+    /**
+     * Fixed seed, the positions must be the same on every run
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Static entry point only
+     */
+    private EvalBenchmark() {
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args {@code [positions] [passes]}
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_POSITIONS;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PASSES;
+
+        Game[] positions = randomPositions(count);
+        for (Game position : positions) {
+            if (Evaluator.evaluate(position) != Evaluator.evaluateFromScratch(position)) {
+                System.err.println("Accumulator mismatch: " + position.toFen());
+                System.exit(1);
+            }
+        }
+
+        // Warm up (JIT compilation)
+        measure(positions, 2, false);
+        measure(positions, 2, true);
+
+        long incremental = measure(positions, passes, false);
+        long fromScratch = measure(positions, passes, true);
+        System.out.printf("%d positions, %d passes%n", count, passes);
+        System.out.printf("Accumulators : %,d evals/s%n", incremental);
+        System.out.printf("Full recompute : %,d evals/s (%.1fx slower)%n", fromScratch, (double) incremental / fromScratch);
+    }
+
+    /**
+     * Evaluate all the positions several times
+     *
+     * @param positions   The positions
+     * @param passes      The number of passes
+     * @param fromScratch true for the full recompute
+     * @return The evaluations per second
+     */
+    private static long measure(Game[] positions, int passes, boolean fromScratch) {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            for (Game position : positions) {
+                checksum += fromScratch ? Evaluator.evaluateFromScratch(position) : Evaluator.evaluate(position);
+            }
+        }
+        long nanos = Math.max(1, System.nanoTime() - start);
+        if (checksum == Long.MIN_VALUE) {
+            // Keeps the evaluations alive
+            System.out.println(checksum);
+        }
+        return (long) positions.length * passes * 1_000_000_000L / nanos;
+    }
+
+    /**
+     * Play random legal games and keep one position of each
+     *
+     * @param count The number of positions
+     * @return The positions
+     */
+    private static Game[] randomPositions(int count) {
+        Random random = new Random(SEED);
+        MoveList moves = new MoveList();
+        Game[] positions = new Game[count];
+        for (int i = 0; i < count; i++) {
+            Game game = new Game();
+            int plies = random.nextInt(MAX_PLIES);
+            for (int ply = 0; ply < plies; ply++) {
+                game.generateLegalMoves(moves);
+                if (moves.size() == 0) {
+                    break;
+                }
+                game.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            positions[i] = game;
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,249 @@
+package fr.romainguilbeau.chess.bench;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * FEN / EPD parsing benchmark : loads every line of an EPD file into one reused game, in positions per second
+ * <p>
+ * Usage :
+ * <ul>
+ * <li>{@code FenBenchmark <file> [passes]} : parse the file (and write back each position in FEN)</li>
+ * <li>{@code FenBenchmark --generate <positions> <file>} : write random positions reached by random legal games</li>
+ * </ul>
+ */
+public class FenBenchmark {
+
+    /**
+     * Size of the read chunks
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    /**
+     * Default number of passes over the file
+     */
+    private static final int DEFAULT_PASSES = 3;
+    /**
+     * Max plies of the random games of the generated positions
+     */
+    private static final int MAX_GENERATED_PLIES = 120;
+
+    /**
+     * Static entry point only
+     */
+    private FenBenchmark() {
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args See the class documentation
+     * @throws IOException If the file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: FenBenchmark <file> [passes] | --generate <positions> <file>");
+            System.exit(2);
+        }
+        if (args[0].equals("--generate")) {
+            generate(Integer.parseInt(args[1]), Paths.get(args[2]));
+            return;
+        }
+
+        Path path = Paths.get(args[0]);
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PASSES;
+        Game game = new Game();
+        AsciiLine line = new AsciiLine();
+        StringBuilder fen = new StringBuilder(128);
+
+        for (int pass = 1; pass <= passes; pass++) {
+            long positions = 0;
+            long errors = 0;
+            long checksum = 0;
+            long parseNanos = 0;
+            long writeNanos = 0;
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                byte[] bytes = buffer.array();
+                while (channel.read(buffer) >= 0 || buffer.position() > 0) {
+                    int end = buffer.position();
+                    int start = 0;
+                    long parseStart = System.nanoTime();
+                    for (int i = 0; i < end; i++) {
+                        if (bytes[i] != '\n') {
+                            continue;
+                        }
+                        line.set(bytes, start, i > start && bytes[i - 1] == '\r' ? i - 1 : i);
+                        start = i + 1;
+                        if (line.length() == 0) {
+                            continue;
+                        }
+                        try {
+                            game.loadFen(line, true);
+                            checksum += game.getPositionKey();
+                            positions++;
+                        } catch (IllegalArgumentException e) {
+                            errors++;
+                        }
+                    }
+                    parseNanos += System.nanoTime() - parseStart;
+
+                    if (start == 0 && end == bytes.length) {
+                        throw new IOException("Line longer than " + CHUNK_SIZE + " bytes");
+                    }
+                    // Last line without line feed
+                    if (start < end && buffer.position() == end && channel.position() == channel.size()) {
+                        line.set(bytes, start, end);
+                        try {
+                            game.loadFen(line, true);
+                            checksum += game.getPositionKey();
+                            positions++;
+                        } catch (IllegalArgumentException e) {
+                            errors++;
+                        }
+                        start = end;
+                    }
+                    System.arraycopy(bytes, start, bytes, 0, end - start);
+                    buffer.position(end - start);
+                    if (end - start == 0 && channel.position() == channel.size()) {
+                        break;
+                    }
+                }
+            }
+
+            // Export speed, on the last loaded position
+            long writeStart = System.nanoTime();
+            for (long i = 0; i < positions; i++) {
+                fen.setLength(0);
+                game.appendFen(fen);
+            }
+            writeNanos += System.nanoTime() - writeStart;
+
+            System.out.printf("Pass %d : %d positions, %d errors, parse %.0f positions/s, toFen %.0f positions/s (checksum %x)%n",
+                    pass, positions, errors, positions / (parseNanos / 1e9), positions / Math.max(writeNanos / 1e9, 1e-9), checksum);
+        }
+    }
+
+    /**
+     * Write random positions in EPD
+     *
+     * @param count The number of positions
+     * @param path  The EPD file
+     * @throws IOException If the file cannot be written
+     */
+    private static void generate(int count, Path path) throws IOException {
+        SplittableRandom random = new SplittableRandom(7);
+        MoveList moves = new MoveList();
+        StringBuilder fen = new StringBuilder(128);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < count; i++) {
+                Game game = new Game();
+                int plies = random.nextInt(MAX_GENERATED_PLIES);
+                for (int ply = 0; ply < plies; ply++) {
+                    int move = randomLegalMove(game, moves, random);
+                    if (move == Move.NONE) {
+                        break;
+                    }
+                    game.makeMove(move);
+                }
+                fen.setLength(0);
+                game.appendFen(fen);
+                // EPD : four FEN fields then the operations
+                fen.setLength(fen.length() - 4);
+                fen.append(" id \"random.").append(i + 1).append("\";\n");
+                writer.append(fen);
+            }
+        }
+    }
+
+    /**
+     * Pick a random legal move
+     *
+     * @param game   The game
+     * @param moves  The move list
+     * @param random The random generator
+     * @return The encoded move, {@link Move#NONE} if no legal move
+     */
+    private static int randomLegalMove(Game game, MoveList moves, SplittableRandom random) {
+        game.generateMoves(moves);
+        Game.ChessColor color = game.getColorTurn();
+        int size = moves.size();
+        while (size > 0) {
+            int index = random.nextInt(size);
+            int move = moves.get(index);
+            game.makeMove(move);
+            boolean legal = !game.isInCheck(color);
+            game.unmakeMove();
+            if (legal) {
+                return move;
+            }
+            moves.set(index, moves.get(--size));
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Reusable view of an ASCII line of a byte buffer (no copy, no allocation)
+     */
+    private static class AsciiLine implements CharSequence {
+
+        /**
+         * The bytes
+         */
+        private byte[] bytes;
+        /**
+         * First byte of the line
+         */
+        private int start;
+        /**
+         * End of the line (excluded)
+         */
+        private int end;
+
+        /**
+         * Point to another line
+         *
+         * @param bytes The bytes
+         * @param start The first byte
+         * @param end   The end (excluded)
+         */
+        void set(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[start + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(bytes, start + from, to - from, StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+        }
+    }
+}
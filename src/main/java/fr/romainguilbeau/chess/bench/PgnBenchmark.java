@@ -0,0 +1,231 @@
+package fr.romainguilbeau.chess.bench;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+import fr.romainguilbeau.chess.pgn.PgnGame;
+import fr.romainguilbeau.chess.pgn.PgnReader;
+import fr.romainguilbeau.chess.pgn.PgnWriter;
+import fr.romainguilbeau.chess.pgn.San;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PGN import benchmark : parses a PGN file and replays every game, in games per second
+ * <p>
+ * Usage :
+ * <ul>
+ * <li>{@code PgnBenchmark <file>} : parse and replay on the same thread</li>
+ * <li>{@code PgnBenchmark <file> --pipelined [replay threads]} : parse on one thread, replay on others</li>
+ * <li>{@code PgnBenchmark --generate <games> <file>} : write random legal games (test input, exercises the writer)</li>
+ * </ul>
+ */
+public class PgnBenchmark {
+
+    /**
+     * Max plies of a generated game
+     */
+    private static final int MAX_GENERATED_PLIES = 160;
+    /**
+     * Parsed games waiting to be replayed (pipelined mode)
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+    /**
+     * End of input marker of the pipelined mode
+     */
+    private static final PgnGame END = new PgnGame();
+
+    /**
+     * Static entry point only
+     */
+    private PgnBenchmark() {
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args See the class documentation
+     * @throws Exception If the benchmark cannot run
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: PgnBenchmark <file> [--pipelined [replay threads]] | --generate <games> <file>");
+            System.exit(2);
+        }
+        if (args[0].equals("--generate")) {
+            generate(Integer.parseInt(args[1]), Paths.get(args[2]));
+            return;
+        }
+
+        Path path = Paths.get(args[0]);
+        boolean pipelined = args.length > 1 && args[1].equals("--pipelined");
+        int replayThreads = pipelined && args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        AtomicLong games = new AtomicLong();
+        AtomicLong moves = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        long bytes = pipelined ? replayPipelined(path, replayThreads, games, moves, errors) : replay(path, games, moves, errors);
+        long nanos = System.nanoTime() - start;
+
+        double seconds = nanos / 1e9;
+        System.out.printf("%s : %d games, %d moves, %d errors in %.2f s%n", pipelined ? "Pipelined (" + replayThreads + " replay threads)" : "Sequential",
+                games.get(), moves.get(), errors.get(), seconds);
+        System.out.printf("%.0f games/s, %.0f moves/s, %.1f MB/s%n", games.get() / seconds, moves.get() / seconds, bytes / seconds / (1024 * 1024));
+    }
+
+    /**
+     * Parse and replay on the current thread
+     *
+     * @param path   The PGN file
+     * @param games  The games counter
+     * @param moves  The moves counter
+     * @param errors The invalid games counter
+     * @return The bytes read
+     * @throws IOException If the file cannot be read
+     */
+    private static long replay(Path path, AtomicLong games, AtomicLong moves, AtomicLong errors) throws IOException {
+        San san = new San();
+        try (PgnReader reader = PgnReader.open(path)) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                replayGame(game, san, games, moves, errors);
+            }
+            return reader.getBytesRead();
+        }
+    }
+
+    /**
+     * Parse on the current thread and replay on other threads
+     *
+     * @param path          The PGN file
+     * @param replayThreads The number of replay threads
+     * @param games         The games counter
+     * @param moves         The moves counter
+     * @param errors        The invalid games counter
+     * @return The bytes read
+     * @throws IOException          If the file cannot be read
+     * @throws InterruptedException If interrupted while waiting for the replay threads
+     */
+    private static long replayPipelined(Path path, int replayThreads, AtomicLong games, AtomicLong moves, AtomicLong errors)
+            throws IOException, InterruptedException {
+        BlockingQueue<PgnGame> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Thread[] threads = new Thread[replayThreads];
+        for (int i = 0; i < replayThreads; i++) {
+            threads[i] = new Thread(() -> {
+                San san = new San();
+                try {
+                    PgnGame game;
+                    while ((game = queue.take()) != END) {
+                        replayGame(game, san, games, moves, errors);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "pgn-replay-" + i);
+            threads[i].start();
+        }
+
+        long bytes;
+        try (PgnReader reader = PgnReader.open(path)) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                queue.put(game);
+            }
+            bytes = reader.getBytesRead();
+        } finally {
+            for (int i = 0; i < replayThreads; i++) {
+                queue.put(END);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return bytes;
+    }
+
+    /**
+     * Replay one game and count it
+     *
+     * @param game   The game
+     * @param san    The SAN converter of the thread
+     * @param games  The games counter
+     * @param moves  The moves counter
+     * @param errors The invalid games counter
+     */
+    private static void replayGame(PgnGame game, San san, AtomicLong games, AtomicLong moves, AtomicLong errors) {
+        try {
+            game.replay(san);
+        } catch (IllegalArgumentException e) {
+            errors.incrementAndGet();
+        }
+        games.incrementAndGet();
+        moves.addAndGet(game.getMoves().size());
+    }
+
+    /**
+     * Write random legal games
+     *
+     * @param count The number of games
+     * @param path  The PGN file
+     * @throws IOException If the file cannot be written
+     */
+    private static void generate(int count, Path path) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        San san = new San();
+        MoveList moves = new MoveList();
+
+        try (PgnWriter writer = PgnWriter.create(path)) {
+            for (int i = 0; i < count; i++) {
+                PgnGame pgnGame = new PgnGame();
+                pgnGame.setTag("Event", "Random game");
+                pgnGame.setTag("Round", String.valueOf(i + 1));
+                Game game = new Game();
+
+                for (int ply = 0; ply < MAX_GENERATED_PLIES && game.getGameStatus() == Game.GameStatus.IN_GAME; ply++) {
+                    int move = randomLegalMove(game, moves, random);
+                    if (move == Move.NONE) {
+                        boolean mated = game.isInCheck(game.getColorTurn());
+                        pgnGame.setResult(!mated ? "1/2-1/2" : game.getColorTurn() == Game.ChessColor.WHITE ? "0-1" : "1-0");
+                        break;
+                    }
+                    pgnGame.getMoves().add(san.format(game, move));
+                    game.play(move);
+                }
+                writer.write(pgnGame);
+            }
+        }
+    }
+
+    /**
+     * Pick a random legal move
+     *
+     * @param game   The game
+     * @param moves  The move list
+     * @param random The random generator
+     * @return The encoded move, {@link Move#NONE} if no legal move
+     */
+    private static int randomLegalMove(Game game, MoveList moves, SplittableRandom random) {
+        game.generateMoves(moves);
+        Game.ChessColor color = game.getColorTurn();
+        int size = moves.size();
+        while (size > 0) {
+            int index = random.nextInt(size);
+            int move = moves.get(index);
+            game.makeMove(move);
+            boolean legal = !game.isInCheck(color);
+            game.unmakeMove();
+            if (legal) {
+                return move;
+            }
+            moves.set(index, moves.get(--size));
+        }
+        return Move.NONE;
+    }
+}
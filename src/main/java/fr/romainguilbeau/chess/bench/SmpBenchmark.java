@@ -0,0 +1,88 @@
+package fr.romainguilbeau.chess.bench;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.perft.PerftPosition;
+import fr.romainguilbeau.chess.search.SearchResult;
+import fr.romainguilbeau.chess.search.SmpSearch;
+import fr.romainguilbeau.chess.search.TranspositionTable;
+
+/**
+ * Multi-threaded search benchmark : searches the reference positions with 1, 2, 4, 8... threads and prints the
+ * nodes per second speedup
+ * <p>
+ * Usage : {@code SmpBenchmark [max threads] [milliseconds per position] [hash MB]}
+ */
+public class SmpBenchmark {
+
+    /**
+     * Default search time per position
+     */
+    private static final long DEFAULT_MILLIS = 1000;
+    /**
+     * Default hash table size
+     */
+    private static final int DEFAULT_HASH_MEGABYTES = 256;
+    /**
+     * Default max threads
+     */
+    private static final int DEFAULT_MAX_THREADS = 16;
+
+    /**
+     * Static entry point only
+     */
+    private SmpBenchmark() {
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args {@code [max threads] [milliseconds per position] [hash MB]}
+     */
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_THREADS;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_MILLIS;
+        int hashMegabytes = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_HASH_MEGABYTES;
+
+        System.out.printf("Available processors : %d, %d ms per position, %d MB hash%n",
+                Runtime.getRuntime().availableProcessors(), millis, hashMegabytes);
+        System.out.printf("%8s %14s %12s %10s %10s%n", "threads", "nodes", "nps", "speedup", "avg depth");
+
+        TranspositionTable transpositionTable = new TranspositionTable(hashMegabytes);
+
+        // Warm up (JIT compilation) so the single-threaded reference is not penalized
+        SmpSearch warmUp = new SmpSearch(transpositionTable, 1);
+        for (PerftPosition position : PerftPosition.values()) {
+            warmUp.resetStop();
+            warmUp.search(Game.fromFen(position.getFen()), Integer.MAX_VALUE, millis / 2);
+        }
+        warmUp.shutdown();
+
+        long baseNodesPerSecond = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            SmpSearch search = new SmpSearch(transpositionTable, threads);
+            long nodes = 0;
+            long timeMillis = 0;
+            int depths = 0;
+
+            for (PerftPosition position : PerftPosition.values()) {
+                transpositionTable.clear();
+                Game game = Game.fromFen(position.getFen());
+                long start = System.nanoTime();
+                search.resetStop();
+                SearchResult result = search.search(game, Integer.MAX_VALUE, millis);
+                timeMillis += (System.nanoTime() - start) / 1_000_000;
+                nodes += result.getNodes();
+                depths += result.getDepth();
+            }
+            search.shutdown();
+
+            long nodesPerSecond = timeMillis == 0 ? 0 : nodes * 1000 / timeMillis;
+            if (threads == 1) {
+                baseNodesPerSecond = nodesPerSecond;
+            }
+            System.out.printf("%8d %14d %12d %9.2fx %10.1f%n", threads, nodes, nodesPerSecond,
+                    baseNodesPerSecond == 0 ? 0.0 : (double) nodesPerSecond / baseNodesPerSecond,
+                    (double) depths / PerftPosition.values().length);
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package fr.romainguilbeau.chess.book;
+
+import fr.romainguilbeau.chess.archive.GameArchive;
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.pgn.PgnGame;
+import fr.romainguilbeau.chess.pgn.PgnReader;
+import fr.romainguilbeau.chess.pgn.San;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Opening book builder : collects the (position, move) pairs of the first plies of many games and writes an
+ * {@link OpeningBook}
+ * <p>
+ * The pairs are sorted by external merge sort : the memory buffer is sorted and spilled to a run file when full,
+ * then the runs are merged, so the number of games is not limited by the heap. The weight of a move is the sum of
+ * its results for the side that played it (2 per win, 1 per draw or unknown result, 0 per loss), scaled down to 16
+ * bits per position if needed.
+ * <p>
+ * Usage : {@code BookBuilder <in.pgn | in archive>... <out.bin> [--plies n=20] [--min-games n=1] [--memory MB=64]}
+ */
+public class BookBuilder {
+
+    /**
+     * Default number of plies of each game in the book
+     */
+    public static final int DEFAULT_MAX_PLIES = 20;
+    /**
+     * Default memory buffer size
+     */
+    public static final int DEFAULT_MEMORY_MEGABYTES = 64;
+    /**
+     * Size of a buffered pair (key and value)
+     */
+    private static final int PAIR_SIZE = 16;
+    /**
+     * Size of the run file streams buffers
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Pair value : shift of the book move
+     */
+    private static final int MOVE_SHIFT = 48;
+    /**
+     * Pair value : shift of the game count
+     */
+    private static final int COUNT_SHIFT = 32;
+    /**
+     * Max game count and max weight of an entry
+     */
+    private static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+    /**
+     * Sub-arrays below this size are sorted by insertion
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Number of plies of each game in the book
+     */
+    private final int maxPlies;
+    /**
+     * Min number of games of a book move
+     */
+    private final int minGames;
+    /**
+     * Directory of the run files
+     */
+    private final Path tempDirectory;
+    /**
+     * Buffered position keys
+     */
+    private final long[] keys;
+    /**
+     * Buffered values : book move, game count and weight
+     */
+    private final long[] values;
+    /**
+     * Number of buffered pairs
+     */
+    private int size;
+    /**
+     * Spilled run files
+     */
+    private final List<Path> runs;
+
+    /**
+     * Create new opening book builder
+     *
+     * @param maxPlies        Number of plies of each game in the book
+     * @param minGames        Min number of games of a book move
+     * @param memoryMegabytes Memory buffer size
+     * @param tempDirectory   Directory of the run files
+     */
+    public BookBuilder(int maxPlies, int minGames, int memoryMegabytes, Path tempDirectory) {
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) memoryMegabytes * 1024 * 1024 / PAIR_SIZE);
+        this.maxPlies = maxPlies;
+        this.minGames = minGames;
+        this.tempDirectory = tempDirectory;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.size = 0;
+        this.runs = new ArrayList<>();
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args See the class documentation
+     * @throws IOException If a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        int maxPlies = DEFAULT_MAX_PLIES;
+        int minGames = 1;
+        int memoryMegabytes = DEFAULT_MEMORY_MEGABYTES;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--plies") && i + 1 < args.length) {
+                maxPlies = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--min-games") && i + 1 < args.length) {
+                minGames = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--memory") && i + 1 < args.length) {
+                memoryMegabytes = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(Paths.get(args[i]));
+            }
+        }
+        if (paths.size() < 2) {
+            System.err.println("Usage: BookBuilder <in.pgn | in archive>... <out.bin> [--plies n] [--min-games n] [--memory MB]");
+            System.exit(2);
+        }
+
+        Path bookPath = paths.remove(paths.size() - 1).toAbsolutePath();
+        BookBuilder builder = new BookBuilder(maxPlies, minGames, memoryMegabytes, bookPath.getParent());
+        long start = System.nanoTime();
+        int games = 0;
+        for (Path path : paths) {
+            games += path.toString().toLowerCase().endsWith(".pgn") ? builder.addPgn(path) : builder.addArchive(path);
+        }
+        int runCount = builder.runs.size() + (builder.size > 0 ? 1 : 0);
+        int entries = builder.write(bookPath);
+        System.out.printf("%d games, %d book entries, %d runs in %.2f s%n", games, entries, runCount, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Add the games of a PGN file (invalid games are skipped)
+     *
+     * @param path The PGN file
+     * @return The number of added games
+     * @throws IOException If a file cannot be read or written
+     */
+    public int addPgn(Path path) throws IOException {
+        San san = new San();
+        int[] moves = new int[maxPlies];
+        int games = 0;
+        try (PgnReader reader = PgnReader.open(path)) {
+            PgnGame pgnGame;
+            while ((pgnGame = reader.next()) != null) {
+                Game game;
+                int count = 0;
+                try {
+                    game = pgnGame.createStartGame();
+                    for (String sanMove : pgnGame.getMoves()) {
+                        if (count == maxPlies) {
+                            break;
+                        }
+                        int move = san.parse(game, sanMove);
+                        if (move == Move.NONE) {
+                            throw new IllegalArgumentException("Illegal move " + sanMove);
+                        }
+                        moves[count++] = move;
+                        game.makeMove(move);
+                    }
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                addGame(pgnGame.createStartGame(), moves, count, GameArchive.Result.fromPgn(pgnGame.getResult()));
+                games++;
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Add the games of a game archive
+     *
+     * @param path The archive file
+     * @return The number of added games
+     * @throws IOException If a file cannot be read or written
+     */
+    public int addArchive(Path path) throws IOException {
+        GameArchive archive = GameArchive.open(path);
+        Game game = new Game();
+        int[] moves = new int[maxPlies];
+        for (int i = 0; i < archive.size(); i++) {
+            String fen = archive.getStartFen(i);
+            if (fen == null) {
+                game.reset();
+            } else {
+                game.loadFen(fen, false);
+            }
+            int count = Math.min(maxPlies, archive.getPlyCount(i));
+            for (int ply = 0; ply < count; ply++) {
+                moves[ply] = archive.getMove(i, ply);
+            }
+            addGame(game, moves, count, archive.getResult(i));
+        }
+        return archive.size();
+    }
+
+    /**
+     * Add the first plies of a game
+     *
+     * @param game   The start position, the moves are played on it
+     * @param moves  The encoded moves (legal)
+     * @param count  The number of moves
+     * @param result The game result
+     * @throws IOException If a run file cannot be written
+     */
+    public void addGame(Game game, int[] moves, int count, GameArchive.Result result) throws IOException {
+        for (int ply = 0; ply < Math.min(count, maxPlies); ply++) {
+            if (size == keys.length) {
+                spill();
+            }
+            keys[size] = PolyglotKey.of(game);
+            values[size] = (long) OpeningBook.toBookMove(moves[ply]) << MOVE_SHIFT | 1L << COUNT_SHIFT
+                    | weight(result, game.getColorTurn());
+            size++;
+            game.makeMove(moves[ply]);
+        }
+    }
+
+    /**
+     * Merge the runs and write the book (the run files are deleted)
+     *
+     * @param path The book file
+     * @return The number of book entries
+     * @throws IOException If a file cannot be read or written
+     */
+    public int write(Path path) throws IOException {
+        if (size > 0) {
+            spill();
+        }
+        int entries = 0;
+        DataInputStream[] inputs = new DataInputStream[runs.size()];
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), STREAM_BUFFER_SIZE))) {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(i)), STREAM_BUFFER_SIZE));
+            }
+            entries = merge(inputs, output);
+        } finally {
+            for (DataInputStream input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Merge sorted runs into book entries (k-way merge on a binary heap of the runs)
+     *
+     * @param inputs The runs
+     * @param output The book
+     * @return The number of book entries
+     * @throws IOException If a file cannot be read or written
+     */
+    private int merge(DataInputStream[] inputs, DataOutputStream output) throws IOException {
+        long[] headKeys = new long[inputs.length];
+        long[] headValues = new long[inputs.length];
+        int[] heap = new int[inputs.length];
+        int heapSize = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            if (readPair(inputs[i], headKeys, headValues, i)) {
+                heap[heapSize++] = i;
+                siftUp(heap, heapSize - 1, headKeys, headValues);
+            }
+        }
+
+        PositionEntries position = new PositionEntries();
+        int entries = 0;
+        while (heapSize > 0) {
+            int run = heap[0];
+            long key = headKeys[run];
+            long value = headValues[run];
+            if (position.size > 0 && position.key != key) {
+                entries += position.write(output, minGames);
+            }
+            position.add(key, value);
+
+            if (readPair(inputs[run], headKeys, headValues, run)) {
+                siftDown(heap, heapSize, 0, headKeys, headValues);
+            } else {
+                heap[0] = heap[--heapSize];
+                siftDown(heap, heapSize, 0, headKeys, headValues);
+            }
+        }
+        entries += position.write(output, minGames);
+        return entries;
+    }
+
+    /**
+     * Sort the buffer, aggregate the equal pairs and write them to a new run file
+     *
+     * @throws IOException If the run file cannot be written
+     */
+    private void spill() throws IOException {
+        sort(0, size - 1);
+        Path run = Files.createTempFile(tempDirectory, "book-run", ".tmp");
+        runs.add(run);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), STREAM_BUFFER_SIZE))) {
+            int i = 0;
+            while (i < size) {
+                long key = keys[i];
+                long value = values[i];
+                for (i++; i < size && keys[i] == key && values[i] >>> MOVE_SHIFT == value >>> MOVE_SHIFT; i++) {
+                    value = aggregate(value, values[i]);
+                }
+                output.writeLong(key);
+                output.writeLong(value);
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Sort the buffered pairs by unsigned key then book move (quicksort, insertion sort for the small sub-arrays)
+     *
+     * @param low  The first index
+     * @param high The last index (included)
+     */
+    private void sort(int low, int high) {
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle];
+            long pivotValue = values[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivotKey, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], values[j], pivotKey, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // Recursion on the smaller part only, the stack depth stays logarithmic
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(keys[j - 1], values[j - 1], keys[j], values[j]) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    /**
+     * Swap two buffered pairs
+     *
+     * @param i The first index
+     * @param j The second index
+     */
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * Compare two pairs by unsigned key then book move
+     *
+     * @param key1   The first key
+     * @param value1 The first value
+     * @param key2   The second key
+     * @param value2 The second value
+     * @return A negative number, zero or a positive number
+     */
+    private static int compare(long key1, long value1, long key2, long value2) {
+        int comparison = Long.compareUnsigned(key1, key2);
+        return comparison != 0 ? comparison : Long.compare(value1 >>> MOVE_SHIFT, value2 >>> MOVE_SHIFT);
+    }
+
+    /**
+     * Sum the game counts and the weights of two values of the same book move
+     *
+     * @param value1 The first value
+     * @param value2 The second value
+     * @return The aggregated value (saturated)
+     */
+    private static long aggregate(long value1, long value2) {
+        long count = Math.min(MAX_UNSIGNED_SHORT, ((value1 >>> COUNT_SHIFT) & MAX_UNSIGNED_SHORT) + ((value2 >>> COUNT_SHIFT) & MAX_UNSIGNED_SHORT));
+        long weight = Math.min(Integer.MAX_VALUE, (value1 & 0xFFFFFFFFL) + (value2 & 0xFFFFFFFFL));
+        return (value1 >>> MOVE_SHIFT) << MOVE_SHIFT | count << COUNT_SHIFT | weight;
+    }
+
+    /**
+     * Get the weight of a game result for a side
+     *
+     * @param result The game result
+     * @param color  The side that played the move
+     * @return 2 for a win, 1 for a draw or an unknown result, 0 for a loss
+     */
+    private static int weight(GameArchive.Result result, Game.ChessColor color) {
+        switch (result) {
+            case WHITE_WIN:
+                return color == Game.ChessColor.WHITE ? 2 : 0;
+            case BLACK_WIN:
+                return color == Game.ChessColor.BLACK ? 2 : 0;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Read the next pair of a run
+     *
+     * @param input      The run
+     * @param headKeys   The current key of each run
+     * @param headValues The current value of each run
+     * @param run        The run index
+     * @return false at the end of the run
+     * @throws IOException If the run cannot be read
+     */
+    private static boolean readPair(DataInputStream input, long[] headKeys, long[] headValues, int run) throws IOException {
+        try {
+            headKeys[run] = input.readLong();
+            headValues[run] = input.readLong();
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Move a heap element up to its place
+     *
+     * @param heap       The run indexes
+     * @param index      The element index
+     * @param headKeys   The current key of each run
+     * @param headValues The current value of each run
+     */
+    private static void siftUp(int[] heap, int index, long[] headKeys, long[] headValues) {
+        int run = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (compare(headKeys[heap[parent]], headValues[heap[parent]], headKeys[run], headValues[run]) <= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = run;
+    }
+
+    /**
+     * Move a heap element down to its place
+     *
+     * @param heap       The run indexes
+     * @param heapSize   The heap size
+     * @param index      The element index
+     * @param headKeys   The current key of each run
+     * @param headValues The current value of each run
+     */
+    private static void siftDown(int[] heap, int heapSize, int index, long[] headKeys, long[] headValues) {
+        if (heapSize == 0) {
+            return;
+        }
+        int run = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && compare(headKeys[heap[child + 1]], headValues[heap[child + 1]], headKeys[heap[child]], headValues[heap[child]]) < 0) {
+                child++;
+            }
+            if (compare(headKeys[run], headValues[run], headKeys[heap[child]], headValues[heap[child]]) <= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = run;
+    }
+
+    /**
+     * Aggregated book moves of the position being merged
+     */
+    private static class PositionEntries {
+
+        /**
+         * Position key
+         */
+        private long key;
+        /**
+         * Aggregated values, one per book move
+         */
+        private long[] values = new long[64];
+        /**
+         * Number of book moves
+         */
+        private int size;
+
+        /**
+         * Add a pair of the position (the pairs come sorted by book move)
+         *
+         * @param key   The position key
+         * @param value The value
+         */
+        void add(long key, long value) {
+            this.key = key;
+            if (size > 0 && values[size - 1] >>> MOVE_SHIFT == value >>> MOVE_SHIFT) {
+                values[size - 1] = aggregate(values[size - 1], value);
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Write the book entries of the position and clear it
+         *
+         * @param output   The book
+         * @param minGames Min number of games of a book move
+         * @return The number of written entries
+         * @throws IOException If the book cannot be written
+         */
+        int write(DataOutputStream output, int minGames) throws IOException {
+            long maxWeight = 0;
+            for (int i = 0; i < size; i++) {
+                maxWeight = Math.max(maxWeight, values[i] & 0xFFFFFFFFL);
+            }
+            int entries = 0;
+            for (int i = 0; i < size; i++) {
+                if (((values[i] >>> COUNT_SHIFT) & MAX_UNSIGNED_SHORT) < minGames) {
+                    continue;
+                }
+                long weight = values[i] & 0xFFFFFFFFL;
+                if (maxWeight > MAX_UNSIGNED_SHORT) {
+                    weight = weight * MAX_UNSIGNED_SHORT / maxWeight;
+                }
+                output.writeLong(key);
+                output.writeShort((int) (values[i] >>> MOVE_SHIFT));
+                output.writeShort((int) weight);
+                output.writeInt(0);
+                entries++;
+            }
+            size = 0;
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package fr.romainguilbeau.chess.book;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Memory mapped opening book in the Polyglot layout : 16 bytes entries (key, move, weight, learn), big endian,
+ * sorted by unsigned key
+ * <p>
+ * The keys are the {@link PolyglotKey Polyglot keys} and the moves use the Polyglot encoding (from / to squares
+ * with rank 1 as row 0, promotion piece, castling as the king taking its own rook) : books made by
+ * {@link BookBuilder} and by other Polyglot tools are read alike.
+ * <p>
+ * A probe binary searches the mapping, allocates nothing and leaves the game untouched. Instances are immutable and
+ * can be shared between threads.
+ */
+public class OpeningBook {
+
+    /**
+     * Size of an entry
+     */
+    static final int ENTRY_SIZE = 16;
+    /**
+     * Offset of the move in an entry
+     */
+    static final int MOVE_OFFSET = 8;
+    /**
+     * Offset of the weight in an entry
+     */
+    static final int WEIGHT_OFFSET = 10;
+
+    /**
+     * The mapped entries
+     */
+    private final MappedByteBuffer entries;
+    /**
+     * Number of entries
+     */
+    private final int size;
+
+    /**
+     * Create new opening book
+     *
+     * @param entries The mapped entries
+     */
+    private OpeningBook(MappedByteBuffer entries) {
+        this.entries = entries;
+        this.size = entries.capacity() / ENTRY_SIZE;
+    }
+
+    /**
+     * Map a book file (the mapping is released by the garbage collector)
+     *
+     * @param path The file path
+     * @return The opening book
+     * @throws IOException If the file cannot be read or is not a book
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % ENTRY_SIZE != 0 || size > Integer.MAX_VALUE) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Get the number of entries
+     *
+     * @return The entry count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pick a book move at random, weighted by the entry weights
+     *
+     * @param game  The game (left unchanged)
+     * @param moves A move list used while probing
+     * @return The encoded move (legal), {@link Move#NONE} if the position is not in the book
+     */
+    public int probe(Game game, MoveList moves) {
+        long key = PolyglotKey.of(game);
+        int first = firstEntry(key);
+        if (first < 0) {
+            return Move.NONE;
+        }
+        game.generateLegalMoves(moves);
+
+        int totalWeight = 0;
+        for (int entry = first; entry < size && entries.getLong(entry * ENTRY_SIZE) == key; entry++) {
+            if (findMove(moves, entry) != Move.NONE) {
+                totalWeight += weight(entry);
+            }
+        }
+        if (totalWeight == 0) {
+            return Move.NONE;
+        }
+
+        int draw = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int entry = first; entry < size && entries.getLong(entry * ENTRY_SIZE) == key; entry++) {
+            int move = findMove(moves, entry);
+            if (move != Move.NONE) {
+                draw -= weight(entry);
+                if (draw < 0) {
+                    return move;
+                }
+            }
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Get the best weighted book move
+     *
+     * @param game  The game (left unchanged)
+     * @param moves A move list used while probing
+     * @return The encoded move (legal), {@link Move#NONE} if the position is not in the book
+     */
+    public int bestMove(Game game, MoveList moves) {
+        long key = PolyglotKey.of(game);
+        int first = firstEntry(key);
+        if (first < 0) {
+            return Move.NONE;
+        }
+        game.generateLegalMoves(moves);
+
+        int bestMove = Move.NONE;
+        int bestWeight = 0;
+        for (int entry = first; entry < size && entries.getLong(entry * ENTRY_SIZE) == key; entry++) {
+            int move = findMove(moves, entry);
+            if (move != Move.NONE && weight(entry) > bestWeight) {
+                bestMove = move;
+                bestWeight = weight(entry);
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Find the first entry of a key (binary search)
+     *
+     * @param key The position key
+     * @return The entry index, -1 if the key is not in the book
+     */
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(entries.getLong(middle * ENTRY_SIZE), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < size && entries.getLong(low * ENTRY_SIZE) == key ? low : -1;
+    }
+
+    /**
+     * Get the weight of an entry
+     *
+     * @param entry The entry index
+     * @return The weight (unsigned)
+     */
+    private int weight(int entry) {
+        return entries.getShort(entry * ENTRY_SIZE + WEIGHT_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Find the legal move of an entry
+     *
+     * @param moves The legal moves of the game
+     * @param entry The entry index
+     * @return The encoded move, {@link Move#NONE} if illegal (key collision)
+     */
+    private int findMove(MoveList moves, int entry) {
+        int bookMove = entries.getShort(entry * ENTRY_SIZE + MOVE_OFFSET) & 0xFFFF;
+        for (int i = 0; i < moves.size(); i++) {
+            if (toBookMove(moves.get(i)) == bookMove) {
+                return moves.get(i);
+            }
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Encode a move in the Polyglot format (promotion code 1 to 4 for knight to queen)
+     *
+     * @param move The encoded move
+     * @return The Polyglot move
+     */
+    public static int toBookMove(int move) {
+        int promotion = Move.isPromotion(move) ? (Move.getFlags(move) & 3) + 1 : 0;
+        return promotion << 12 | toSquare(Move.getFrom(move)) << 6 | toSquare(bookTo(move));
+    }
+
+    /**
+     * Get the destination of a move in the Polyglot format : the castling rook square for castlings
+     *
+     * @param move The encoded move
+     * @return The square index
+     */
+    private static int bookTo(int move) {
+        switch (Move.getFlags(move)) {
+            case Move.KING_CASTLE:
+                return Move.getFrom(move) + 3;
+            case Move.QUEEN_CASTLE:
+                return Move.getFrom(move) - 4;
+            default:
+                return Move.getTo(move);
+        }
+    }
+
+    /**
+     * Convert a square index between this engine (rank 8 is row 0) and Polyglot (rank 1 is row 0), both ways
+     *
+     * @param square The square index
+     * @return The square index in the other convention
+     */
+    static int toSquare(int square) {
+        return square ^ 56;
+    }
+}
@@ -83,7 +83,7 @@ public class MainController implements Initializable {
         int darkCell = 0;
         for (int row = 0; row < Pos.BOARD_SIZE.x; row++) {
             for (int col = 0; col < Pos.BOARD_SIZE.y; col++) {
-                BoardCell boardCell = new BoardCell(new Pos(col, row), darkCell % 2 == 0);
+                BoardCell boardCell = new BoardCell(Pos.of(col, row), darkCell % 2 == 0);
                 // Add listener for selects and moves
                 boardCell.setOnMouseClicked(event -> onBoardCellClicked((BoardCell) event.getSource()));
                 gridPaneChessBoard.add(boardCell, col, row);
@@ -100,12 +100,7 @@ public class MainController implements Initializable {
     private void startNewGame() {
         game = new Game();
 
-        cleanBoardCells();
-
-        for (Map.Entry<Pos, BaseChessPiece> entrySet : game.getChessPieces().entrySet()) {
-            BoardCell boardCell = findBoardCellAtPosition(entrySet.getKey());
-            boardCell.setChessPiece(entrySet.getValue());
-        }
+        refreshBoardCells();
         updateUIPlayerTurnLabel();
     }
 
@@ -130,13 +125,7 @@ public class MainController implements Initializable {
     private void undo() {
         game.undo();
 
-        cleanBoardCells();
-
-        for (Map.Entry<Pos, BaseChessPiece> entrySet : game.getChessPieces().entrySet()) {
-            BoardCell boardCell = findBoardCellAtPosition(entrySet.getKey());
-            boardCell.setChessPiece(entrySet.getValue());
-        }
-
+        refreshBoardCells();
         updateUIPlayerTurnLabel();
     }
 
@@ -152,7 +141,7 @@ public class MainController implements Initializable {
                 && boardCell.getChessPiece().get().getChessColor().equals(game.getColorTurn())) {
 
             BaseChessPiece chessPiece = boardCell.getChessPiece().get();
-            ArrayList<Pos> validPositions = chessPiece.findValidMoves(boardCell.getPosition());
+            ArrayList<Pos> validPositions = chessPiece.findValidMoves(game, boardCell.getPosition());
 
             for (Pos validPosition : validPositions) {
                 BoardCell newBoardCell = findBoardCellAtPosition(validPosition);
@@ -172,17 +161,14 @@ public class MainController implements Initializable {
         if (optionalFocusedCell.isPresent() && optionalFocusedCell.get().getChessPiece().isPresent()) {
 
             BoardCell focusedCell = optionalFocusedCell.get();
-            BaseChessPiece chessPiece = focusedCell.getChessPiece().get();
 
             Pos newPosition = boardCell.getPosition();
             boolean unsetFocus = true;
 
             try {
                 game.move(focusedCell.getPosition(), newPosition);
-                focusedCell.removeChessPiece();
-
-                BoardCell newBoardCell = findBoardCellAtPosition(newPosition);
-                newBoardCell.setChessPiece(chessPiece);
+                // Castling, en passant and promotion also change other cells
+                refreshBoardCells();
             } catch (Exception e) {
                 System.err.println(e.getMessage());
 
@@ -236,6 +222,18 @@ public class MainController implements Initializable {
         }
     }
 
+    /**
+     * Put all the game chess pieces on the board cells
+     */
+    private void refreshBoardCells() {
+        cleanBoardCells();
+
+        for (Map.Entry<Pos, BaseChessPiece> entrySet : game.getChessPieces().entrySet()) {
+            BoardCell boardCell = findBoardCellAtPosition(entrySet.getKey());
+            boardCell.setChessPiece(entrySet.getValue());
+        }
+    }
+
     /**
      * Update player turn label
      */
@@ -244,6 +242,8 @@ public class MainController implements Initializable {
             labelPlayerTurn.setText("Les noirs ont gagnés");
         } else if (game.getGameStatus().equals(Game.GameStatus.WHITE_WIN)) {
             labelPlayerTurn.setText("Les blancs ont gagnés");
+        } else if (game.getGameStatus().equals(Game.GameStatus.DRAW)) {
+            labelPlayerTurn.setText("Match nul");
         } else if (game.getColorTurn().equals(Game.ChessColor.WHITE)) {
             labelPlayerTurn.setText("Au tour des : Blancs");
         } else {
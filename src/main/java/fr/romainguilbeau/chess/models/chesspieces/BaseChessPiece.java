@@ -1,47 +1,61 @@
 package fr.romainguilbeau.chess.models.chesspieces;
 
 import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
 import fr.romainguilbeau.chess.models.game.Pos;
 
 import java.net.URL;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Optional;
 
 /**
  * Base of all chess piece
+ * <p>
+ * Chess pieces are stateless : one shared instance per type and color (see {@link #of(ChessPieceType, Game.ChessColor)}),
+ * the game to look at is given to each method.
  */
 public abstract class BaseChessPiece {
     /**
      * The chess piece color
      */
     private final Game.ChessColor chessColor;
-    /**
-     * The current game
-     */
-    protected Game game;
 
     /**
      * Create new chess piece
      *
-     * @param game       The current game
      * @param chessColor The color of this piece
      * @throws InvalidParameterException If invalid arguments
      */
-    BaseChessPiece(Game game, Game.ChessColor chessColor) throws InvalidParameterException {
+    BaseChessPiece(Game.ChessColor chessColor) throws InvalidParameterException {
         if (chessColor == null) {
             throw new NullPointerException();
         }
 
-        if (game == null) {
-            throw new NullPointerException();
-        }
-
-        this.game = game;
         this.chessColor = chessColor;
     }
 
+    /**
+     * Get the shared chess piece of a type and color
+     *
+     * @param type  The chess piece type
+     * @param color The chess piece color
+     * @return The chess piece
+     */
+    public static BaseChessPiece of(ChessPieceType type, Game.ChessColor color) {
+        return Instances.CHESS_PIECES[type.ordinal() * Instances.COLOR_COUNT + color.ordinal()];
+    }
+
+    /**
+     * Get the shared chess piece of a game bitboard index (type ordinal * color count + color ordinal)
+     *
+     * @param index The bitboard index
+     * @return The chess piece
+     */
+    public static BaseChessPiece of(int index) {
+        return Instances.CHESS_PIECES[index];
+    }
+
     /**
      * Get the chess chess piece name
      *
@@ -49,6 +63,13 @@ public abstract class BaseChessPiece {
      */
     public abstract String getName();
 
+    /**
+     * Get the chess piece type
+     *
+     * @return The chess piece type
+     */
+    public abstract ChessPieceType getType();
+
     /**
      * Get the chess image resource
      *
@@ -57,73 +78,95 @@ public abstract class BaseChessPiece {
     public abstract URL getResourceImage();
 
     /**
-     * Find all the positions that the chess piece would normally do (regardless of other chess pieces)
+     * Find all the squares that the chess piece would normally reach (regardless of the turn and special moves)
+     *
+     * @param game   The game
+     * @param square The chess piece square
+     * @return The bitboard of the reachable squares
+     */
+    protected abstract long findChessPieceTargets(Game game, int square);
+
+    /**
+     * Find the squares whose content can change the moves of the chess piece (its own square included) : the cached
+     * moves of the chess piece stay valid while a move does not touch these squares
      *
-     * @param currentPos
-     * @return all the positions that the chess piece would normally do
-     */
-    protected ArrayList<Pos> findChessPieceMoves(Pos currentPos) {
-        ArrayList<Pos> validMoves = new ArrayList<>();
-
-        for (Pos.Direction direction : getAvailableDirections()) {
-            Optional<Integer> limitMove = getLimitMove(currentPos);
-
-            Pos searchPos = currentPos;
-            boolean availablePosition = true;
-            int moves = 0;
-
-            do {
-                try {
-                    searchPos = searchPos.incrementPos(direction);
-                    moves++;
-                    if (game.getChessPieces().containsKey(searchPos)) {
-                        availablePosition = false;
-                        if (!game.getChessPieces().get(searchPos).getChessColor().equals(getChessColor())) {
-                            validMoves.add(searchPos);
-                        }
-                    } else {
-                        validMoves.add(searchPos);
-                    }
-
-                    if (limitMove.isPresent() && limitMove.get() <= moves) {
-                        availablePosition = false;
-                    }
-                } catch (IndexOutOfBoundsException ex) {
-                    availablePosition = false;
-                }
-            } while (availablePosition);
+     * @param game   The game
+     * @param square The chess piece square
+     * @return The bitboard of the squares
+     */
+    public abstract long findMoveDependencies(Game game, int square);
+
+    /**
+     * Add all the moves of the chess piece (regardless of the turn) to a move list
+     *
+     * @param game  The game
+     * @param from  The chess piece square
+     * @param moves The move list to fill
+     */
+    public void generateMoves(Game game, int from, MoveList moves) {
+        generateMoves(game, from, moves, ~0L);
+    }
+
+    /**
+     * Add the moves of the chess piece (regardless of the turn) ending on some squares to a move list
+     *
+     * @param game    The game
+     * @param from    The chess piece square
+     * @param moves   The move list to fill
+     * @param allowed The bitboard of the allowed to squares (used by the legal move generation)
+     */
+    public void generateMoves(Game game, int from, MoveList moves, long allowed) {
+        long targets = findChessPieceTargets(game, from) & allowed;
+        long captures = targets & game.getOccupancy(chessColor.getOpponent());
+        long quiets = targets & ~captures;
+
+        while (captures != 0) {
+            moves.add(Move.encode(from, Long.numberOfTrailingZeros(captures), Move.CAPTURE));
+            captures &= captures - 1;
+        }
+        while (quiets != 0) {
+            moves.add(Move.encode(from, Long.numberOfTrailingZeros(quiets), Move.QUIET));
+            quiets &= quiets - 1;
         }
-        return validMoves;
+    }
+
+    /**
+     * Convert a bitboard into the list of its positions
+     *
+     * @param board The bitboard
+     * @return The positions of all set squares
+     */
+    protected static ArrayList<Pos> toPositions(long board) {
+        ArrayList<Pos> positions = new ArrayList<>(Long.bitCount(board));
+        while (board != 0) {
+            positions.add(Pos.of(Long.numberOfTrailingZeros(board)));
+            board &= board - 1;
+        }
+        return positions;
     }
 
     /**
      * Search all position that chess pieces can move
      *
-     * @param currentPos
+     * @param game       The game
+     * @param currentPos The chess piece position
      * @return all position that chess pieces can move
      */
-    public ArrayList<Pos> findValidMoves(Pos currentPos) {
-        ArrayList<Pos> validMove = new ArrayList<>();
-
-        if (game.getColorTurn().equals(getChessColor())) {
-            ArrayList<Pos> possibleMoves = findChessPieceMoves(currentPos);
-
-            for (Map.Entry<Pos, BaseChessPiece> entrySet : game.getChessPieces(this.chessColor).entrySet()) {
-                possibleMoves.remove(entrySet.getKey());
-            }
-
-            validMove = possibleMoves;
+    public ArrayList<Pos> findValidMoves(Game game, Pos currentPos) {
+        if (!game.getColorTurn().equals(getChessColor())) {
+            return new ArrayList<>();
         }
-        return validMove;
+        return toPositions(game.getMoveTargets(currentPos.getIndex()));
     }
 
     /**
      * Check if the chess pieces can move
      *
+     * @param game The game
      * @param from The new position
      * @param to   The new position
      */
-    public boolean canMove(Pos from, Pos to) {
+    public boolean canMove(Game game, Pos from, Pos to) {
         if (!game.getGameStatus().equals(Game.GameStatus.IN_GAME)) {
             System.err.println("Game is not in game");
             return false;
@@ -139,7 +182,7 @@ public abstract class BaseChessPiece {
             return false;
         }
 
-        if (!this.findValidMoves(from).contains(to)) {
+        if ((game.getMoveTargets(from.getIndex()) & (1L << to.getIndex())) == 0) {
             System.err.println("Not valid position");
             return false;
         }
@@ -147,21 +190,6 @@ public abstract class BaseChessPiece {
         return true;
     }
 
-    /**
-     * Get all chess piece available directions
-     *
-     * @return all chess piece available directions
-     */
-    protected abstract Pos.Direction[] getAvailableDirections();
-
-    /**
-     * Get cell number limit move (empty optional if not limit)
-     *
-     * @param currentPosition
-     * @return Get cell number limit move
-     */
-    protected abstract Optional<Integer> getLimitMove(Pos currentPosition);
-
     /**
      * Get the chess piece color
      *
@@ -170,4 +198,31 @@ public abstract class BaseChessPiece {
     public Game.ChessColor getChessColor() {
         return this.chessColor;
     }
+
+    /**
+     * The shared chess pieces, created on first use
+     */
+    private static final class Instances {
+
+        /**
+         * Number of colors (cached, values() copies the array on each call)
+         */
+        private static final int COLOR_COUNT = Game.ChessColor.values().length;
+        /**
+         * One chess piece per type and color, indexed like the game bitboards
+         */
+        private static final BaseChessPiece[] CHESS_PIECES = new BaseChessPiece[ChessPieceType.values().length * COLOR_COUNT];
+
+        static {
+            for (Game.ChessColor color : Game.ChessColor.values()) {
+                int offset = color.ordinal();
+                CHESS_PIECES[ChessPieceType.PAWN.ordinal() * COLOR_COUNT + offset] = new Pawn(color);
+                CHESS_PIECES[ChessPieceType.KNIGHT.ordinal() * COLOR_COUNT + offset] = new Knight(color);
+                CHESS_PIECES[ChessPieceType.BISHOP.ordinal() * COLOR_COUNT + offset] = new Bishop(color);
+                CHESS_PIECES[ChessPieceType.ROOK.ordinal() * COLOR_COUNT + offset] = new Rook(color);
+                CHESS_PIECES[ChessPieceType.QUEEN.ordinal() * COLOR_COUNT + offset] = new Queen(color);
+                CHESS_PIECES[ChessPieceType.KING.ordinal() * COLOR_COUNT + offset] = new King(color);
+            }
+        }
+    }
 }
@@ -1,11 +1,9 @@
 package fr.romainguilbeau.chess.models.chesspieces;
 
 import fr.romainguilbeau.chess.models.game.Game;
-import fr.romainguilbeau.chess.models.game.Pos;
 
 import java.net.URL;
 import java.security.InvalidParameterException;
-import java.util.Optional;
 
 /**
  * Bishop pawn
@@ -15,8 +13,8 @@ public class Bishop extends BaseChessPiece {
     /**
      * {@inheritDoc}
      */
-    public Bishop(Game game, Game.ChessColor chessColor) throws InvalidParameterException {
-        super(game, chessColor);
+    Bishop(Game.ChessColor chessColor) throws InvalidParameterException {
+        super(chessColor);
     }
 
     /**
@@ -27,6 +25,14 @@ public class Bishop extends BaseChessPiece {
         return "Fou";
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChessPieceType getType() {
+        return ChessPieceType.BISHOP;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -39,17 +45,15 @@ public class Bishop extends BaseChessPiece {
      * {@inheritDoc}
      */
     @Override
-    protected Pos.Direction[] getAvailableDirections() {
-        return new Pos.Direction[]{Pos.Direction.NORTH_EAST, Pos.Direction.SOUTH_EAST, Pos.Direction.SOUTH_WEST, Pos.Direction.NORTH_WEST};
+    protected long findChessPieceTargets(Game game, int square) {
+        return MagicBitboards.bishopAttacks(square, game.getOccupancy()) & ~game.getOccupancy(getChessColor());
     }
 
     /**
      * {@inheritDoc}
-     *
-     * @param currentPosition
      */
     @Override
-    protected Optional<Integer> getLimitMove(Pos currentPosition) {
-        return Optional.empty();
+    public long findMoveDependencies(Game game, int square) {
+        return MagicBitboards.bishopAttacks(square, game.getOccupancy()) | (1L << square);
     }
 }
@@ -0,0 +1,56 @@
+package fr.romainguilbeau.chess.models.chesspieces;
+
+/**
+ * All chess piece types
+ */
+public enum ChessPieceType {
+    PAWN('p'), KNIGHT('n'), BISHOP('b'), ROOK('r'), QUEEN('q'), KING('k');
+
+    /**
+     * The lowercase letter of the type (FEN and UCI notations)
+     */
+    private final char symbol;
+
+    /**
+     * Create new chess piece type
+     *
+     * @param symbol The lowercase letter of the type
+     */
+    ChessPieceType(char symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Get the lowercase letter of the type (FEN and UCI notations)
+     *
+     * @return The type letter
+     */
+    public char getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Find a chess piece type by its letter
+     *
+     * @param symbol The type letter (any case)
+     * @return The chess piece type (null if unknown)
+     */
+    public static ChessPieceType fromSymbol(char symbol) {
+        switch (Character.toLowerCase(symbol)) {
+            case 'p':
+                return PAWN;
+            case 'n':
+                return KNIGHT;
+            case 'b':
+                return BISHOP;
+            case 'r':
+                return ROOK;
+            case 'q':
+                return QUEEN;
+            case 'k':
+                return KING;
+            default:
+                return null;
+        }
+    }
+}
@@ -1,19 +1,44 @@
 package fr.romainguilbeau.chess.models.chesspieces;
 
 import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
 import fr.romainguilbeau.chess.models.game.Pos;
 
 import java.net.URL;
 import java.security.InvalidParameterException;
-import java.util.Optional;
 
 public class King extends BaseChessPiece {
 
+    /**
+     * Squares reached by a king step, indexed by square
+     */
+    private static final long[] ATTACKS = new long[Pos.BOARD_SIZE.x * Pos.BOARD_SIZE.y];
+    /**
+     * Initial square of the white king (e1)
+     */
+    private static final int WHITE_INITIAL_SQUARE = Pos.of(4, 7).getIndex();
+    /**
+     * Initial square of the black king (e8)
+     */
+    private static final int BLACK_INITIAL_SQUARE = Pos.of(4, 0).getIndex();
+
+    static {
+        for (int square = 0; square < ATTACKS.length; square++) {
+            for (Pos.Direction direction : Pos.Direction.values()) {
+                int target = Pos.neighbour(square, direction);
+                if (target != Pos.NO_SQUARE) {
+                    ATTACKS[square] |= 1L << target;
+                }
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
-    public King(Game game, Game.ChessColor chessColor) throws InvalidParameterException {
-        super(game, chessColor);
+    King(Game.ChessColor chessColor) throws InvalidParameterException {
+        super(chessColor);
     }
 
     /**
@@ -24,6 +49,14 @@ public class King extends BaseChessPiece {
         return "Roi";
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChessPieceType getType() {
+        return ChessPieceType.KING;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -32,21 +65,67 @@ public class King extends BaseChessPiece {
         return this.getClass().getResource(String.format("/img/chesspieces/king_%s.png", this.getChessColor().toString().toLowerCase()));
     }
 
+    /**
+     * Get the squares attacked by a king
+     *
+     * @param square The king square
+     * @return The attacked squares
+     */
+    public static long attacks(int square) {
+        return ATTACKS[square];
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    protected Pos.Direction[] getAvailableDirections() {
-        return Pos.Direction.values();
+    protected long findChessPieceTargets(Game game, int square) {
+        return ATTACKS[square] & ~game.getOccupancy(getChessColor());
     }
 
     /**
      * {@inheritDoc}
-     *
-     * @param currentPosition
      */
     @Override
-    protected Optional<Integer> getLimitMove(Pos currentPosition) {
-        return Optional.of(1);
+    public void generateMoves(Game game, int from, MoveList moves, long allowed) {
+        super.generateMoves(game, from, moves, allowed);
+
+        Game.ChessColor opponent = getChessColor().getOpponent();
+        int kingSide = getChessColor().equals(Game.ChessColor.WHITE) ? Game.WHITE_KING_SIDE : Game.BLACK_KING_SIDE;
+        int queenSide = getChessColor().equals(Game.ChessColor.WHITE) ? Game.WHITE_QUEEN_SIDE : Game.BLACK_QUEEN_SIDE;
+        int castlingRights = game.getCastlingRights();
+
+        // Castling rights imply the king and the rook are still on their initial squares
+        if ((castlingRights & (kingSide | queenSide)) == 0 || game.isSquareAttacked(from, opponent)) {
+            return;
+        }
+
+        long occupancy = game.getOccupancy();
+        if ((castlingRights & kingSide) != 0
+                && (occupancy & ((1L << (from + 1)) | (1L << (from + 2)))) == 0
+                && !game.isSquareAttacked(from + 1, opponent)
+                && !game.isSquareAttacked(from + 2, opponent)
+                && (allowed & (1L << (from + 2))) != 0) {
+            moves.add(Move.encode(from, from + 2, Move.KING_CASTLE));
+        }
+        if ((castlingRights & queenSide) != 0
+                && (occupancy & ((1L << (from - 1)) | (1L << (from - 2)) | (1L << (from - 3)))) == 0
+                && !game.isSquareAttacked(from - 1, opponent)
+                && !game.isSquareAttacked(from - 2, opponent)
+                && (allowed & (1L << (from - 2))) != 0) {
+            moves.add(Move.encode(from, from - 2, Move.QUEEN_CASTLE));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * On its initial square the castling moves depend on the attacks of the whole board and on castling rights that
+     * an undo can give back : every square is a dependency.
+     */
+    @Override
+    public long findMoveDependencies(Game game, int square) {
+        int initialSquare = getChessColor().equals(Game.ChessColor.WHITE) ? WHITE_INITIAL_SQUARE : BLACK_INITIAL_SQUARE;
+        return square == initialSquare ? ~0L : ATTACKS[square] | (1L << square);
     }
 }
@@ -5,16 +5,35 @@ import fr.romainguilbeau.chess.models.game.Pos;
 
 import java.net.URL;
 import java.security.InvalidParameterException;
-import java.util.ArrayList;
-import java.util.Optional;
 
 public class Knight extends BaseChessPiece {
 
+    /**
+     * Squares reached by a knight jump, indexed by square
+     */
+    private static final long[] ATTACKS = new long[Pos.BOARD_SIZE.x * Pos.BOARD_SIZE.y];
+
+    static {
+        int[] xs = {+2, +2, -2, -2, -1, -1, +1, +1};
+        int[] ys = {-1, +1, -1, +1, +2, -2, +2, -2};
+
+        for (int square = 0; square < ATTACKS.length; square++) {
+            Pos pos = Pos.of(square);
+            for (int i = 0; i < xs.length; i++) {
+                int x = pos.getX() + xs[i];
+                int y = pos.getY() + ys[i];
+                if (Pos.isOnBoard(x, y)) {
+                    ATTACKS[square] |= 1L << Pos.of(x, y).getIndex();
+                }
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
-    public Knight(Game game, Game.ChessColor chessColor) throws InvalidParameterException {
-        super(game, chessColor);
+    Knight(Game.ChessColor chessColor) throws InvalidParameterException {
+        super(chessColor);
     }
 
     /**
@@ -29,52 +48,41 @@ public class Knight extends BaseChessPiece {
      * {@inheritDoc}
      */
     @Override
-    public URL getResourceImage() {
-        return this.getClass().getResource(String.format("/img/chesspieces/knight_%s.png", this.getChessColor().toString().toLowerCase()));
+    public ChessPieceType getType() {
+        return ChessPieceType.KNIGHT;
     }
 
     /**
      * {@inheritDoc}
-     *
-     * @param currentPos
      */
     @Override
-    protected ArrayList<Pos> findChessPieceMoves(Pos currentPos) {
-        ArrayList<Pos> validMoves = new ArrayList<>();
-
-        int[] xs = {+2, +2, -2, -2, -1, -1, +1, +1};
-        int[] ys = {-1, +1, -1, +1, +2, -2, +2, +2};
-
-        for (int i = 0; i < xs.length; i++) {
-            try {
-                int x = currentPos.getX() + xs[i];
-                int y = currentPos.getY() + ys[i];
-                validMoves.add(new Pos(x, y));
-            } catch (IndexOutOfBoundsException ignored) {
-            }
-        }
-        return validMoves;
+    public URL getResourceImage() {
+        return this.getClass().getResource(String.format("/img/chesspieces/knight_%s.png", this.getChessColor().toString().toLowerCase()));
     }
 
     /**
-     * Not specifics directions, really specific moves
+     * Get the squares attacked by a knight
      *
-     * @return
+     * @param square The knight square
+     * @return The attacked squares
      */
-    @Override
-    protected Pos.Direction[] getAvailableDirections() {
-        return new Pos.Direction[0];
+    public static long attacks(int square) {
+        return ATTACKS[square];
     }
 
     /**
-     * Not specifics limit, really specific moves
-     *
-     * @param currentPosition
-     * @return
+     * {@inheritDoc}
      */
     @Override
-    protected Optional<Integer> getLimitMove(Pos currentPosition) {
-        return Optional.empty();
+    protected long findChessPieceTargets(Game game, int square) {
+        return ATTACKS[square] & ~game.getOccupancy(getChessColor());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long findMoveDependencies(Game game, int square) {
+        return ATTACKS[square] | (1L << square);
+    }
 }
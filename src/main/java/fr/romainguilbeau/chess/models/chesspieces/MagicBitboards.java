@@ -0,0 +1,248 @@
+package fr.romainguilbeau.chess.models.chesspieces;
+
+import fr.romainguilbeau.chess.models.game.Pos;
+
+/**
+ * Sliding chess pieces attacks (rook and bishop rays) looked up with magic bitboards
+ */
+public final class MagicBitboards {
+
+    /**
+     * Rook magic multipliers, indexed by square
+     */
+    private static final long[] ROOK_MAGICS = {
+            0x1080004008801020L, 0x0840092002C03000L, 0x1900200010400900L, 0x0880100008000480L,
+            0x4200100420080200L, 0x8100020100080400L, 0x0200040110886200L, 0x0200008040220411L,
+            0x0404800084400220L, 0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+            0x000A001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x0442000102105084L,
+            0x9080010020804100L, 0x0040404000201009L, 0x0000808010002009L, 0x2200090021D00100L,
+            0x0008008008040080L, 0x0004004002010040L, 0x0011040008015042L, 0x00000A0001768104L,
+            0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+            0x0442000A00049020L, 0x2100040080020080L, 0x0800120400900148L, 0x0010040A00128541L,
+            0x2800804000800030L, 0x1010002000400041L, 0x4000200011004100L, 0x0610008410800800L,
+            0x0400802402800800L, 0xC100020080800400L, 0x0002000802000401L, 0x0182085882000401L,
+            0x0220204000808000L, 0x2860100040024022L, 0x0001002004110040L, 0x99101042000A0020L,
+            0x0004080004008080L, 0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+            0x0088403882010200L, 0x0820400080210100L, 0x0110910040A00300L, 0x0801100280080480L,
+            0x0242009008200600L, 0x1002000489500200L, 0x0040800200010080L, 0x0091800041000080L,
+            0x0000209300488001L, 0x04C1002414824001L, 0x020020000B001041L, 0x7000100004200901L,
+            0x8002002004100802L, 0x30010002084C0007L, 0x0888221800813004L, 0x4000002840840112L
+    };
+    /**
+     * Bishop magic multipliers, indexed by square
+     */
+    private static final long[] BISHOP_MAGICS = {
+            0xA010041108003100L, 0x006082020A002900L, 0x6810010619200000L, 0x08281A0520000408L,
+            0x0001104001000400L, 0x0018901008048400L, 0x00040A0210245280L, 0x000200210808A402L,
+            0x9140048410821200L, 0x0800091010820041L, 0x20504804832202C0L, 0x0100091401081000L,
+            0x8021011140000012L, 0x0810020804450400L, 0x208B0542109008A2L, 0x0080084A08040204L,
+            0x0040E2A80811244CL, 0x2505022008008108L, 0x0430220100420040L, 0x010A040420220040L,
+            0x1105000290400000L, 0x0093001200822120L, 0x4000A62048043004L, 0x280120048A015004L,
+            0x006090002A020814L, 0x44042000240800D0L, 0x01102800040A4400L, 0x1004080080220040L,
+            0x0001001011004024L, 0x0010044000805040L, 0x0914041200820100L, 0x0004821012821480L,
+            0x0024040500C05021L, 0x0088611002080200L, 0x0116080A00040020L, 0x4000020080080080L,
+            0x2450450140840040L, 0x0000880201484100L, 0x0222020404020092L, 0x8081110600002E00L,
+            0x2842101105000801L, 0x1100809008001025L, 0x00020202221C0400L, 0x0422014022009020L,
+            0x0210046102100C00L, 0xC004008082029102L, 0x00AA461801101200L, 0x0404080080201108L,
+            0x020542108C205002L, 0x0410544804100100L, 0x0040910841100000L, 0x0400200042021100L,
+            0x00004204850400C0L, 0x0200100410A42102L, 0x1040020801210102L, 0x0805040410420000L,
+            0x2884804130100200L, 0x800C262201242000L, 0x1058000194108800L, 0x0014221054420204L,
+            0x0104000012A02200L, 0x0200881003300100L, 0x0140400202840100L, 0x0402020801010201L
+    };
+    /**
+     * Rook ray directions
+     */
+    private static final Pos.Direction[] ROOK_DIRECTIONS = {Pos.Direction.NORTH, Pos.Direction.SOUTH, Pos.Direction.EAST, Pos.Direction.WEST};
+    /**
+     * Bishop ray directions
+     */
+    private static final Pos.Direction[] BISHOP_DIRECTIONS = {Pos.Direction.NORTH_EAST, Pos.Direction.SOUTH_EAST, Pos.Direction.SOUTH_WEST, Pos.Direction.NORTH_WEST};
+    /**
+     * Rook relevant blockers (rays without board edges), indexed by square
+     */
+    private static final long[] ROOK_MASKS = new long[ROOK_MAGICS.length];
+    /**
+     * Bishop relevant blockers (rays without board edges), indexed by square
+     */
+    private static final long[] BISHOP_MASKS = new long[BISHOP_MAGICS.length];
+    /**
+     * Rook table index shift, indexed by square
+     */
+    private static final int[] ROOK_SHIFTS = new int[ROOK_MAGICS.length];
+    /**
+     * Bishop table index shift, indexed by square
+     */
+    private static final int[] BISHOP_SHIFTS = new int[BISHOP_MAGICS.length];
+    /**
+     * Rook attacks, indexed by square then magic index
+     */
+    private static final long[][] ROOK_ATTACKS = new long[ROOK_MAGICS.length][];
+    /**
+     * Bishop attacks, indexed by square then magic index
+     */
+    private static final long[][] BISHOP_ATTACKS = new long[BISHOP_MAGICS.length][];
+    /**
+     * Squares strictly between two aligned squares (0 if not aligned), indexed by square then square
+     */
+    private static final long[][] BETWEEN = new long[ROOK_MAGICS.length][ROOK_MAGICS.length];
+    /**
+     * Full board line through two aligned squares (0 if not aligned), indexed by square then square
+     */
+    private static final long[][] LINES = new long[ROOK_MAGICS.length][ROOK_MAGICS.length];
+
+    static {
+        for (int square = 0; square < ROOK_MAGICS.length; square++) {
+            ROOK_MASKS[square] = findRelevantBlockers(square, ROOK_DIRECTIONS);
+            ROOK_SHIFTS[square] = Long.SIZE - Long.bitCount(ROOK_MASKS[square]);
+            ROOK_ATTACKS[square] = buildAttacks(square, ROOK_DIRECTIONS, ROOK_MASKS[square], ROOK_MAGICS[square], ROOK_SHIFTS[square]);
+
+            BISHOP_MASKS[square] = findRelevantBlockers(square, BISHOP_DIRECTIONS);
+            BISHOP_SHIFTS[square] = Long.SIZE - Long.bitCount(BISHOP_MASKS[square]);
+            BISHOP_ATTACKS[square] = buildAttacks(square, BISHOP_DIRECTIONS, BISHOP_MASKS[square], BISHOP_MAGICS[square], BISHOP_SHIFTS[square]);
+        }
+
+        for (int a = 0; a < ROOK_MAGICS.length; a++) {
+            for (int b = 0; b < ROOK_MAGICS.length; b++) {
+                if (a == b) {
+                    continue;
+                }
+                long ends = (1L << a) | (1L << b);
+                if ((rookAttacks(a, 0L) & (1L << b)) != 0) {
+                    BETWEEN[a][b] = rookAttacks(a, 1L << b) & rookAttacks(b, 1L << a);
+                    LINES[a][b] = (rookAttacks(a, 0L) & rookAttacks(b, 0L)) | ends;
+                } else if ((bishopAttacks(a, 0L) & (1L << b)) != 0) {
+                    BETWEEN[a][b] = bishopAttacks(a, 1L << b) & bishopAttacks(b, 1L << a);
+                    LINES[a][b] = (bishopAttacks(a, 0L) & bishopAttacks(b, 0L)) | ends;
+                }
+            }
+        }
+    }
+
+    /**
+     * Static lookups only
+     */
+    private MagicBitboards() {
+    }
+
+    /**
+     * Get the squares attacked by a rook
+     *
+     * @param square    The rook square
+     * @param occupancy All occupied squares
+     * @return The attacked squares (first blocker included, whatever its color)
+     */
+    public static long rookAttacks(int square, long occupancy) {
+        return ROOK_ATTACKS[square][(int) (((occupancy & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+    }
+
+    /**
+     * Get the squares attacked by a bishop
+     *
+     * @param square    The bishop square
+     * @param occupancy All occupied squares
+     * @return The attacked squares (first blocker included, whatever its color)
+     */
+    public static long bishopAttacks(int square, long occupancy) {
+        return BISHOP_ATTACKS[square][(int) (((occupancy & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+    }
+
+    /**
+     * Get the squares attacked by a queen
+     *
+     * @param square    The queen square
+     * @param occupancy All occupied squares
+     * @return The attacked squares (first blocker included, whatever its color)
+     */
+    public static long queenAttacks(int square, long occupancy) {
+        return rookAttacks(square, occupancy) | bishopAttacks(square, occupancy);
+    }
+
+    /**
+     * Get the squares strictly between two squares on the same rank, file or diagonal
+     *
+     * @param a The first square
+     * @param b The second square
+     * @return The squares between (0 if not aligned or adjacent)
+     */
+    public static long between(int a, int b) {
+        return BETWEEN[a][b];
+    }
+
+    /**
+     * Get the whole line (rank, file or diagonal) through two squares
+     *
+     * @param a The first square
+     * @param b The second square
+     * @return The line squares, edges included (0 if not aligned)
+     */
+    public static long line(int a, int b) {
+        return LINES[a][b];
+    }
+
+    /**
+     * Find the squares whose occupancy changes the rays (board edges excluded)
+     *
+     * @param square     The chess piece square
+     * @param directions The ray directions
+     * @return The relevant blockers mask
+     */
+    private static long findRelevantBlockers(int square, Pos.Direction[] directions) {
+        long mask = 0L;
+        for (Pos.Direction direction : directions) {
+            int next = Pos.neighbour(square, direction);
+            while (next != Pos.NO_SQUARE && Pos.neighbour(next, direction) != Pos.NO_SQUARE) {
+                mask |= 1L << next;
+                next = Pos.neighbour(next, direction);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Walk the rays from a square, stopping on the first blocker
+     *
+     * @param square     The chess piece square
+     * @param directions The ray directions
+     * @param occupancy  The occupied squares
+     * @return The attacked squares
+     */
+    private static long walkRays(int square, Pos.Direction[] directions, long occupancy) {
+        long attacks = 0L;
+        for (Pos.Direction direction : directions) {
+            int next = Pos.neighbour(square, direction);
+            while (next != Pos.NO_SQUARE) {
+                attacks |= 1L << next;
+                if ((occupancy & (1L << next)) != 0) {
+                    break;
+                }
+                next = Pos.neighbour(next, direction);
+            }
+        }
+        return attacks;
+    }
+
+    /**
+     * Fill the attack table of a square for every subset of its relevant blockers
+     *
+     * @param square     The chess piece square
+     * @param directions The ray directions
+     * @param mask       The relevant blockers
+     * @param magic      The magic multiplier
+     * @param shift      The index shift
+     * @return The attack table of this square
+     */
+    private static long[] buildAttacks(int square, Pos.Direction[] directions, long mask, long magic, int shift) {
+        long[] attacks = new long[1 << (Long.SIZE - shift)];
+        long blockers = 0L;
+        do {
+            int index = (int) ((blockers * magic) >>> shift);
+            long rays = walkRays(square, directions, blockers);
+            if (attacks[index] != 0 && attacks[index] != rays) {
+                throw new IllegalStateException("Bad magic for square " + square);
+            }
+            attacks[index] = rays;
+            blockers = (blockers - mask) & mask;
+        } while (blockers != 0);
+        return attacks;
+    }
+}
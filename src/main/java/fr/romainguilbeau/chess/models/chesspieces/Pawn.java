@@ -1,25 +1,60 @@
 package fr.romainguilbeau.chess.models.chesspieces;
 
 import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
 import fr.romainguilbeau.chess.models.game.Pos;
 
 import java.net.URL;
 import java.security.InvalidParameterException;
-import java.util.Optional;
 
 public class Pawn extends BaseChessPiece {
 
     /**
-     * The first position
+     * Squares reached by a one step push, indexed by color then square
      */
-    private Pos initialPosition;
+    private static final long[][] PUSHES = new long[Game.ChessColor.values().length][Pos.BOARD_SIZE.x * Pos.BOARD_SIZE.y];
+    /**
+     * Squares attacked diagonally, indexed by color then square
+     */
+    private static final long[][] CAPTURES = new long[Game.ChessColor.values().length][Pos.BOARD_SIZE.x * Pos.BOARD_SIZE.y];
+
+    /**
+     * Squares where pawns start (and can move two squares), indexed by color
+     */
+    private static final long[] START_RANKS = {0x000000000000FF00L, 0x00FF000000000000L};
+    /**
+     * Squares where pawns are promoted, indexed by color
+     */
+    private static final long[] PROMOTION_RANKS = {0xFF00000000000000L, 0x00000000000000FFL};
+
+    static {
+        for (Game.ChessColor color : Game.ChessColor.values()) {
+            Pos.Direction forward = color.equals(Game.ChessColor.BLACK) ? Pos.Direction.SOUTH : Pos.Direction.NORTH;
+            Pos.Direction[] diagonals = color.equals(Game.ChessColor.BLACK)
+                    ? new Pos.Direction[]{Pos.Direction.SOUTH_EAST, Pos.Direction.SOUTH_WEST}
+                    : new Pos.Direction[]{Pos.Direction.NORTH_EAST, Pos.Direction.NORTH_WEST};
+
+            for (int square = 0; square < Pos.BOARD_SIZE.x * Pos.BOARD_SIZE.y; square++) {
+                int target = Pos.neighbour(square, forward);
+                if (target != Pos.NO_SQUARE) {
+                    PUSHES[color.ordinal()][square] = 1L << target;
+                }
+                for (Pos.Direction diagonal : diagonals) {
+                    target = Pos.neighbour(square, diagonal);
+                    if (target != Pos.NO_SQUARE) {
+                        CAPTURES[color.ordinal()][square] |= 1L << target;
+                    }
+                }
+            }
+        }
+    }
 
     /**
      * {@inheritDoc}
      */
-    public Pawn(Game game, Game.ChessColor chessColor, Pos initialPosition) throws InvalidParameterException {
-        super(game, chessColor);
-        this.initialPosition = initialPosition;
+    Pawn(Game.ChessColor chessColor) throws InvalidParameterException {
+        super(chessColor);
     }
 
     /**
@@ -30,6 +65,14 @@ public class Pawn extends BaseChessPiece {
         return "Pion";
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChessPieceType getType() {
+        return ChessPieceType.PAWN;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -38,27 +81,79 @@ public class Pawn extends BaseChessPiece {
         return this.getClass().getResource(String.format("/img/chesspieces/pawn_%s.png", this.getChessColor().toString().toLowerCase()));
     }
 
+    /**
+     * Get the squares attacked by a pawn
+     *
+     * @param color  The pawn color
+     * @param square The pawn square
+     * @return The attacked squares
+     */
+    public static long captures(Game.ChessColor color, int square) {
+        return CAPTURES[color.ordinal()][square];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long findChessPieceTargets(Game game, int square) {
+        int color = getChessColor().ordinal();
+        long empty = ~game.getOccupancy();
+
+        long targets = PUSHES[color][square] & empty;
+        if (targets != 0 && (START_RANKS[color] & (1L << square)) != 0) {
+            targets |= PUSHES[color][Long.numberOfTrailingZeros(targets)] & empty;
+        }
+        return targets | (CAPTURES[color][square] & game.getOccupancy(getChessColor().getOpponent()));
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    protected Pos.Direction[] getAvailableDirections() {
-        if (getChessColor().equals(Game.ChessColor.BLACK)) {
-            return new Pos.Direction[]{Pos.Direction.SOUTH};
-        } else {
-            return new Pos.Direction[]{Pos.Direction.NORTH};
+    public void generateMoves(Game game, int from, MoveList moves, long allowed) {
+        long targets = findChessPieceTargets(game, from) & allowed;
+        long opponents = game.getOccupancy(getChessColor().getOpponent());
+        long promotionRank = PROMOTION_RANKS[getChessColor().ordinal()];
+
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            long bit = 1L << to;
+            boolean capture = (opponents & bit) != 0;
+
+            if ((promotionRank & bit) != 0) {
+                moves.add(Move.encodePromotion(from, to, ChessPieceType.QUEEN, capture));
+                moves.add(Move.encodePromotion(from, to, ChessPieceType.KNIGHT, capture));
+                moves.add(Move.encodePromotion(from, to, ChessPieceType.ROOK, capture));
+                moves.add(Move.encodePromotion(from, to, ChessPieceType.BISHOP, capture));
+            } else if (capture) {
+                moves.add(Move.encode(from, to, Move.CAPTURE));
+            } else if (Math.abs(to - from) == 2 * Pos.BOARD_SIZE.x) {
+                moves.add(Move.encode(from, to, Move.DOUBLE_PAWN_PUSH));
+            } else {
+                moves.add(Move.encode(from, to, Move.QUIET));
+            }
+            targets &= targets - 1;
+        }
+
+        int enPassantSquare = game.getEnPassantSquare();
+        if (enPassantSquare != Pos.NO_SQUARE && (CAPTURES[getChessColor().ordinal()][from] & allowed & (1L << enPassantSquare)) != 0) {
+            moves.add(Move.encode(from, enPassantSquare, Move.EN_PASSANT));
         }
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The capture squares include the en passant square, which the game reports as changed when it is set or cleared.
      */
     @Override
-    protected Optional<Integer> getLimitMove(Pos currentPosition) {
-        if (currentPosition.equals(initialPosition)) {
-            return Optional.of(2);
-        } else {
-            return Optional.of(1);
+    public long findMoveDependencies(Game game, int square) {
+        int color = getChessColor().ordinal();
+        long pushes = PUSHES[color][square];
+        if ((START_RANKS[color] & (1L << square)) != 0) {
+            pushes |= PUSHES[color][Long.numberOfTrailingZeros(pushes)];
         }
+        return pushes | CAPTURES[color][square] | (1L << square);
     }
 }
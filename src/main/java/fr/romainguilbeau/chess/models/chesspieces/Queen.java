@@ -1,19 +1,17 @@
 package fr.romainguilbeau.chess.models.chesspieces;
 
 import fr.romainguilbeau.chess.models.game.Game;
-import fr.romainguilbeau.chess.models.game.Pos;
 
 import java.net.URL;
 import java.security.InvalidParameterException;
-import java.util.Optional;
 
 public class Queen extends BaseChessPiece {
 
     /**
      * {@inheritDoc}
      */
-    public Queen(Game game, Game.ChessColor chessColor) throws InvalidParameterException {
-        super(game, chessColor);
+    Queen(Game.ChessColor chessColor) throws InvalidParameterException {
+        super(chessColor);
     }
 
     /**
@@ -24,6 +22,14 @@ public class Queen extends BaseChessPiece {
         return "Reine";
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChessPieceType getType() {
+        return ChessPieceType.QUEEN;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -36,17 +42,15 @@ public class Queen extends BaseChessPiece {
      * {@inheritDoc}
      */
     @Override
-    protected Pos.Direction[] getAvailableDirections() {
-        return Pos.Direction.values();
+    protected long findChessPieceTargets(Game game, int square) {
+        return MagicBitboards.queenAttacks(square, game.getOccupancy()) & ~game.getOccupancy(getChessColor());
     }
 
     /**
      * {@inheritDoc}
-     *
-     * @param currentPosition
      */
     @Override
-    protected Optional<Integer> getLimitMove(Pos currentPosition) {
-        return Optional.empty();
+    public long findMoveDependencies(Game game, int square) {
+        return MagicBitboards.queenAttacks(square, game.getOccupancy()) | (1L << square);
     }
 }
@@ -1,19 +1,17 @@
 package fr.romainguilbeau.chess.models.chesspieces;
 
 import fr.romainguilbeau.chess.models.game.Game;
-import fr.romainguilbeau.chess.models.game.Pos;
 
 import java.net.URL;
 import java.security.InvalidParameterException;
-import java.util.Optional;
 
 public class Rook extends BaseChessPiece {
 
     /**
      * {@inheritDoc}
      */
-    public Rook(Game game, Game.ChessColor chessColor) throws InvalidParameterException {
-        super(game, chessColor);
+    Rook(Game.ChessColor chessColor) throws InvalidParameterException {
+        super(chessColor);
     }
 
     /**
@@ -24,6 +22,14 @@ public class Rook extends BaseChessPiece {
         return "Tour";
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChessPieceType getType() {
+        return ChessPieceType.ROOK;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -36,17 +42,15 @@ public class Rook extends BaseChessPiece {
      * {@inheritDoc}
      */
     @Override
-    protected Pos.Direction[] getAvailableDirections() {
-        return new Pos.Direction[]{Pos.Direction.NORTH, Pos.Direction.SOUTH, Pos.Direction.EAST, Pos.Direction.WEST};
+    protected long findChessPieceTargets(Game game, int square) {
+        return MagicBitboards.rookAttacks(square, game.getOccupancy()) & ~game.getOccupancy(getChessColor());
     }
 
     /**
      * {@inheritDoc}
-     *
-     * @param currentPosition
      */
     @Override
-    protected Optional<Integer> getLimitMove(Pos currentPosition) {
-        return Optional.empty();
+    public long findMoveDependencies(Game game, int square) {
+        return MagicBitboards.rookAttacks(square, game.getOccupancy()) | (1L << square);
     }
-}
\ No newline at end of file
+}
@@ -2,8 +2,7 @@ package fr.romainguilbeau.chess.models.game;
 
 import fr.romainguilbeau.chess.models.chesspieces.*;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -11,70 +10,721 @@ import java.util.Map;
  */
 public class Game {
 
+    /**
+     * White can castle king side
+     */
+    public static final int WHITE_KING_SIDE = 1;
+    /**
+     * White can castle queen side
+     */
+    public static final int WHITE_QUEEN_SIDE = 2;
+    /**
+     * Black can castle king side
+     */
+    public static final int BLACK_KING_SIDE = 4;
+    /**
+     * Black can castle queen side
+     */
+    public static final int BLACK_QUEEN_SIDE = 8;
+    /**
+     * Halfmove clock of the fifty-move rule : plies without capture nor pawn move
+     */
+    public static final int FIFTY_MOVE_PLIES = 100;
+    /**
+     * Castling rights kept when a move starts or ends on a square, indexed by square
+     */
+    private static final int[] CASTLING_RIGHTS_MASKS = new int[Pos.BOARD_SIZE.x * Pos.BOARD_SIZE.y];
+
+    /**
+     * Number of colors (cached, values() copies the array on each call)
+     */
+    static final int COLOR_COUNT = ChessColor.values().length;
+    /**
+     * Undo entry bit offset of the captured chess piece (bitboard index + 1, 0 if none)
+     */
+    private static final int UNDO_CAPTURED_SHIFT = 16;
+    /**
+     * Undo entry bit offset of the previous castling rights
+     */
+    private static final int UNDO_CASTLING_SHIFT = 20;
+    /**
+     * Undo entry bit offset of the previous en passant square (+ 1, 0 if none)
+     */
+    private static final int UNDO_EN_PASSANT_SHIFT = 24;
+    /**
+     * Initial undo stack capacity (grows when needed)
+     */
+    private static final int UNDO_INITIAL_CAPACITY = 256;
+    /**
+     * Max digits of a FEN move clock
+     */
+    private static final int MAX_CLOCK_DIGITS = 6;
+    /**
+     * Max moves of one chess piece (queen : 27, pawn : 12 with the promotions)
+     */
+    private static final int MAX_CHESS_PIECE_MOVES = 32;
+
+    static {
+        Arrays.fill(CASTLING_RIGHTS_MASKS, WHITE_KING_SIDE | WHITE_QUEEN_SIDE | BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        CASTLING_RIGHTS_MASKS[Pos.of(4, 7).getIndex()] &= ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+        CASTLING_RIGHTS_MASKS[Pos.of(7, 7).getIndex()] &= ~WHITE_KING_SIDE;
+        CASTLING_RIGHTS_MASKS[Pos.of(0, 7).getIndex()] &= ~WHITE_QUEEN_SIDE;
+        CASTLING_RIGHTS_MASKS[Pos.of(4, 0).getIndex()] &= ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        CASTLING_RIGHTS_MASKS[Pos.of(7, 0).getIndex()] &= ~BLACK_KING_SIDE;
+        CASTLING_RIGHTS_MASKS[Pos.of(0, 0).getIndex()] &= ~BLACK_QUEEN_SIDE;
+    }
+
     /**
      * The current player that could playing
      */
     private ChessColor colorTurn;
     /**
-     * All player 1 's chess pieces
+     * One bitboard per chess piece type and color (see {@link #boardIndex(ChessPieceType, ChessColor)})
      */
-    private HashMap<Pos, BaseChessPiece> whiteChessPieces;
+    private final long[] pieceBoards;
     /**
-     * All player 2 's chess pieces
+     * One bitboard per color with all the squares occupied by this color
      */
-    private HashMap<Pos, BaseChessPiece> blackChessPieces;
+    private final long[] colorBoards;
     /**
-     * All game states (for undo)
+     * All occupied squares
      */
-    private ArrayList<GameState> gameStates;
+    private long occupancy;
+    /**
+     * The chess piece on each square (bitboard index plus one, 0 if empty), indexed by square
+     */
+    private final byte[] squares;
+    /**
+     * Remaining castling rights (see {@link #WHITE_KING_SIDE} and others)
+     */
+    private int castlingRights;
+    /**
+     * Square behind a pawn that just moved two squares ({@link Pos#NO_SQUARE} if none)
+     */
+    private int enPassantSquare;
+    /**
+     * Zobrist key of the current position, updated on every move
+     */
+    private long positionKey;
+    /**
+     * Sum of the middle game values of the chess pieces (see {@link PieceSquareTables}), updated on every move
+     */
+    private int midgameScore;
+    /**
+     * Sum of the end game values of the chess pieces, updated on every move
+     */
+    private int endgameScore;
+    /**
+     * Sum of the phase weights of the chess pieces, updated on every move
+     */
+    private int phase;
+    /**
+     * Undo stack, one entry per played move : the move and what it erased (captured chess piece, castling rights, en passant square)
+     */
+    private int[] undoStack;
+    /**
+     * Number of entries in the undo stack
+     */
+    private int undoSize;
+    /**
+     * Position key before each played move, indexed like the undo stack (the repetition history)
+     */
+    private long[] keyHistory;
+    /**
+     * Halfmove clock before each played move, indexed like the undo stack
+     */
+    private int[] halfmoveClocks;
+    /**
+     * Plies since the last capture or pawn move
+     */
+    private int halfmoveClock;
+    /**
+     * Number of the current move, incremented after each black move
+     */
+    private int fullmoveNumber;
     /**
      * Current game status
      */
     private GameStatus gameStatus;
+    /**
+     * Snapshot of the current position (null until requested, dropped on every change)
+     */
+    private Position position;
+    /**
+     * Cached moves of the chess pieces, {@link #MAX_CHESS_PIECE_MOVES} slots per square (allocated on first use)
+     */
+    private int[] moveCache;
+    /**
+     * Number of cached moves of each square
+     */
+    private int[] moveCacheSizes;
+    /**
+     * Cached target squares of each square
+     */
+    private long[] moveCacheTargets;
+    /**
+     * Squares whose content invalidates the cached moves of each square (see
+     * {@link BaseChessPiece#findMoveDependencies(Game, int)})
+     */
+    private long[] moveCacheDependencies;
+    /**
+     * Squares with valid cached moves
+     */
+    private long cachedSquares;
+    /**
+     * Move list used to fill the move cache and to find the game status (allocated on first use)
+     */
+    private MoveList scratchMoves;
 
     /**
      * Create new game
      */
     public Game() {
+        this(true);
+    }
+
+    /**
+     * Create new game
+     *
+     * @param initialPosition true to populate the board, false to start from an empty board without castling rights
+     */
+    private Game(boolean initialPosition) {
         this.colorTurn = ChessColor.WHITE;
-        this.whiteChessPieces = new HashMap<>();
-        this.blackChessPieces = new HashMap<>();
-        this.gameStates = new ArrayList<>();
+        this.pieceBoards = new long[ChessPieceType.values().length * ChessColor.values().length];
+        this.colorBoards = new long[ChessColor.values().length];
+        this.occupancy = 0L;
+        this.squares = new byte[Pos.BOARD_SIZE.x * Pos.BOARD_SIZE.y];
+        this.castlingRights = 0;
+        this.enPassantSquare = Pos.NO_SQUARE;
+        this.positionKey = 0L;
+        this.undoStack = new int[UNDO_INITIAL_CAPACITY];
+        this.undoSize = 0;
+        this.keyHistory = new long[UNDO_INITIAL_CAPACITY];
+        this.halfmoveClocks = new int[UNDO_INITIAL_CAPACITY];
+        this.halfmoveClock = 0;
+        this.fullmoveNumber = 1;
         this.gameStatus = GameStatus.IN_GAME;
 
-        populateBoard();
-        gameStates.add(new GameState(whiteChessPieces, blackChessPieces, colorTurn));
+        if (initialPosition) {
+            populateBoard();
+            castlingRights = WHITE_KING_SIDE | WHITE_QUEEN_SIDE | BLACK_KING_SIDE | BLACK_QUEEN_SIDE;
+            positionKey ^= Zobrist.CASTLING[castlingRights];
+        }
     }
 
     /**
-     * Populate the board with chess pieces (with initial positions)
+     * Create a game from a FEN (Forsyth-Edwards Notation) position
+     *
+     * @param fen The FEN position, for example "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1" (the move
+     *            clocks are optional)
+     * @return The new game
+     * @throws IllegalArgumentException If invalid FEN
      */
-    private void populateBoard() {
-        for (ChessColor color : ChessColor.values()) {
+    public static Game fromFen(CharSequence fen) throws IllegalArgumentException {
+        Game game = new Game(false);
+        game.loadFen(fen, false);
+        return game;
+    }
+
+    /**
+     * Create a game from an EPD (Extended Position Description) line : the four first FEN fields, the operations
+     * are ignored
+     *
+     * @param epd The EPD line, for example "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - bm e4;"
+     * @return The new game
+     * @throws IllegalArgumentException If invalid position
+     */
+    public static Game fromEpd(CharSequence epd) throws IllegalArgumentException {
+        Game game = new Game(false);
+        game.loadFen(epd, true);
+        return game;
+    }
+
+    /**
+     * Replace the position by a FEN or EPD position, parsed straight into the board without allocation
+     * <p>
+     * The undo history is cleared. The castling rights whose king or rook is not on its initial square are dropped,
+     * as well as an en passant square that no double pawn push can have left.
+     * After an exception the game holds an unspecified position.
+     *
+     * @param fen The FEN position or EPD line
+     * @param epd true to ignore what follows the four first fields (EPD operations), false to accept the two move
+     *            clocks only
+     * @throws IllegalArgumentException If invalid position
+     */
+    public void loadFen(CharSequence fen, boolean epd) throws IllegalArgumentException {
+        clearBoard();
+
+        int length = fen.length();
+        int i = skipSpaces(fen, 0);
+
+        // Piece placement
+        int x = 0;
+        int y = 0;
+        for (; i < length && fen.charAt(i) != ' '; i++) {
+            char c = fen.charAt(i);
+            if (c == '/') {
+                if (x != Pos.BOARD_SIZE.x) {
+                    throw invalidFen(fen, i);
+                }
+                y++;
+                x = 0;
+            } else if (c >= '1' && c <= '8') {
+                x += c - '0';
+            } else {
+                ChessPieceType type = ChessPieceType.fromSymbol(c);
+                if (type == null || !Pos.isOnBoard(x, y)) {
+                    throw invalidFen(fen, i);
+                }
+                ChessColor color = c < 'a' ? ChessColor.WHITE : ChessColor.BLACK;
+                putChessPiece(y * Pos.BOARD_SIZE.x + x, boardIndex(type, color));
+                x++;
+            }
+            if (x > Pos.BOARD_SIZE.x) {
+                throw invalidFen(fen, i);
+            }
+        }
+        if (y != Pos.BOARD_SIZE.y - 1 || x != Pos.BOARD_SIZE.x) {
+            throw invalidFen(fen, i);
+        }
+
+        // Side to move
+        i = skipSpaces(fen, i);
+        if (i >= length || (fen.charAt(i) != 'w' && fen.charAt(i) != 'b') || (i + 1 < length && fen.charAt(i + 1) != ' ')) {
+            throw invalidFen(fen, i);
+        }
+        colorTurn = fen.charAt(i) == 'w' ? ChessColor.WHITE : ChessColor.BLACK;
+        if (colorTurn == ChessColor.BLACK) {
+            positionKey ^= Zobrist.BLACK_TO_MOVE;
+        }
+
+        // Castling rights
+        i = skipSpaces(fen, i + 1);
+        for (; i < length && fen.charAt(i) != ' '; i++) {
+            char c = fen.charAt(i);
+            if (c == 'K') {
+                castlingRights |= WHITE_KING_SIDE;
+            } else if (c == 'Q') {
+                castlingRights |= WHITE_QUEEN_SIDE;
+            } else if (c == 'k') {
+                castlingRights |= BLACK_KING_SIDE;
+            } else if (c == 'q') {
+                castlingRights |= BLACK_QUEEN_SIDE;
+            } else if (c != '-') {
+                throw invalidFen(fen, i);
+            }
+        }
+        // A right without its king and rook on their initial squares can never be used
+        castlingRights &= findPossibleCastlingRights();
+        positionKey ^= Zobrist.CASTLING[castlingRights];
+
+        // En passant square
+        i = skipSpaces(fen, i);
+        if (i >= length) {
+            throw invalidFen(fen, i);
+        }
+        if (fen.charAt(i) == '-') {
+            i++;
+        } else {
+            int file = i + 1 < length ? fen.charAt(i) - 'a' : -1;
+            int rank = i + 1 < length ? '8' - fen.charAt(i + 1) : -1;
+            if (!Pos.isOnBoard(file, rank)) {
+                throw invalidFen(fen, i);
+            }
+            // A square without the pawn that just moved two squares beyond it would allow a wrong capture
+            int square = rank * Pos.BOARD_SIZE.x + file;
+            enPassantSquare = isPossibleEnPassantSquare(square) ? square : Pos.NO_SQUARE;
+            positionKey ^= enPassantKey();
+            i += 2;
+        }
+
+        // Move clocks (optional), nothing else after them
+        if (!epd) {
+            i = skipSpaces(fen, i);
+            for (int clock = 0; clock < 2 && i < length; clock++) {
+                int start = i;
+                int value = 0;
+                while (i < length && fen.charAt(i) >= '0' && fen.charAt(i) <= '9') {
+                    value = value * 10 + fen.charAt(i) - '0';
+                    i++;
+                }
+                if (i == start || i - start > MAX_CLOCK_DIGITS || (i < length && fen.charAt(i) != ' ')) {
+                    throw invalidFen(fen, i);
+                }
+                if (clock == 0) {
+                    halfmoveClock = value;
+                } else {
+                    fullmoveNumber = Math.max(1, value);
+                }
+                i = skipSpaces(fen, i);
+            }
+            if (i < length) {
+                throw invalidFen(fen, i);
+            }
+        } else if (i < length && fen.charAt(i) != ' ') {
+            throw invalidFen(fen, i);
+        }
+
+        updateGameStatus();
+    }
 
-            HashMap<Pos, BaseChessPiece> chessPieces = whiteChessPieces;
-            if (color.equals(ChessColor.BLACK)) {
-                chessPieces = blackChessPieces;
+    /**
+     * Check if an en passant square can follow the last move : on the rank 6 with white to move (3 with black to
+     * move), empty as the square the pawn came from, with the opponent pawn just in front of it
+     *
+     * @param square The en passant square
+     * @return true if a double pawn push can have left this square
+     */
+    private boolean isPossibleEnPassantSquare(int square) {
+        // The opponent pawn moved toward the side to move : white pawns toward the low square indexes
+        int forward = colorTurn == ChessColor.WHITE ? Pos.BOARD_SIZE.x : -Pos.BOARD_SIZE.x;
+        int rank = colorTurn == ChessColor.WHITE ? 2 : 5;
+        long pawns = pieceBoards[boardIndex(ChessPieceType.PAWN, colorTurn.getOpponent())];
+        return square / Pos.BOARD_SIZE.x == rank
+                && (occupancy & (1L << square | 1L << (square - forward))) == 0
+                && (pawns & 1L << (square + forward)) != 0;
+    }
+
+    /**
+     * Find the castling rights allowed by the board : the king and the rook of each right on their initial squares
+     *
+     * @return The possible castling rights
+     */
+    private int findPossibleCastlingRights() {
+        int rights = 0;
+        long whiteRooks = pieceBoards[boardIndex(ChessPieceType.ROOK, ChessColor.WHITE)];
+        long blackRooks = pieceBoards[boardIndex(ChessPieceType.ROOK, ChessColor.BLACK)];
+        if ((pieceBoards[boardIndex(ChessPieceType.KING, ChessColor.WHITE)] & (1L << Pos.of(4, 7).getIndex())) != 0) {
+            if ((whiteRooks & (1L << Pos.of(7, 7).getIndex())) != 0) {
+                rights |= WHITE_KING_SIDE;
             }
+            if ((whiteRooks & (1L << Pos.of(0, 7).getIndex())) != 0) {
+                rights |= WHITE_QUEEN_SIDE;
+            }
+        }
+        if ((pieceBoards[boardIndex(ChessPieceType.KING, ChessColor.BLACK)] & (1L << Pos.of(4, 0).getIndex())) != 0) {
+            if ((blackRooks & (1L << Pos.of(7, 0).getIndex())) != 0) {
+                rights |= BLACK_KING_SIDE;
+            }
+            if ((blackRooks & (1L << Pos.of(0, 0).getIndex())) != 0) {
+                rights |= BLACK_QUEEN_SIDE;
+            }
+        }
+        return rights;
+    }
+
+    /**
+     * Skip the spaces of a FEN
+     *
+     * @param fen   The FEN
+     * @param index The current index
+     * @return The index of the next non-space char (or the length)
+     */
+    private static int skipSpaces(CharSequence fen, int index) {
+        while (index < fen.length() && fen.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Build the exception of an invalid FEN
+     *
+     * @param fen   The FEN
+     * @param index The index of the invalid char
+     * @return The exception to throw
+     */
+    private static IllegalArgumentException invalidFen(CharSequence fen, int index) {
+        return new IllegalArgumentException("Invalid FEN at index " + index + ": " + fen);
+    }
+
+    /**
+     * Get the position in FEN (Forsyth-Edwards Notation), with the halfmove clock and the fullmove number
+     *
+     * @return The FEN position
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(90);
+        appendFen(fen);
+        return fen.toString();
+    }
+
+    /**
+     * Append the position in FEN (Forsyth-Edwards Notation) to a buffer, without any other allocation
+     *
+     * @param fen The buffer
+     */
+    public void appendFen(StringBuilder fen) {
+        for (int y = 0; y < Pos.BOARD_SIZE.y; y++) {
+            int empty = 0;
+            for (int x = 0; x < Pos.BOARD_SIZE.x; x++) {
+                BaseChessPiece chessPiece = getChessPiece(y * Pos.BOARD_SIZE.x + x);
+                if (chessPiece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                char symbol = chessPiece.getType().getSymbol();
+                fen.append(chessPiece.getChessColor() == ChessColor.WHITE ? Character.toUpperCase(symbol) : symbol);
+            }
+            if (empty > 0) {
+                fen.append((char) ('0' + empty));
+            }
+            if (y < Pos.BOARD_SIZE.y - 1) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(colorTurn == ChessColor.WHITE ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        } else {
+            if ((castlingRights & WHITE_KING_SIDE) != 0) {
+                fen.append('K');
+            }
+            if ((castlingRights & WHITE_QUEEN_SIDE) != 0) {
+                fen.append('Q');
+            }
+            if ((castlingRights & BLACK_KING_SIDE) != 0) {
+                fen.append('k');
+            }
+            if ((castlingRights & BLACK_QUEEN_SIDE) != 0) {
+                fen.append('q');
+            }
+        }
+        fen.append(' ');
+        if (enPassantSquare == Pos.NO_SQUARE) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + enPassantSquare % Pos.BOARD_SIZE.x)).append((char) ('8' - enPassantSquare / Pos.BOARD_SIZE.x));
+        }
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+    }
+
+    /**
+     * Create an independent copy of the game (same position, undo history and status)
+     *
+     * @return The new game
+     */
+    public Game copy() {
+        Game game = new Game(false);
+        System.arraycopy(pieceBoards, 0, game.pieceBoards, 0, pieceBoards.length);
+        System.arraycopy(colorBoards, 0, game.colorBoards, 0, colorBoards.length);
+        game.occupancy = occupancy;
+        System.arraycopy(squares, 0, game.squares, 0, squares.length);
+        game.colorTurn = colorTurn;
+        game.castlingRights = castlingRights;
+        game.enPassantSquare = enPassantSquare;
+        game.positionKey = positionKey;
+        game.midgameScore = midgameScore;
+        game.endgameScore = endgameScore;
+        game.phase = phase;
+        game.undoStack = Arrays.copyOf(undoStack, undoStack.length);
+        game.undoSize = undoSize;
+        game.keyHistory = Arrays.copyOf(keyHistory, keyHistory.length);
+        game.halfmoveClocks = Arrays.copyOf(halfmoveClocks, halfmoveClocks.length);
+        game.halfmoveClock = halfmoveClock;
+        game.fullmoveNumber = fullmoveNumber;
+        game.gameStatus = gameStatus;
+        game.position = position;
+        return game;
+    }
+
+    /**
+     * Create an analysis branch : a new game on the current position, without the undo history (so without the
+     * repetition history, the move clocks are kept). The branch starts from the same position snapshot (see
+     * {@link #getPosition()}) and shares nothing mutable with this game.
+     *
+     * @return The new game
+     */
+    public Game fork() {
+        Game game = fromPosition(getPosition());
+        game.halfmoveClock = halfmoveClock;
+        game.fullmoveNumber = fullmoveNumber;
+        game.gameStatus = gameStatus;
+        return game;
+    }
 
+    /**
+     * Create a game on a position snapshot, without undo history
+     *
+     * @param position The position
+     * @return The new game
+     */
+    public static Game fromPosition(Position position) {
+        Game game = new Game(false);
+        game.clear(position.getColorTurn());
+        for (ChessPieceType type : ChessPieceType.values()) {
+            for (ChessColor color : ChessColor.values()) {
+                long board = position.getChessPieceBoard(type, color);
+                while (board != 0) {
+                    game.putChessPiece(Long.numberOfTrailingZeros(board), boardIndex(type, color));
+                    board &= board - 1;
+                }
+            }
+        }
+        game.positionKey ^= Zobrist.CASTLING[game.castlingRights] ^ Zobrist.CASTLING[position.getCastlingRights()];
+        game.castlingRights = position.getCastlingRights();
+        game.enPassantSquare = position.getEnPassantSquare();
+        game.positionKey ^= game.enPassantKey();
+        game.position = position;
+        game.updateGameStatus();
+        return game;
+    }
+
+    /**
+     * Get an immutable snapshot of the current position : the same instance is returned until the position changes,
+     * so readers (user interface, analysis threads) share it without copying the board
+     *
+     * @return The position snapshot
+     */
+    public Position getPosition() {
+        if (position == null) {
+            position = new Position(pieceBoards, colorTurn, castlingRights, enPassantSquare, positionKey);
+        }
+        return position;
+    }
+
+    /**
+     * Populate the board with chess pieces (with initial positions)
+     */
+    private void populateBoard() {
+        for (ChessColor color : ChessColor.values()) {
             int chessPieceY = color == ChessColor.BLACK ? 0 : 7;
             int pawnY = color == ChessColor.BLACK ? 1 : 6;
 
-            chessPieces.put(new Pos(0, chessPieceY), new Rook(this, color));
-            chessPieces.put(new Pos(1, chessPieceY), new Knight(this, color));
-            chessPieces.put(new Pos(2, chessPieceY), new Bishop(this, color));
-            chessPieces.put(new Pos(3, chessPieceY), new King(this, color));
-            chessPieces.put(new Pos(4, chessPieceY), new Queen(this, color));
-            chessPieces.put(new Pos(5, chessPieceY), new Bishop(this, color));
-            chessPieces.put(new Pos(6, chessPieceY), new Knight(this, color));
-            chessPieces.put(new Pos(7, chessPieceY), new Rook(this, color));
+            ChessPieceType[] backRank = {
+                    ChessPieceType.ROOK, ChessPieceType.KNIGHT, ChessPieceType.BISHOP, ChessPieceType.QUEEN,
+                    ChessPieceType.KING, ChessPieceType.BISHOP, ChessPieceType.KNIGHT, ChessPieceType.ROOK
+            };
 
             for (int x = 0; x < Pos.BOARD_SIZE.x; x++) {
-                chessPieces.put(new Pos(x, pawnY), new Pawn(this, color, new Pos(x, pawnY)));
+                putChessPiece(Pos.of(x, chessPieceY).getIndex(), boardIndex(backRank[x], color));
+                putChessPiece(Pos.of(x, pawnY).getIndex(), boardIndex(ChessPieceType.PAWN, color));
             }
         }
     }
 
+    /**
+     * Go back to the initial position without allocating (the undo history is cleared)
+     */
+    public void reset() {
+        clearBoard();
+        colorTurn = ChessColor.WHITE;
+        populateBoard();
+        castlingRights = WHITE_KING_SIDE | WHITE_QUEEN_SIDE | BLACK_KING_SIDE | BLACK_QUEEN_SIDE;
+        positionKey ^= Zobrist.CASTLING[castlingRights];
+        gameStatus = GameStatus.IN_GAME;
+    }
+
+    /**
+     * Empty the board without allocating : no castling rights, no en passant square, the undo history is cleared.
+     * The chess pieces are then put with {@link #addChessPiece(int, ChessPieceType, ChessColor)}.
+     *
+     * @param colorTurn The color to move
+     */
+    public void clear(ChessColor colorTurn) {
+        clearBoard();
+        this.colorTurn = colorTurn;
+        positionKey ^= Zobrist.CASTLING[castlingRights];
+        if (colorTurn == ChessColor.BLACK) {
+            positionKey ^= Zobrist.BLACK_TO_MOVE;
+        }
+        gameStatus = GameStatus.IN_GAME;
+    }
+
+    /**
+     * Put a chess piece on an empty square
+     *
+     * @param square The square index
+     * @param type   The chess piece type
+     * @param color  The chess piece color
+     * @throws IllegalArgumentException If the square is not empty
+     */
+    public void addChessPiece(int square, ChessPieceType type, ChessColor color) throws IllegalArgumentException {
+        if (squares[square] != 0) {
+            throw new IllegalArgumentException("Square " + square + " is not empty");
+        }
+        putChessPiece(square, boardIndex(type, color));
+        cachedSquares = 0L;
+        position = null;
+    }
+
+    /**
+     * Remove all the chess pieces, the castling rights, the en passant square and the undo history
+     */
+    private void clearBoard() {
+        Arrays.fill(pieceBoards, 0L);
+        Arrays.fill(colorBoards, 0L);
+        Arrays.fill(squares, (byte) 0);
+        occupancy = 0L;
+        positionKey = 0L;
+        midgameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+        castlingRights = 0;
+        enPassantSquare = Pos.NO_SQUARE;
+        undoSize = 0;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        cachedSquares = 0L;
+        position = null;
+    }
+
+    /**
+     * Get the bitboard index of a chess piece type and color
+     *
+     * @param type  The chess piece type
+     * @param color The chess piece color
+     * @return The index in the piece bitboards
+     */
+    static int boardIndex(ChessPieceType type, ChessColor color) {
+        return type.ordinal() * COLOR_COUNT + color.ordinal();
+    }
+
+    /**
+     * Put a chess piece on an empty square
+     *
+     * @param square The square index
+     * @param index  The bitboard index of the chess piece (see {@link #boardIndex(ChessPieceType, ChessColor)})
+     */
+    private void putChessPiece(int square, int index) {
+        long bit = 1L << square;
+        pieceBoards[index] |= bit;
+        colorBoards[index % COLOR_COUNT] |= bit;
+        occupancy |= bit;
+        squares[square] = (byte) (index + 1);
+        positionKey ^= Zobrist.PIECE_SQUARE[index][square];
+        midgameScore += PieceSquareTables.MIDGAME[index][square];
+        endgameScore += PieceSquareTables.ENDGAME[index][square];
+        phase += PieceSquareTables.PHASE[index];
+    }
+
+    /**
+     * Remove the chess piece on a square (if any)
+     *
+     * @param square The square index
+     * @return The bitboard index of the removed chess piece (-1 if the square was empty)
+     */
+    private int removeChessPiece(int square) {
+        int index = squares[square] - 1;
+        if (index >= 0) {
+            long bit = 1L << square;
+            pieceBoards[index] &= ~bit;
+            colorBoards[index % COLOR_COUNT] &= ~bit;
+            occupancy &= ~bit;
+            squares[square] = 0;
+            positionKey ^= Zobrist.PIECE_SQUARE[index][square];
+            midgameScore -= PieceSquareTables.MIDGAME[index][square];
+            endgameScore -= PieceSquareTables.ENDGAME[index][square];
+            phase -= PieceSquareTables.PHASE[index];
+        }
+        return index;
+    }
+
     /**
      * Get the player whose turn it is
      *
@@ -87,13 +737,10 @@ public class Game {
     /**
      * Get all chess piece
      *
-     * @return all chess piece
+     * @return all chess piece (read-only, shared until the position changes)
      */
-    public HashMap<Pos, BaseChessPiece> getChessPieces() {
-        HashMap<Pos, BaseChessPiece> allChessPiece = new HashMap<>();
-        allChessPiece.putAll(whiteChessPieces);
-        allChessPiece.putAll(blackChessPieces);
-        return (HashMap<Pos, BaseChessPiece>) allChessPiece.clone();
+    public Map<Pos, BaseChessPiece> getChessPieces() {
+        return getPosition().getChessPieces();
     }
 
     /**
@@ -104,86 +751,610 @@ public class Game {
      * @throws Exception If invalid move
      */
     public void move(Pos previousPosition, Pos nextPosition) throws Exception {
-        BaseChessPiece chessPiece = null;
-
-        if (this.whiteChessPieces.containsKey(previousPosition)) {
-            chessPiece = this.whiteChessPieces.get(previousPosition);
-        } else if (this.blackChessPieces.containsKey(previousPosition)) {
-            chessPiece = this.blackChessPieces.get(previousPosition);
+        if (previousPosition == null || nextPosition == null) {
+            throw new Exception("No chess piece here");
         }
 
+        BaseChessPiece chessPiece = getChessPiece(previousPosition.getIndex());
+
         if (chessPiece == null) {
             throw new Exception("No chess piece here");
         }
 
-        if (!chessPiece.canMove(previousPosition, nextPosition)) {
+        if (!chessPiece.canMove(this, previousPosition, nextPosition)) {
             throw new Exception("This chess piece can't move");
         }
 
-        HashMap<Pos, BaseChessPiece> playerChessPieces = this.blackChessPieces;
-        if (chessPiece.getChessColor().equals(ChessColor.WHITE)) {
-            playerChessPieces = this.whiteChessPieces;
+        makeMove(findMove(previousPosition.getIndex(), nextPosition.getIndex()));
+        updateGameStatus();
+    }
+
+    /**
+     * Find the encoded move of a chess piece between two squares (promotions are made to queen)
+     *
+     * @param from The from square
+     * @param to   The to square
+     * @return The encoded move
+     * @throws Exception If the chess piece can't reach the to square
+     */
+    private int findMove(int from, int to) throws Exception {
+        int offset = cacheMoves(from);
+        for (int i = offset; i < offset + moveCacheSizes[from]; i++) {
+            int move = moveCache[i];
+            if (Move.getTo(move) == to && (!Move.isPromotion(move) || Move.getPromotion(move) == ChessPieceType.QUEEN)) {
+                return move;
+            }
         }
+        throw new Exception("This chess piece can't move");
+    }
 
-        ChessColor opposing = ChessColor.WHITE;
-        if (chessPiece.getChessColor().equals(ChessColor.WHITE)) {
-            opposing = ChessColor.BLACK;
+    /**
+     * Get the target squares of the chess piece on a square (regardless of the turn), from the move cache
+     * <p>
+     * The moves of a chess piece are generated once, then kept until a move or an undo touches one of their
+     * dependencies : repeated queries on the same position cost a lookup.
+     *
+     * @param square The square index
+     * @return The bitboard of the target squares (0 if the square is empty)
+     */
+    public long getMoveTargets(int square) {
+        if (squares[square] == 0) {
+            return 0L;
         }
+        cacheMoves(square);
+        return moveCacheTargets[square];
+    }
 
-        playerChessPieces.remove(previousPosition);
-        getChessPieces(opposing).remove(nextPosition);
-        playerChessPieces.put(nextPosition, chessPiece);
+    /**
+     * Fill the move cache of a square if not valid
+     *
+     * @param square The square index, not empty
+     * @return The offset of the square moves in the move cache
+     */
+    private int cacheMoves(int square) {
+        int offset = square * MAX_CHESS_PIECE_MOVES;
+        if ((cachedSquares & (1L << square)) != 0) {
+            return offset;
+        }
+        if (moveCache == null) {
+            moveCache = new int[squares.length * MAX_CHESS_PIECE_MOVES];
+            moveCacheSizes = new int[squares.length];
+            moveCacheTargets = new long[squares.length];
+            moveCacheDependencies = new long[squares.length];
+        }
+
+        MoveList moves = scratchMoves();
+        moves.clear();
+        generateLegalMoves(square, moves);
+        long targets = 0L;
+        for (int i = 0; i < moves.size(); i++) {
+            moveCache[offset + i] = moves.get(i);
+            targets |= 1L << Move.getTo(moves.get(i));
+        }
+        moveCacheSizes[square] = moves.size();
+        moveCacheTargets[square] = targets;
+        moveCacheDependencies[square] = findLegalMoveDependencies(square);
+        cachedSquares |= 1L << square;
+        return offset;
+    }
+
+    /**
+     * Find the squares whose content can change the legal moves of a chess piece : its own dependencies, plus the
+     * squares from which a check or a pin can reach its king
+     *
+     * @param square The square index, not empty
+     * @return The bitboard of the squares
+     */
+    private long findLegalMoveDependencies(int square) {
+        BaseChessPiece chessPiece = getChessPiece(square);
+        long king = pieceBoards[boardIndex(ChessPieceType.KING, chessPiece.getChessColor())];
+        if (king == 0 || king == 1L << square) {
+            // The safe squares of a king depend on the attacks of the whole board
+            return ~0L;
+        }
+        int kingSquare = Long.numberOfTrailingZeros(king);
+        return chessPiece.findMoveDependencies(this, square) | king
+                | MagicBitboards.queenAttacks(kingSquare, 0L) | Knight.attacks(kingSquare);
+    }
+
+    /**
+     * Get the reusable move list
+     *
+     * @return The move list (content unspecified)
+     */
+    private MoveList scratchMoves() {
+        if (scratchMoves == null) {
+            scratchMoves = new MoveList();
+        }
+        return scratchMoves;
+    }
 
-        if (chessPiece.getChessColor().equals(ChessColor.WHITE)) {
-            this.colorTurn = ChessColor.BLACK;
+    /**
+     * Drop the cached moves depending on the squares changed by a move (played or reverted)
+     *
+     * @param move                    The encoded move
+     * @param previousEnPassantSquare The en passant square before the change
+     */
+    private void invalidateMoveCache(int move, int previousEnPassantSquare) {
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        int flags = Move.getFlags(move);
+
+        long changed = (1L << from) | (1L << to);
+        if (flags == Move.KING_CASTLE) {
+            changed |= (1L << (from + 1)) | (1L << (from + 3));
+        } else if (flags == Move.QUEEN_CASTLE) {
+            changed |= (1L << (from - 1)) | (1L << (from - 4));
+        } else if (flags == Move.EN_PASSANT) {
+            // The captured pawn is beside the from square, on the to file
+            changed |= 1L << (from - from % Pos.BOARD_SIZE.x + to % Pos.BOARD_SIZE.x);
+        }
+        if (previousEnPassantSquare != Pos.NO_SQUARE) {
+            changed |= 1L << previousEnPassantSquare;
+        }
+        if (enPassantSquare != Pos.NO_SQUARE) {
+            changed |= 1L << enPassantSquare;
+        }
+
+        long cached = cachedSquares;
+        while (cached != 0) {
+            int square = Long.numberOfTrailingZeros(cached);
+            if ((moveCacheDependencies[square] & changed) != 0) {
+                cachedSquares &= ~(1L << square);
+            }
+            cached &= cached - 1;
+        }
+    }
+
+    /**
+     * Add all the moves of the player whose turn it is (regardless of king safety) to a move list
+     *
+     * @param moves The move list to fill (cleared first)
+     */
+    public void generateMoves(MoveList moves) {
+        moves.clear();
+        long chessPieces = colorBoards[colorTurn.ordinal()];
+        while (chessPieces != 0) {
+            int square = Long.numberOfTrailingZeros(chessPieces);
+            getChessPiece(square).generateMoves(this, square, moves);
+            chessPieces &= chessPieces - 1;
+        }
+    }
+
+    /**
+     * Add the legal moves of the player whose turn it is to a move list
+     * <p>
+     * The checkers and the pinned chess pieces are found once from the king square, then each chess piece only
+     * generates its legal targets : evasions when in check, the pin line when pinned, the squares the opponent does
+     * not attack for the king. No move is played to test it.
+     *
+     * @param moves The move list to fill (cleared first)
+     */
+    public void generateLegalMoves(MoveList moves) {
+        moves.clear();
+        long kingBoard = pieceBoards[boardIndex(ChessPieceType.KING, colorTurn)];
+        if (kingBoard == 0) {
+            // No king to keep safe (not a playable position)
+            generateMoves(moves);
+            return;
+        }
+        int kingSquare = Long.numberOfTrailingZeros(kingBoard);
+        long checkers = attackers(kingSquare, colorTurn.getOpponent(), occupancy);
+        long pinned = findPinnedChessPieces(kingSquare, colorTurn);
+
+        long chessPieces = colorBoards[colorTurn.ordinal()];
+        while (chessPieces != 0) {
+            generateLegalMoves(Long.numberOfTrailingZeros(chessPieces), moves, kingSquare, checkers, pinned);
+            chessPieces &= chessPieces - 1;
+        }
+    }
+
+    /**
+     * Add the legal moves of the chess piece on a square (regardless of the turn, en passant only for the player
+     * whose turn it is) to a move list
+     *
+     * @param square The square index, not empty
+     * @param moves  The move list to fill
+     */
+    public void generateLegalMoves(int square, MoveList moves) {
+        ChessColor color = getChessPiece(square).getChessColor();
+        long kingBoard = pieceBoards[boardIndex(ChessPieceType.KING, color)];
+        if (kingBoard == 0) {
+            getChessPiece(square).generateMoves(this, square, moves);
+            return;
+        }
+        int kingSquare = Long.numberOfTrailingZeros(kingBoard);
+        generateLegalMoves(square, moves, kingSquare, attackers(kingSquare, color.getOpponent(), occupancy),
+                findPinnedChessPieces(kingSquare, color));
+    }
+
+    /**
+     * Add the legal moves of the chess piece on a square to a move list
+     *
+     * @param from       The square index, not empty
+     * @param moves      The move list to fill
+     * @param kingSquare The square of the king of the chess piece color
+     * @param checkers   The opponent chess pieces giving check
+     * @param pinned     The chess pieces pinned on their king
+     */
+    private void generateLegalMoves(int from, MoveList moves, int kingSquare, long checkers, long pinned) {
+        BaseChessPiece chessPiece = getChessPiece(from);
+        ChessColor opponent = chessPiece.getChessColor().getOpponent();
+
+        if (from == kingSquare) {
+            // The king is removed from the occupancy : it cannot step back along the ray of a slider
+            long occupancyWithoutKing = occupancy & ~(1L << kingSquare);
+            long steps = King.attacks(kingSquare) & ~colorBoards[opponent.getOpponent().ordinal()];
+            long safe = 0L;
+            while (steps != 0) {
+                int to = Long.numberOfTrailingZeros(steps);
+                if (attackers(to, opponent, occupancyWithoutKing) == 0) {
+                    safe |= 1L << to;
+                }
+                steps &= steps - 1;
+            }
+            // Castling moves are not king steps, they check their own squares
+            chessPiece.generateMoves(this, from, moves, safe | ~King.attacks(kingSquare));
+            return;
+        }
+        if ((checkers & (checkers - 1)) != 0) {
+            // Double check : only the king can move
+            return;
+        }
+
+        long allowed = checkers == 0 ? ~0L : checkers | MagicBitboards.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+        if ((pinned & (1L << from)) != 0) {
+            allowed &= MagicBitboards.line(kingSquare, from);
+        }
+        if (enPassantSquare != Pos.NO_SQUARE && chessPiece.getType() == ChessPieceType.PAWN) {
+            // A pawn can only reach the en passant square by capturing en passant
+            long enPassantBit = 1L << enPassantSquare;
+            allowed &= ~enPassantBit;
+            if (chessPiece.getChessColor() == colorTurn && isLegalEnPassant(from, kingSquare)) {
+                allowed |= enPassantBit;
+            }
+        }
+        chessPiece.generateMoves(this, from, moves, allowed);
+    }
+
+    /**
+     * Check if an en passant capture keeps the king safe (the two pawns leave the same rank at once)
+     *
+     * @param from       The capturing pawn square
+     * @param kingSquare The capturing side king square
+     * @return true if legal
+     */
+    private boolean isLegalEnPassant(int from, int kingSquare) {
+        long captured = 1L << (from - from % Pos.BOARD_SIZE.x + enPassantSquare % Pos.BOARD_SIZE.x);
+        long occupancyAfter = (occupancy & ~(1L << from) & ~captured) | (1L << enPassantSquare);
+        return (attackers(kingSquare, colorTurn.getOpponent(), occupancyAfter) & ~captured) == 0;
+    }
+
+    /**
+     * Find the chess pieces of a color alone between their king and an opponent slider
+     *
+     * @param kingSquare The king square
+     * @param color      The chess pieces color
+     * @return The pinned chess pieces
+     */
+    private long findPinnedChessPieces(int kingSquare, ChessColor color) {
+        ChessColor opponent = color.getOpponent();
+        long queens = pieceBoards[boardIndex(ChessPieceType.QUEEN, opponent)];
+        long snipers = (MagicBitboards.rookAttacks(kingSquare, 0L) & (pieceBoards[boardIndex(ChessPieceType.ROOK, opponent)] | queens))
+                | (MagicBitboards.bishopAttacks(kingSquare, 0L) & (pieceBoards[boardIndex(ChessPieceType.BISHOP, opponent)] | queens));
+
+        long pinned = 0L;
+        while (snipers != 0) {
+            long blockers = MagicBitboards.between(kingSquare, Long.numberOfTrailingZeros(snipers)) & occupancy;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+                pinned |= blockers & colorBoards[color.ordinal()];
+            }
+            snipers &= snipers - 1;
+        }
+        return pinned;
+    }
+
+    /**
+     * Play an encoded move generated for the current position, without any check (can be reverted with {@link #unmakeMove()})
+     *
+     * @param move The encoded move (see {@link Move})
+     */
+    public void makeMove(int move) {
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        int flags = Move.getFlags(move);
+
+        if (undoSize == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoSize * 2);
+            keyHistory = Arrays.copyOf(keyHistory, undoSize * 2);
+            halfmoveClocks = Arrays.copyOf(halfmoveClocks, undoSize * 2);
+        }
+        keyHistory[undoSize] = positionKey;
+        halfmoveClocks[undoSize] = halfmoveClock;
+
+        positionKey ^= Zobrist.CASTLING[castlingRights] ^ enPassantKey();
+
+        int chessPiece = removeChessPiece(from);
+        ChessColor color = BaseChessPiece.of(chessPiece).getChessColor();
+
+        int captured;
+        if (flags == Move.EN_PASSANT) {
+            captured = removeChessPiece(color.equals(ChessColor.WHITE) ? to + Pos.BOARD_SIZE.x : to - Pos.BOARD_SIZE.x);
         } else {
-            this.colorTurn = ChessColor.WHITE;
+            captured = removeChessPiece(to);
+        }
+        halfmoveClock = captured >= 0 || chessPiece / COLOR_COUNT == ChessPieceType.PAWN.ordinal() ? 0 : halfmoveClock + 1;
+        if (color == ChessColor.BLACK) {
+            fullmoveNumber++;
         }
 
-        gameStates.add(new GameState(whiteChessPieces, blackChessPieces, colorTurn));
-        updateGameStatus();
+        undoStack[undoSize++] = move
+                | (captured + 1) << UNDO_CAPTURED_SHIFT
+                | castlingRights << UNDO_CASTLING_SHIFT
+                | (enPassantSquare + 1) << UNDO_EN_PASSANT_SHIFT;
+
+        if (Move.isPromotion(move)) {
+            chessPiece = boardIndex(Move.getPromotion(move), color);
+        }
+        putChessPiece(to, chessPiece);
+
+        if (flags == Move.KING_CASTLE) {
+            putChessPiece(from + 1, removeChessPiece(from + 3));
+        } else if (flags == Move.QUEEN_CASTLE) {
+            putChessPiece(from - 1, removeChessPiece(from - 4));
+        }
+
+        castlingRights &= CASTLING_RIGHTS_MASKS[from] & CASTLING_RIGHTS_MASKS[to];
+        int previousEnPassantSquare = enPassantSquare;
+        enPassantSquare = flags == Move.DOUBLE_PAWN_PUSH ? (from + to) / 2 : Pos.NO_SQUARE;
+        colorTurn = color.getOpponent();
+
+        positionKey ^= Zobrist.BLACK_TO_MOVE ^ Zobrist.CASTLING[castlingRights] ^ enPassantKey();
+        position = null;
+        if (cachedSquares != 0) {
+            invalidateMoveCache(move, previousEnPassantSquare);
+        }
+    }
+
+    /**
+     * Revert the last move played with {@link #makeMove(int)}
+     */
+    public void unmakeMove() {
+        int entry = undoStack[--undoSize];
+        halfmoveClock = halfmoveClocks[undoSize];
+        int move = entry & 0xFFFF;
+        int captured = (entry >>> UNDO_CAPTURED_SHIFT) & 0xF;
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        int flags = Move.getFlags(move);
+        ChessColor color = colorTurn.getOpponent();
+        if (color == ChessColor.BLACK) {
+            fullmoveNumber--;
+        }
+
+        positionKey ^= Zobrist.BLACK_TO_MOVE ^ Zobrist.CASTLING[castlingRights] ^ enPassantKey();
+
+        int chessPiece = removeChessPiece(to);
+        if (Move.isPromotion(move)) {
+            chessPiece = boardIndex(ChessPieceType.PAWN, color);
+        }
+        putChessPiece(from, chessPiece);
+
+        if (flags == Move.KING_CASTLE) {
+            putChessPiece(from + 3, removeChessPiece(from + 1));
+        } else if (flags == Move.QUEEN_CASTLE) {
+            putChessPiece(from - 4, removeChessPiece(from - 1));
+        }
+
+        if (captured != 0) {
+            int capturedSquare = to;
+            if (flags == Move.EN_PASSANT) {
+                capturedSquare = color.equals(ChessColor.WHITE) ? to + Pos.BOARD_SIZE.x : to - Pos.BOARD_SIZE.x;
+            }
+            putChessPiece(capturedSquare, captured - 1);
+        }
+
+        castlingRights = (entry >>> UNDO_CASTLING_SHIFT) & 0xF;
+        int previousEnPassantSquare = enPassantSquare;
+        enPassantSquare = ((entry >>> UNDO_EN_PASSANT_SHIFT) & 0x7F) - 1;
+        colorTurn = color;
+
+        positionKey ^= Zobrist.CASTLING[castlingRights] ^ enPassantKey();
+        position = null;
+        if (cachedSquares != 0) {
+            invalidateMoveCache(move, previousEnPassantSquare);
+        }
+    }
+
+    /**
+     * Get the en passant part of the position key (only when the player whose turn it is can capture en passant)
+     *
+     * @return The en passant key (0 if none)
+     */
+    private long enPassantKey() {
+        if (enPassantSquare == Pos.NO_SQUARE
+                || (Pawn.captures(colorTurn.getOpponent(), enPassantSquare) & pieceBoards[boardIndex(ChessPieceType.PAWN, colorTurn)]) == 0) {
+            return 0L;
+        }
+        return Zobrist.EN_PASSANT[enPassantSquare % Pos.BOARD_SIZE.x];
+    }
+
+    /**
+     * Get the Zobrist key of the current position (same position, same key, whatever the moves that led to it)
+     *
+     * @return The 64-bit position key
+     */
+    public long getPositionKey() {
+        return positionKey;
+    }
+
+    /**
+     * Get the middle game value of the position, kept up to date by every move and undo
+     *
+     * @return The sum of the material and square values from the white point of view
+     */
+    public int getMidgameScore() {
+        return midgameScore;
+    }
+
+    /**
+     * Get the end game value of the position, kept up to date by every move and undo
+     *
+     * @return The sum of the material and square values from the white point of view
+     */
+    public int getEndgameScore() {
+        return endgameScore;
+    }
+
+    /**
+     * Get the game phase, kept up to date by every move and undo
+     *
+     * @return The sum of the phase weights ({@link PieceSquareTables#MAX_PHASE} at the start, more after promotions)
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * Check if a square is attacked by a color
+     *
+     * @param square   The square index
+     * @param attacker The attacking color
+     * @return true if at least one chess piece of this color attacks the square
+     */
+    public boolean isSquareAttacked(int square, ChessColor attacker) {
+        long queens = pieceBoards[boardIndex(ChessPieceType.QUEEN, attacker)];
+        return (Pawn.captures(attacker.getOpponent(), square) & pieceBoards[boardIndex(ChessPieceType.PAWN, attacker)]) != 0
+                || (Knight.attacks(square) & pieceBoards[boardIndex(ChessPieceType.KNIGHT, attacker)]) != 0
+                || (King.attacks(square) & pieceBoards[boardIndex(ChessPieceType.KING, attacker)]) != 0
+                || (MagicBitboards.bishopAttacks(square, occupancy) & (pieceBoards[boardIndex(ChessPieceType.BISHOP, attacker)] | queens)) != 0
+                || (MagicBitboards.rookAttacks(square, occupancy) & (pieceBoards[boardIndex(ChessPieceType.ROOK, attacker)] | queens)) != 0;
+    }
+
+    /**
+     * Find the chess pieces of a color attacking a square
+     *
+     * @param square    The square index
+     * @param attacker  The attacking color
+     * @param occupancy The occupied squares blocking the sliders
+     * @return The bitboard of the attackers
+     */
+    private long attackers(int square, ChessColor attacker, long occupancy) {
+        long queens = pieceBoards[boardIndex(ChessPieceType.QUEEN, attacker)];
+        return (Pawn.captures(attacker.getOpponent(), square) & pieceBoards[boardIndex(ChessPieceType.PAWN, attacker)])
+                | (Knight.attacks(square) & pieceBoards[boardIndex(ChessPieceType.KNIGHT, attacker)])
+                | (King.attacks(square) & pieceBoards[boardIndex(ChessPieceType.KING, attacker)])
+                | (MagicBitboards.bishopAttacks(square, occupancy) & (pieceBoards[boardIndex(ChessPieceType.BISHOP, attacker)] | queens))
+                | (MagicBitboards.rookAttacks(square, occupancy) & (pieceBoards[boardIndex(ChessPieceType.ROOK, attacker)] | queens));
+    }
+
+    /**
+     * Check if the king of a color is attacked
+     *
+     * @param color The king color
+     * @return true if in check
+     */
+    public boolean isInCheck(ChessColor color) {
+        long king = pieceBoards[boardIndex(ChessPieceType.KING, color)];
+        return king != 0 && isSquareAttacked(Long.numberOfTrailingZeros(king), color.getOpponent());
+    }
+
+    /**
+     * Get the remaining castling rights
+     *
+     * @return The castling rights (see {@link #WHITE_KING_SIDE} and others)
+     */
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    /**
+     * Get the en passant square
+     *
+     * @return The square behind a pawn that just moved two squares ({@link Pos#NO_SQUARE} if none)
+     */
+    public int getEnPassantSquare() {
+        return enPassantSquare;
     }
 
     /**
      * Get all chess pieces by color
      *
      * @param color The color of chess pieces
-     * @return All chess pieces by color
+     * @return All chess pieces by color (read-only, shared until the position changes)
      */
-    public HashMap<Pos, BaseChessPiece> getChessPieces(ChessColor color) {
-        if (color.equals(ChessColor.WHITE)) {
-            return (HashMap<Pos, BaseChessPiece>) whiteChessPieces.clone();
-        } else {
-            return (HashMap<Pos, BaseChessPiece>) blackChessPieces.clone();
-        }
+    public Map<Pos, BaseChessPiece> getChessPieces(ChessColor color) {
+        return getPosition().getChessPieces(color);
+    }
+
+    /**
+     * Get the chess piece on a square
+     *
+     * @param square The square index
+     * @return The chess piece (null if empty)
+     */
+    public BaseChessPiece getChessPiece(int square) {
+        int index = squares[square] - 1;
+        return index < 0 ? null : BaseChessPiece.of(index);
+    }
+
+    /**
+     * Get all occupied squares
+     *
+     * @return The occupancy bitboard
+     */
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Get all squares occupied by a color
+     *
+     * @param color The chess pieces color
+     * @return The occupancy bitboard of this color
+     */
+    public long getOccupancy(ChessColor color) {
+        return colorBoards[color.ordinal()];
+    }
+
+    /**
+     * Get all squares occupied by a chess piece type of a color
+     *
+     * @param type  The chess piece type
+     * @param color The chess piece color
+     * @return The bitboard of these chess pieces
+     */
+    public long getChessPieceBoard(ChessPieceType type, ChessColor color) {
+        return pieceBoards[boardIndex(type, color)];
+    }
+
+    /**
+     * Play a legal encoded move and update the game status (use makeMove while searching)
+     *
+     * @param move The encoded move (legal)
+     */
+    public void play(int move) {
+        makeMove(move);
+        updateGameStatus();
     }
 
     /**
      * Undo
      */
     public void undo() {
-        if (gameStates.size() > 1) {
-            gameStates.remove(gameStates.size() - 1);
-
-            GameState gameState = gameStates.get(gameStates.size() - 1);
-            this.colorTurn = gameState.getColorTurn();
-            this.whiteChessPieces = gameState.getWhiteChessPieces();
-            this.blackChessPieces = gameState.getBlackChessPieces();
+        if (undoSize > 0) {
+            unmakeMove();
+            updateGameStatus();
         }
     }
 
     /**
-     * Update the current game status
+     * Update the current game status (captured king, checkmate, stalemate, threefold repetition or fifty-move rule)
      */
     private void updateGameStatus() {
+        gameStatus = GameStatus.IN_GAME;
         for (ChessColor color : ChessColor.values()) {
-            boolean kingIsDead = true;
-            for (Map.Entry<Pos, BaseChessPiece> entrySet : this.getChessPieces(color).entrySet()) {
-                if (entrySet.getValue() instanceof King) {
-                    kingIsDead = false;
-                    break;
-                }
-            }
+            boolean kingIsDead = pieceBoards[boardIndex(ChessPieceType.KING, color)] == 0;
 
             if (kingIsDead && color.equals(ChessColor.WHITE)) {
                 gameStatus = GameStatus.BLACK_WIN;
@@ -191,6 +1362,89 @@ public class Game {
                 gameStatus = GameStatus.WHITE_WIN;
             }
         }
+
+        if (gameStatus == GameStatus.IN_GAME && !hasLegalMove()) {
+            if (!isInCheck(colorTurn)) {
+                gameStatus = GameStatus.DRAW;
+            } else {
+                gameStatus = colorTurn == ChessColor.WHITE ? GameStatus.BLACK_WIN : GameStatus.WHITE_WIN;
+            }
+        } else if (gameStatus == GameStatus.IN_GAME && (halfmoveClock >= FIFTY_MOVE_PLIES || countRepetitions() >= 2)) {
+            gameStatus = GameStatus.DRAW;
+        }
+    }
+
+    /**
+     * Check if the current position was already reached since the last capture or pawn move (used by the search,
+     * where a single repetition is enough to score a draw)
+     *
+     * @return true if repeated
+     */
+    public boolean isRepetition() {
+        int oldest = Math.max(0, undoSize - halfmoveClock);
+        for (int i = undoSize - 4; i >= oldest; i -= 2) {
+            if (keyHistory[i] == positionKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the previous occurrences of the current position since the last capture or pawn move : the positions
+     * with the same player to move, before an irreversible move none can come back
+     *
+     * @return The number of previous occurrences (2 for a threefold repetition)
+     */
+    public int countRepetitions() {
+        int count = 0;
+        int oldest = Math.max(0, undoSize - halfmoveClock);
+        for (int i = undoSize - 4; i >= oldest; i -= 2) {
+            if (keyHistory[i] == positionKey) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the plies since the last capture or pawn move (see {@link #FIFTY_MOVE_PLIES})
+     *
+     * @return The halfmove clock
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * Get the number of the current move (starts at 1, incremented after each black move)
+     *
+     * @return The fullmove number
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Check if the player whose turn it is has a legal move (stops at the first chess piece that can move)
+     *
+     * @return false if checkmate or stalemate
+     */
+    private boolean hasLegalMove() {
+        int kingSquare = Long.numberOfTrailingZeros(pieceBoards[boardIndex(ChessPieceType.KING, colorTurn)]);
+        long checkers = attackers(kingSquare, colorTurn.getOpponent(), occupancy);
+        long pinned = findPinnedChessPieces(kingSquare, colorTurn);
+        MoveList moves = scratchMoves();
+        moves.clear();
+
+        // King first : the only chess piece that can move in double check
+        generateLegalMoves(kingSquare, moves, kingSquare, checkers, pinned);
+        long chessPieces = colorBoards[colorTurn.ordinal()] & ~(1L << kingSquare);
+        while (chessPieces != 0 && moves.size() == 0) {
+            generateLegalMoves(Long.numberOfTrailingZeros(chessPieces), moves, kingSquare, checkers, pinned);
+            chessPieces &= chessPieces - 1;
+        }
+        return moves.size() > 0;
     }
 
     /**
@@ -206,13 +1460,22 @@ public class Game {
      * All chess colors
      */
     public enum ChessColor {
-        BLACK, WHITE
+        BLACK, WHITE;
+
+        /**
+         * Get the opposing color
+         *
+         * @return The opposing color
+         */
+        public ChessColor getOpponent() {
+            return this == WHITE ? BLACK : WHITE;
+        }
     }
 
     /**
      * List winner
      */
     public enum GameStatus {
-        IN_GAME, WHITE_WIN, BLACK_WIN
+        IN_GAME, WHITE_WIN, BLACK_WIN, DRAW
     }
 }
@@ -0,0 +1,219 @@
+package fr.romainguilbeau.chess.models.game;
+
+import fr.romainguilbeau.chess.models.chesspieces.BaseChessPiece;
+import fr.romainguilbeau.chess.models.chesspieces.ChessPieceType;
+
+/**
+ * Chess move encoded in 16 bits : from square (6 bits), to square (6 bits) and flags (4 bits)
+ */
+public final class Move {
+
+    /**
+     * No move
+     */
+    public static final int NONE = 0;
+    /**
+     * Quiet move
+     */
+    public static final int QUIET = 0;
+    /**
+     * Pawn moving two squares
+     */
+    public static final int DOUBLE_PAWN_PUSH = 1;
+    /**
+     * King side castling
+     */
+    public static final int KING_CASTLE = 2;
+    /**
+     * Queen side castling
+     */
+    public static final int QUEEN_CASTLE = 3;
+    /**
+     * Capture
+     */
+    public static final int CAPTURE = 4;
+    /**
+     * En passant capture
+     */
+    public static final int EN_PASSANT = 5;
+    /**
+     * Promotion flag, the two lowest flag bits give the promotion type (knight, bishop, rook, queen)
+     */
+    public static final int PROMOTION = 8;
+    /**
+     * Bit offset of the to square
+     */
+    private static final int TO_SHIFT = 6;
+    /**
+     * Bit offset of the flags
+     */
+    private static final int FLAGS_SHIFT = 12;
+    /**
+     * Square mask (6 bits)
+     */
+    private static final int SQUARE_MASK = 0x3F;
+    /**
+     * Promotion types, indexed by the two lowest flag bits
+     */
+    private static final ChessPieceType[] PROMOTION_TYPES = {ChessPieceType.KNIGHT, ChessPieceType.BISHOP, ChessPieceType.ROOK, ChessPieceType.QUEEN};
+
+    /**
+     * Static helpers only
+     */
+    private Move() {
+    }
+
+    /**
+     * Encode a move
+     *
+     * @param from  The from square
+     * @param to    The to square
+     * @param flags The move flags
+     * @return The encoded move
+     */
+    public static int encode(int from, int to, int flags) {
+        return from | (to << TO_SHIFT) | (flags << FLAGS_SHIFT);
+    }
+
+    /**
+     * Encode a promotion
+     *
+     * @param from      The from square
+     * @param to        The to square
+     * @param promotion The new chess piece type (knight, bishop, rook or queen)
+     * @param capture   true if the promotion captures
+     * @return The encoded move
+     */
+    public static int encodePromotion(int from, int to, ChessPieceType promotion, boolean capture) {
+        int flags = PROMOTION | (promotion.ordinal() - ChessPieceType.KNIGHT.ordinal());
+        if (capture) {
+            flags |= CAPTURE;
+        }
+        return encode(from, to, flags);
+    }
+
+    /**
+     * Get the from square
+     *
+     * @param move The encoded move
+     * @return The from square
+     */
+    public static int getFrom(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /**
+     * Get the to square
+     *
+     * @param move The encoded move
+     * @return The to square
+     */
+    public static int getTo(int move) {
+        return (move >>> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Get the move flags
+     *
+     * @param move The encoded move
+     * @return The move flags
+     */
+    public static int getFlags(int move) {
+        return move >>> FLAGS_SHIFT;
+    }
+
+    /**
+     * Check if the move captures a chess piece (en passant included)
+     *
+     * @param move The encoded move
+     * @return true if capture
+     */
+    public static boolean isCapture(int move) {
+        return (getFlags(move) & CAPTURE) != 0;
+    }
+
+    /**
+     * Check if the move is a promotion
+     *
+     * @param move The encoded move
+     * @return true if promotion
+     */
+    public static boolean isPromotion(int move) {
+        return (getFlags(move) & PROMOTION) != 0;
+    }
+
+    /**
+     * Get the promotion type
+     *
+     * @param move The encoded move
+     * @return The new chess piece type (null if not a promotion)
+     */
+    public static ChessPieceType getPromotion(int move) {
+        return isPromotion(move) ? PROMOTION_TYPES[getFlags(move) & 3] : null;
+    }
+
+    /**
+     * Find a legal move from its UCI notation
+     *
+     * @param game The game (left unchanged)
+     * @param uci  The move in UCI notation (for example "e2e4" or "e7e8q")
+     * @return The encoded move, {@link #NONE} if not a legal move
+     */
+    public static int fromUci(Game game, String uci) {
+        return fromUci(game, uci, new MoveList());
+    }
+
+    /**
+     * Find a legal move from its UCI notation, without allocating a move list
+     *
+     * @param game  The game (left unchanged)
+     * @param uci   The move in UCI notation (for example "e2e4" or "e7e8q")
+     * @param moves The move list used to generate the moves (cleared)
+     * @return The encoded move, {@link #NONE} if not a legal move
+     */
+    public static int fromUci(Game game, String uci, MoveList moves) {
+        if (uci.length() < 4 || uci.length() > 5) {
+            return NONE;
+        }
+        int from;
+        int to;
+        try {
+            from = Pos.of(uci.subSequence(0, 2)).getIndex();
+            to = Pos.of(uci.subSequence(2, 4)).getIndex();
+        } catch (IndexOutOfBoundsException e) {
+            return NONE;
+        }
+        ChessPieceType promotion = uci.length() == 5 ? ChessPieceType.fromSymbol(uci.charAt(4)) : null;
+        if (uci.length() == 5 && promotion == null) {
+            return NONE;
+        }
+
+        BaseChessPiece chessPiece = game.getChessPiece(from);
+        if (chessPiece == null || chessPiece.getChessColor() != game.getColorTurn()) {
+            return NONE;
+        }
+        moves.clear();
+        game.generateLegalMoves(from, moves);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (getTo(move) == to && getPromotion(move) == promotion) {
+                return move;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Get the move in UCI notation
+     *
+     * @param move The encoded move
+     * @return The move in UCI notation (for example "e2e4" or "e7e8q")
+     */
+    public static String toUci(int move) {
+        String uci = Pos.of(getFrom(move)).getName() + Pos.of(getTo(move)).getName();
+        if (isPromotion(move)) {
+            uci += getPromotion(move).getSymbol();
+        }
+        return uci;
+    }
+}
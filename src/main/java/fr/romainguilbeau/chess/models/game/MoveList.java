@@ -0,0 +1,89 @@
+package fr.romainguilbeau.chess.models.game;
+
+/**
+ * Reusable buffer of encoded moves (see {@link Move})
+ */
+public class MoveList {
+
+    /**
+     * Max moves in a chess position (218 legal moves is the known maximum)
+     */
+    public static final int CAPACITY = 256;
+
+    /**
+     * The encoded moves
+     */
+    private final int[] moves;
+    /**
+     * The moves count
+     */
+    private int size;
+
+    /**
+     * Create new empty move list
+     */
+    public MoveList() {
+        this.moves = new int[CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Add a move
+     *
+     * @param move The encoded move
+     */
+    public void add(int move) {
+        moves[size++] = move;
+    }
+
+    /**
+     * Get a move
+     *
+     * @param index The move index
+     * @return The encoded move
+     */
+    public int get(int index) {
+        return moves[index];
+    }
+
+    /**
+     * Replace a move
+     *
+     * @param index The move index
+     * @param move  The encoded move
+     */
+    public void set(int index, int move) {
+        moves[index] = move;
+    }
+
+    /**
+     * Get the moves count
+     *
+     * @return The moves count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if a move is in the list
+     *
+     * @param move The encoded move
+     * @return true if present
+     */
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove all moves
+     */
+    public void clear() {
+        size = 0;
+    }
+}
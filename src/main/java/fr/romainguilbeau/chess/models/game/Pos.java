@@ -1,13 +1,47 @@
 package fr.romainguilbeau.chess.models.game;
 
 import java.awt.*;
-import java.util.Objects;
 
 /**
  * Position of chess piece
  */
 public class Pos {
 
+    /**
+     * Chess board size
+     */
+    public static final Point BOARD_SIZE = new Point(8, 8);
+    /**
+     * Square index returned when a neighbour is outside the board
+     */
+    public static final int NO_SQUARE = -1;
+    /**
+     * Sentinel position returned when a neighbour is outside the board
+     */
+    public static final Pos OUTSIDE = new Pos(NO_SQUARE, NO_SQUARE, NO_SQUARE);
+    /**
+     * All board positions, indexed by square
+     */
+    private static final Pos[] POSITIONS = new Pos[BOARD_SIZE.x * BOARD_SIZE.y];
+    /**
+     * Neighbour square of each square, indexed by direction then square ({@link #NO_SQUARE} if outside board)
+     */
+    private static final int[][] NEIGHBOURS = new int[Direction.values().length][POSITIONS.length];
+
+    static {
+        for (int square = 0; square < POSITIONS.length; square++) {
+            POSITIONS[square] = new Pos(square % BOARD_SIZE.x, square / BOARD_SIZE.x, square);
+        }
+
+        for (Direction direction : Direction.values()) {
+            for (Pos pos : POSITIONS) {
+                int x = pos.x + direction.getDeltaX();
+                int y = pos.y + direction.getDeltaY();
+                NEIGHBOURS[direction.ordinal()][pos.index] = isOnBoard(x, y) ? y * BOARD_SIZE.x + x : NO_SQUARE;
+            }
+        }
+    }
+
     /**
      * The x position
      */
@@ -16,24 +50,87 @@ public class Pos {
      * The y position
      */
     private final int y;
+    /**
+     * The square index (y * 8 + x)
+     */
+    private final int index;
 
     /**
-     * Chess board size
+     * Create new chess position (only used to build the position table)
+     *
+     * @param x     The x position
+     * @param y     The y position
+     * @param index The square index
      */
-    public static final Point BOARD_SIZE = new Point(8, 8);
+    private Pos(int x, int y, int index) {
+        this.x = x;
+        this.y = y;
+        this.index = index;
+    }
 
     /**
-     * Create new chess position
+     * Get the chess position of a cell
      *
      * @param x The x position
      * @param y The y position
+     * @return The shared position instance
+     * @throws IndexOutOfBoundsException if outside board
      */
-    public Pos(int x, int y) {
-        if (x < 0 || x > BOARD_SIZE.x - 1 || y < 0 || y > BOARD_SIZE.y - 1) {
+    public static Pos of(int x, int y) throws IndexOutOfBoundsException {
+        if (!isOnBoard(x, y)) {
             throw new IndexOutOfBoundsException("Outside board");
         }
-        this.x = x;
-        this.y = y;
+        return POSITIONS[y * BOARD_SIZE.x + x];
+    }
+
+    /**
+     * Get the chess position of a square index
+     *
+     * @param index The square index (0 to 63)
+     * @return The shared position instance
+     * @throws IndexOutOfBoundsException if outside board
+     */
+    public static Pos of(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= POSITIONS.length) {
+            throw new IndexOutOfBoundsException("Outside board");
+        }
+        return POSITIONS[index];
+    }
+
+    /**
+     * Get the chess position of a square name
+     *
+     * @param name The square name in algebraic notation (for example "e4")
+     * @return The shared position instance
+     * @throws IndexOutOfBoundsException if not a square name
+     */
+    public static Pos of(CharSequence name) throws IndexOutOfBoundsException {
+        if (name.length() != 2) {
+            throw new IndexOutOfBoundsException("Outside board");
+        }
+        return of(name.charAt(0) - 'a', '8' - name.charAt(1));
+    }
+
+    /**
+     * Check if a cell is on the board
+     *
+     * @param x The x position
+     * @param y The y position
+     * @return true if the cell is on the board
+     */
+    public static boolean isOnBoard(int x, int y) {
+        return x >= 0 && x < BOARD_SIZE.x && y >= 0 && y < BOARD_SIZE.y;
+    }
+
+    /**
+     * Get the neighbour square of a square for a direction
+     *
+     * @param square    The square index
+     * @param direction The wanted direction
+     * @return The neighbour square index ({@link #NO_SQUARE} if outside board)
+     */
+    public static int neighbour(int square, Direction direction) {
+        return NEIGHBOURS[direction.ordinal()][square];
     }
 
     /**
@@ -55,34 +152,44 @@ public class Pos {
     }
 
     /**
-     * Increment position fot a direction
+     * Return the square index
+     *
+     * @return The square index (y * 8 + x)
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Get the square name in algebraic notation
+     *
+     * @return The square name (for example "e4")
+     */
+    public String getName() {
+        return new String(new char[]{(char) ('a' + x), (char) ('8' - y)});
+    }
+
+    /**
+     * Check if this position is on the board
+     *
+     * @return false for the {@link #OUTSIDE} sentinel
+     */
+    public boolean isOnBoard() {
+        return this.index != NO_SQUARE;
+    }
+
+    /**
+     * Get the neighbour position for a direction
      *
      * @param direction The wanted direction
-     * @return The new position
-     * @throws IndexOutOfBoundsException if invalid direction (out of board)
-     */
-    public Pos incrementPos(Direction direction) throws IndexOutOfBoundsException {
-        Pos newPos = this;
-        switch (direction) {
-            case NORTH:
-                return new Pos(newPos.getX(), newPos.getY() - 1);
-            case NORTH_EAST:
-                return new Pos(newPos.getX() + 1, newPos.getY() - 1);
-            case EAST:
-                return new Pos(newPos.getX() + 1, newPos.getY());
-            case SOUTH_EAST:
-                return new Pos(newPos.getX() + 1, newPos.getY() + 1);
-            case SOUTH:
-                return new Pos(newPos.getX(), newPos.getY() + 1);
-            case SOUTH_WEST:
-                return new Pos(newPos.getX() - 1, newPos.getY() + 1);
-            case WEST:
-                return new Pos(newPos.getX() - 1, newPos.getY());
-            case NORTH_WEST:
-                return new Pos(newPos.getX() - 1, newPos.getY() - 1);
-            default:
-                throw new IndexOutOfBoundsException();
+     * @return The neighbour position ({@link #OUTSIDE} if outside board)
+     */
+    public Pos getNeighbour(Direction direction) {
+        if (this.index == NO_SQUARE) {
+            return OUTSIDE;
         }
+        int square = NEIGHBOURS[direction.ordinal()][this.index];
+        return square == NO_SQUARE ? OUTSIDE : POSITIONS[square];
     }
 
     /**
@@ -93,8 +200,7 @@ public class Pos {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Pos pos = (Pos) o;
-        return x == pos.x &&
-                y == pos.y;
+        return index == pos.index;
     }
 
     /**
@@ -102,13 +208,52 @@ public class Pos {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        return index;
     }
 
     /**
      * All possible directions
      */
     public enum Direction {
-        NORTH, NORTH_EAST, EAST, SOUTH_EAST, SOUTH, SOUTH_WEST, WEST, NORTH_WEST
+        NORTH(0, -1), NORTH_EAST(1, -1), EAST(1, 0), SOUTH_EAST(1, 1),
+        SOUTH(0, 1), SOUTH_WEST(-1, 1), WEST(-1, 0), NORTH_WEST(-1, -1);
+
+        /**
+         * The x increment
+         */
+        private final int deltaX;
+        /**
+         * The y increment
+         */
+        private final int deltaY;
+
+        /**
+         * Create new direction
+         *
+         * @param deltaX The x increment
+         * @param deltaY The y increment
+         */
+        Direction(int deltaX, int deltaY) {
+            this.deltaX = deltaX;
+            this.deltaY = deltaY;
+        }
+
+        /**
+         * Get the x increment
+         *
+         * @return The x increment
+         */
+        public int getDeltaX() {
+            return deltaX;
+        }
+
+        /**
+         * Get the y increment
+         *
+         * @return The y increment
+         */
+        public int getDeltaY() {
+            return deltaY;
+        }
     }
 }
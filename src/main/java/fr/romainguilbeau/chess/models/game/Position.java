@@ -0,0 +1,240 @@
+package fr.romainguilbeau.chess.models.game;
+
+import fr.romainguilbeau.chess.models.chesspieces.BaseChessPiece;
+import fr.romainguilbeau.chess.models.chesspieces.ChessPieceType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of a game position : 12 bitboards and the state of the turn, compact enough to be kept and
+ * shared freely (see {@link Game#getPosition()})
+ * <p>
+ * The chess piece maps are built on the first request then shared by all the readers of the snapshot.
+ */
+public final class Position {
+
+    /**
+     * One bitboard per chess piece type and color, indexed like the game bitboards (never modified)
+     */
+    private final long[] pieceBoards;
+    /**
+     * The player whose turn it is
+     */
+    private final Game.ChessColor colorTurn;
+    /**
+     * Remaining castling rights (see {@link Game#WHITE_KING_SIDE} and others)
+     */
+    private final int castlingRights;
+    /**
+     * Square behind a pawn that just moved two squares ({@link Pos#NO_SQUARE} if none)
+     */
+    private final int enPassantSquare;
+    /**
+     * Zobrist key of the position
+     */
+    private final long positionKey;
+    /**
+     * All the chess pieces by square (built on first request)
+     */
+    private volatile Map<Pos, BaseChessPiece> chessPieces;
+    /**
+     * The chess pieces of each color by square (built on first request), indexed by color
+     */
+    private final Map<Pos, BaseChessPiece>[] colorChessPieces;
+
+    /**
+     * Create new snapshot
+     *
+     * @param pieceBoards     The piece bitboards (copied)
+     * @param colorTurn       The player whose turn it is
+     * @param castlingRights  The castling rights
+     * @param enPassantSquare The en passant square
+     * @param positionKey     The Zobrist key
+     */
+    Position(long[] pieceBoards, Game.ChessColor colorTurn, int castlingRights, int enPassantSquare, long positionKey) {
+        this.pieceBoards = pieceBoards.clone();
+        this.colorTurn = colorTurn;
+        this.castlingRights = castlingRights;
+        this.enPassantSquare = enPassantSquare;
+        this.positionKey = positionKey;
+        this.colorChessPieces = newMapArray(Game.COLOR_COUNT);
+    }
+
+    /**
+     * Get the player whose turn it is
+     *
+     * @return The color to move
+     */
+    public Game.ChessColor getColorTurn() {
+        return colorTurn;
+    }
+
+    /**
+     * Get the castling rights
+     *
+     * @return The castling rights (see {@link Game#WHITE_KING_SIDE} and others)
+     */
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    /**
+     * Get the en passant square
+     *
+     * @return The square behind a pawn that just moved two squares ({@link Pos#NO_SQUARE} if none)
+     */
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    /**
+     * Get the Zobrist key
+     *
+     * @return The 64-bit position key
+     */
+    public long getPositionKey() {
+        return positionKey;
+    }
+
+    /**
+     * Get all squares occupied by a chess piece type of a color
+     *
+     * @param type  The chess piece type
+     * @param color The chess piece color
+     * @return The bitboard of these chess pieces
+     */
+    public long getChessPieceBoard(ChessPieceType type, Game.ChessColor color) {
+        return pieceBoards[Game.boardIndex(type, color)];
+    }
+
+    /**
+     * Get all squares occupied by a color
+     *
+     * @param color The chess pieces color
+     * @return The occupancy bitboard of this color
+     */
+    public long getOccupancy(Game.ChessColor color) {
+        long occupancy = 0L;
+        for (int index = color.ordinal(); index < pieceBoards.length; index += Game.COLOR_COUNT) {
+            occupancy |= pieceBoards[index];
+        }
+        return occupancy;
+    }
+
+    /**
+     * Get all occupied squares
+     *
+     * @return The occupancy bitboard
+     */
+    public long getOccupancy() {
+        long occupancy = 0L;
+        for (long board : pieceBoards) {
+            occupancy |= board;
+        }
+        return occupancy;
+    }
+
+    /**
+     * Get the chess piece on a square
+     *
+     * @param square The square index
+     * @return The chess piece (null if empty)
+     */
+    public BaseChessPiece getChessPiece(int square) {
+        for (int index = 0; index < pieceBoards.length; index++) {
+            if ((pieceBoards[index] & (1L << square)) != 0) {
+                return BaseChessPiece.of(index);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get all the chess pieces (the same read-only map on every call)
+     *
+     * @return The chess pieces by square
+     */
+    public Map<Pos, BaseChessPiece> getChessPieces() {
+        Map<Pos, BaseChessPiece> map = chessPieces;
+        if (map == null) {
+            map = toChessPiecesMap(getOccupancy());
+            chessPieces = map;
+        }
+        return map;
+    }
+
+    /**
+     * Get the chess pieces of a color (the same read-only map on every call)
+     *
+     * @param color The chess pieces color
+     * @return The chess pieces by square
+     */
+    public Map<Pos, BaseChessPiece> getChessPieces(Game.ChessColor color) {
+        Map<Pos, BaseChessPiece> map;
+        synchronized (colorChessPieces) {
+            map = colorChessPieces[color.ordinal()];
+            if (map == null) {
+                map = toChessPiecesMap(getOccupancy(color));
+                colorChessPieces[color.ordinal()] = map;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Build a read-only map of the chess pieces on some squares
+     *
+     * @param board The bitboard of the wanted squares
+     * @return The chess pieces on these squares
+     */
+    private Map<Pos, BaseChessPiece> toChessPiecesMap(long board) {
+        HashMap<Pos, BaseChessPiece> map = new HashMap<>();
+        while (board != 0) {
+            int square = Long.numberOfTrailingZeros(board);
+            map.put(Pos.of(square), getChessPiece(square));
+            board &= board - 1;
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Create an empty array of chess pieces maps (generic arrays cannot be created directly)
+     *
+     * @param length The array length
+     * @return The array, filled with null
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<Pos, BaseChessPiece>[] newMapArray(int length) {
+        return (Map<Pos, BaseChessPiece>[]) new Map<?, ?>[length];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Position position = (Position) o;
+        return positionKey == position.positionKey
+                && colorTurn == position.colorTurn
+                && castlingRights == position.castlingRights
+                && enPassantSquare == position.enPassantSquare
+                && Arrays.equals(pieceBoards, position.pieceBoards);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(positionKey);
+    }
+}
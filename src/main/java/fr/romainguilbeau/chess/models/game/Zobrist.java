@@ -0,0 +1,62 @@
+package fr.romainguilbeau.chess.models.game;
+
+/**
+ * Random keys XORed together to build the position key of a game
+ */
+final class Zobrist {
+
+    /**
+     * One key per chess piece (bitboard index) and square
+     */
+    static final long[][] PIECE_SQUARE = new long[12][Pos.BOARD_SIZE.x * Pos.BOARD_SIZE.y];
+    /**
+     * Key added when black is to move
+     */
+    static final long BLACK_TO_MOVE;
+    /**
+     * One key per castling rights combination
+     */
+    static final long[] CASTLING = new long[16];
+    /**
+     * One key per en passant file
+     */
+    static final long[] EN_PASSANT = new long[Pos.BOARD_SIZE.x];
+
+    /**
+     * Fixed seed, the keys must be the same on every run
+     */
+    private static long seed = 0x3C6EF372FE94F82BL;
+
+    static {
+        for (long[] squareKeys : PIECE_SQUARE) {
+            for (int square = 0; square < squareKeys.length; square++) {
+                squareKeys[square] = nextKey();
+            }
+        }
+        BLACK_TO_MOVE = nextKey();
+        for (int i = 1; i < CASTLING.length; i++) {
+            CASTLING[i] = nextKey();
+        }
+        for (int i = 0; i < EN_PASSANT.length; i++) {
+            EN_PASSANT[i] = nextKey();
+        }
+    }
+
+    /**
+     * Static keys only
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * Get the next pseudo random key (SplitMix64)
+     *
+     * @return The next key
+     */
+    private static long nextKey() {
+        long z = (seed += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,175 @@
+package fr.romainguilbeau.chess.perft;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Multi-threaded perft : the first plies are split into fork/join tasks, each task counts its subtree on its own
+ * copy of the game
+ */
+public class ParallelPerft {
+
+    /**
+     * Default number of split plies (root moves and their replies)
+     */
+    public static final int DEFAULT_SPLIT_PLIES = 2;
+
+    /**
+     * Fork/join pool
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Number of plies split into tasks
+     */
+    private final int splitPlies;
+    /**
+     * Subtree counts shared by all the threads (null if not hashing)
+     */
+    private final PerftHash hash;
+    /**
+     * One sequential counter per thread
+     */
+    private final ThreadLocal<Perft> perfts;
+
+    /**
+     * Create new parallel perft counter
+     *
+     * @param threads    The number of threads
+     * @param splitPlies The number of plies split into tasks (at least 1)
+     * @param hash       The shared subtree counts (null to count every subtree)
+     */
+    public ParallelPerft(int threads, int splitPlies, PerftHash hash) {
+        if (splitPlies < 1) {
+            throw new IllegalArgumentException("At least one ply must be split");
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.splitPlies = splitPlies;
+        this.hash = hash;
+        this.perfts = ThreadLocal.withInitial(() -> new Perft(hash));
+    }
+
+    /**
+     * Count the leaf nodes of the legal move tree
+     *
+     * @param game  The game (left unchanged)
+     * @param depth The depth
+     * @return The leaf nodes count
+     */
+    public long perft(Game game, int depth) {
+        return pool.invoke(new PerftTask(game.copy(), depth, splitPlies));
+    }
+
+    /**
+     * Count the leaf nodes and print the count below each legal root move
+     *
+     * @param game  The game (left unchanged)
+     * @param depth The depth (at least 1)
+     * @return The leaf nodes count
+     */
+    public long divide(Game game, int depth) {
+        MoveList moves = new MoveList();
+        game.generateLegalMoves(moves);
+
+        List<Integer> rootMoves = new ArrayList<>();
+        List<PerftTask> tasks = new ArrayList<>();
+        for (int i = 0; i < moves.size(); i++) {
+            game.makeMove(moves.get(i));
+            rootMoves.add(moves.get(i));
+            tasks.add(new PerftTask(game.copy(), depth - 1, splitPlies - 1));
+            game.unmakeMove();
+        }
+
+        for (PerftTask task : tasks) {
+            pool.execute(task);
+        }
+        long nodes = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            long moveNodes = tasks.get(i).join();
+            System.out.println(Move.toUci(rootMoves.get(i)) + ": " + moveNodes);
+            nodes += moveNodes;
+        }
+        return nodes;
+    }
+
+    /**
+     * Stop the threads, the counter can no longer be used
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Count of one subtree, split into one task per legal move while split plies remain
+     */
+    private class PerftTask extends RecursiveTask<Long> {
+
+        /**
+         * Serialization version (tasks are never serialized)
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The subtree root (owned by the task)
+         */
+        private final Game game;
+        /**
+         * The remaining depth
+         */
+        private final int depth;
+        /**
+         * The remaining split plies
+         */
+        private final int splitPlies;
+
+        /**
+         * Create new subtree count
+         *
+         * @param game       The subtree root (owned by the task)
+         * @param depth      The remaining depth
+         * @param splitPlies The remaining split plies
+         */
+        PerftTask(Game game, int depth, int splitPlies) {
+            this.game = game;
+            this.depth = depth;
+            this.splitPlies = splitPlies;
+        }
+
+        @Override
+        protected Long compute() {
+            if (splitPlies <= 0 || depth <= 2) {
+                return perfts.get().perft(game, depth);
+            }
+            if (hash != null) {
+                long nodes = hash.probe(game.getPositionKey(), depth);
+                if (nodes != PerftHash.NO_ENTRY) {
+                    return nodes;
+                }
+            }
+
+            MoveList moves = new MoveList();
+            game.generateLegalMoves(moves);
+
+            List<PerftTask> tasks = new ArrayList<>();
+            for (int i = 0; i < moves.size(); i++) {
+                game.makeMove(moves.get(i));
+                tasks.add(new PerftTask(game.copy(), depth - 1, splitPlies - 1));
+                game.unmakeMove();
+            }
+
+            long nodes = 0;
+            for (PerftTask task : invokeAll(tasks)) {
+                nodes += task.join();
+            }
+            if (hash != null) {
+                hash.store(game.getPositionKey(), depth, nodes);
+            }
+            return nodes;
+        }
+    }
+}
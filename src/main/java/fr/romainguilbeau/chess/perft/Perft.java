@@ -0,0 +1,230 @@
+package fr.romainguilbeau.chess.perft;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+
+import java.util.Arrays;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Move generator node counter (perft), used as correctness gate and throughput benchmark
+ * <p>
+ * Usage :
+ * <ul>
+ * <li>{@code Perft <depth> [fen]} : count the nodes of one position with a per move breakdown (divide)</li>
+ * <li>{@code Perft --suite [max depth]} : count all the reference positions and check the known node counts</li>
+ * </ul>
+ * Options (before the arguments) : {@code --threads <n>} counts with a fork/join pool of n threads,
+ * {@code --hash <MB>} counts the transposed subtrees once.
+ */
+public class Perft {
+
+    /**
+     * Max supported depth
+     */
+    private static final int MAX_DEPTH = 64;
+    /**
+     * Default max depth of the reference suite
+     */
+    private static final int DEFAULT_SUITE_DEPTH = 4;
+
+    /**
+     * One move list per depth (no allocation while counting)
+     */
+    private final MoveList[] moveLists;
+    /**
+     * Subtree counts (null if not hashing)
+     */
+    private final PerftHash hash;
+
+    /**
+     * Create new perft counter
+     */
+    public Perft() {
+        this(null);
+    }
+
+    /**
+     * Create new perft counter
+     *
+     * @param hash The subtree counts, may be shared between counters (null to count every subtree)
+     */
+    public Perft(PerftHash hash) {
+        this.hash = hash;
+        this.moveLists = new MoveList[MAX_DEPTH + 1];
+        for (int i = 0; i < moveLists.length; i++) {
+            moveLists[i] = new MoveList();
+        }
+    }
+
+    /**
+     * Count the leaf nodes of the legal move tree
+     *
+     * @param game  The game (left unchanged)
+     * @param depth The depth
+     * @return The leaf nodes count
+     */
+    public long perft(Game game, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Max depth is " + MAX_DEPTH);
+        }
+
+        if (hash != null && depth > 1) {
+            long nodes = hash.probe(game.getPositionKey(), depth);
+            if (nodes != PerftHash.NO_ENTRY) {
+                return nodes;
+            }
+        }
+
+        MoveList moves = moveLists[depth];
+        game.generateLegalMoves(moves);
+        if (depth == 1) {
+            // Bulk count : the legal moves are the leaves
+            return moves.size();
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            game.makeMove(moves.get(i));
+            nodes += perft(game, depth - 1);
+            game.unmakeMove();
+        }
+
+        if (hash != null && depth > 1) {
+            hash.store(game.getPositionKey(), depth, nodes);
+        }
+        return nodes;
+    }
+
+    /**
+     * Count the leaf nodes and print the count below each legal root move
+     *
+     * @param game  The game (left unchanged)
+     * @param depth The depth (at least 1)
+     * @return The leaf nodes count
+     */
+    public long divide(Game game, int depth) {
+        MoveList moves = new MoveList();
+        game.generateLegalMoves(moves);
+
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            game.makeMove(moves.get(i));
+            long moveNodes = perft(game, depth - 1);
+            System.out.println(Move.toUci(moves.get(i)) + ": " + moveNodes);
+            nodes += moveNodes;
+            game.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Count the reference positions and compare with the known node counts
+     *
+     * @param maxDepth The max depth
+     * @return true if all the counts match
+     */
+    public boolean runSuite(int maxDepth) {
+        return runSuite(maxDepth, this::perft);
+    }
+
+    /**
+     * Count the reference positions with any counter and compare with the known node counts
+     *
+     * @param maxDepth The max depth
+     * @param counter  The leaf nodes counter (game, depth)
+     * @return true if all the counts match
+     */
+    static boolean runSuite(int maxDepth, ToLongBiFunction<Game, Integer> counter) {
+        boolean success = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+
+        for (PerftPosition position : PerftPosition.values()) {
+            System.out.println(position.getName() + " : " + position.getFen());
+            Game game = Game.fromFen(position.getFen());
+
+            for (int depth = 1; depth <= Math.min(maxDepth, position.getMaxDepth()); depth++) {
+                long start = System.nanoTime();
+                long nodes = counter.applyAsLong(game, depth);
+                long nanos = System.nanoTime() - start;
+                totalNodes += nodes;
+                totalNanos += nanos;
+
+                boolean match = nodes == position.getNodes(depth);
+                success &= match;
+                System.out.printf("  depth %d : %12d nodes %8d ms %12d nps  %s%n",
+                        depth, nodes, nanos / 1_000_000, nodesPerSecond(nodes, nanos),
+                        match ? "OK" : "FAILED (expected " + position.getNodes(depth) + ")");
+            }
+        }
+
+        System.out.printf("Total : %d nodes in %d ms (%d nps)%n", totalNodes, totalNanos / 1_000_000, nodesPerSecond(totalNodes, totalNanos));
+        return success;
+    }
+
+    /**
+     * Compute a nodes per second rate
+     *
+     * @param nodes The nodes count
+     * @param nanos The elapsed time in nanoseconds
+     * @return The nodes per second
+     */
+    static long nodesPerSecond(long nodes, long nanos) {
+        return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args {@code [--threads <n>] [--hash <MB>] <depth> [fen]} or {@code [--threads <n>] [--hash <MB>] --suite [max depth]}
+     */
+    public static void main(String[] args) {
+        int threads = 1;
+        PerftHash hash = null;
+        int first = 0;
+        while (first + 1 < args.length && (args[first].equals("--threads") || args[first].equals("--hash"))) {
+            if (args[first].equals("--threads")) {
+                threads = Integer.parseInt(args[first + 1]);
+            } else {
+                hash = new PerftHash(Integer.parseInt(args[first + 1]));
+            }
+            first += 2;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+
+        Perft perft = new Perft(hash);
+        ParallelPerft parallelPerft = threads > 1 ? new ParallelPerft(threads, ParallelPerft.DEFAULT_SPLIT_PLIES, hash) : null;
+
+        try {
+            if (args.length == 0 || args[0].equals("--suite")) {
+                int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SUITE_DEPTH;
+                boolean success = parallelPerft != null ? runSuite(maxDepth, parallelPerft::perft) : perft.runSuite(maxDepth);
+                if (!success) {
+                    System.exit(1);
+                }
+                return;
+            }
+
+            int depth = Integer.parseInt(args[0]);
+            Game game = args.length > 1 ? Game.fromFen(String.join(" ", Arrays.copyOfRange(args, 1, args.length))) : new Game();
+
+            long start = System.nanoTime();
+            long nodes = parallelPerft != null ? parallelPerft.divide(game, depth) : perft.divide(game, depth);
+            long nanos = System.nanoTime() - start;
+
+            System.out.println();
+            System.out.println("Nodes : " + nodes);
+            System.out.println("Time : " + nanos / 1_000_000 + " ms");
+            System.out.println("Nodes/s : " + nodesPerSecond(nodes, nanos));
+        } finally {
+            if (parallelPerft != null) {
+                parallelPerft.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package fr.romainguilbeau.chess.perft;
+
+/**
+ * Fixed-size hash table of perft subtree counts, keyed by position and depth, shared without locks by all
+ * counting threads
+ * <p>
+ * Each entry is two longs : (key XOR data) then data, the data holds the count and the depth. A torn entry
+ * written by another thread does not XOR back to the key and reads as a miss. Entries are always replaced.
+ */
+public class PerftHash {
+
+    /**
+     * Probe result when the subtree is not in the table
+     */
+    public static final long NO_ENTRY = -1L;
+    /**
+     * Bytes used by one entry
+     */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    /**
+     * Max entries (keeps the entries array under the max array size)
+     */
+    private static final int MAX_ENTRIES = 1 << 29;
+    /**
+     * Data bits of the depth
+     */
+    private static final int DEPTH_BITS = 8;
+    /**
+     * Depth mask
+     */
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+
+    /**
+     * Entries, two longs each
+     */
+    private final long[] entries;
+
+    /**
+     * Create new perft hash table
+     *
+     * @param megabytes The table size in MB (rounded down to a power of two of entries)
+     */
+    public PerftHash(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Table size must be at least 1 MB");
+        }
+        long size = Long.highestOneBit((long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        this.entries = new long[(int) Math.min(size, MAX_ENTRIES) * 2];
+    }
+
+    /**
+     * Find a subtree count
+     *
+     * @param key   The position key
+     * @param depth The depth
+     * @return The leaf nodes count, {@link #NO_ENTRY} if not found
+     */
+    public long probe(long key, int depth) {
+        int slot = slotIndex(key);
+        long data = entries[slot + 1];
+        if ((entries[slot] ^ data) == key && (data & DEPTH_MASK) == depth && data != 0) {
+            return data >>> DEPTH_BITS;
+        }
+        return NO_ENTRY;
+    }
+
+    /**
+     * Save a subtree count
+     *
+     * @param key   The position key
+     * @param depth The depth (1 to 255)
+     * @param nodes The leaf nodes count
+     */
+    public void store(long key, int depth, long nodes) {
+        int slot = slotIndex(key);
+        long data = (nodes << DEPTH_BITS) | depth;
+        entries[slot] = key ^ data;
+        entries[slot + 1] = data;
+    }
+
+    /**
+     * Get the first slot of the entry of a key
+     *
+     * @param key The position key
+     * @return The slot index in the entries array
+     */
+    private int slotIndex(long key) {
+        return ((int) (key ^ (key >>> 32)) & (entries.length / 2 - 1)) * 2;
+    }
+}
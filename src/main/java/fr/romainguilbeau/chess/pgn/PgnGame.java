@@ -0,0 +1,128 @@
+package fr.romainguilbeau.chess.pgn;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One PGN game : its tags, its SAN moves and its result
+ */
+public class PgnGame {
+
+    /**
+     * Unknown or unfinished result
+     */
+    public static final String UNKNOWN_RESULT = "*";
+
+    /**
+     * Tags in file order
+     */
+    private final Map<String, String> tags;
+    /**
+     * SAN moves
+     */
+    private final List<String> moves;
+    /**
+     * Game termination marker ("1-0", "0-1", "1/2-1/2" or "*")
+     */
+    private String result;
+
+    /**
+     * Create new empty PGN game
+     */
+    public PgnGame() {
+        this.tags = new LinkedHashMap<>();
+        this.moves = new ArrayList<>();
+        this.result = UNKNOWN_RESULT;
+    }
+
+    /**
+     * Get the tags
+     *
+     * @return The tags in file order (modifiable)
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Get a tag value
+     *
+     * @param name The tag name
+     * @return The tag value (null if missing)
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    /**
+     * Set a tag value
+     *
+     * @param name  The tag name
+     * @param value The tag value
+     */
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    /**
+     * Get the SAN moves
+     *
+     * @return The moves (modifiable)
+     */
+    public List<String> getMoves() {
+        return moves;
+    }
+
+    /**
+     * Get the game termination marker
+     *
+     * @return "1-0", "0-1", "1/2-1/2" or "*"
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * Set the game termination marker
+     *
+     * @param result "1-0", "0-1", "1/2-1/2" or "*"
+     */
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    /**
+     * Get the start position of the game (FEN tag, or the initial position)
+     *
+     * @return The new game at the start position
+     * @throws IllegalArgumentException If the FEN tag is invalid
+     */
+    public Game createStartGame() throws IllegalArgumentException {
+        String fen = tags.get("FEN");
+        return fen == null ? new Game() : Game.fromFen(fen);
+    }
+
+    /**
+     * Play all the moves from the start position
+     *
+     * @param san The SAN converter
+     * @return The game after the last move
+     * @throws IllegalArgumentException If a move is illegal or ambiguous
+     */
+    public Game replay(San san) throws IllegalArgumentException {
+        Game game = createStartGame();
+        for (int i = 0; i < moves.size(); i++) {
+            int move = san.parse(game, moves.get(i));
+            if (move == Move.NONE) {
+                throw new IllegalArgumentException("Illegal move " + (i / 2 + 1) + (i % 2 == 0 ? ". " : "... ") + moves.get(i));
+            }
+            game.play(move);
+        }
+        return game;
+    }
+}
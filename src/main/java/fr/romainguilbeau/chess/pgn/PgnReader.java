@@ -0,0 +1,351 @@
+package fr.romainguilbeau.chess.pgn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming PGN parser : reads the channel by chunks and returns the games one at a time, the file is never held
+ * in memory
+ * <p>
+ * Comments, variations, NAGs and escape lines are skipped. Games without termination marker end at the next tag
+ * section or at the end of the input.
+ */
+public class PgnReader implements Closeable {
+
+    /**
+     * Size of the read chunks
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The PGN input
+     */
+    private final ReadableByteChannel channel;
+    /**
+     * Read bytes not yet decoded
+     */
+    private final ByteBuffer bytes;
+    /**
+     * Decoded chars not yet parsed (read mode)
+     */
+    private final CharBuffer chars;
+    /**
+     * UTF-8 decoder (malformed bytes are replaced)
+     */
+    private final CharsetDecoder decoder;
+    /**
+     * Token being read
+     */
+    private final StringBuilder token;
+    /**
+     * true when the channel has no more bytes
+     */
+    private boolean endOfInput;
+    /**
+     * true when the last decoded chars have been flushed
+     */
+    private boolean flushed;
+    /**
+     * Number of bytes read from the channel
+     */
+    private long bytesRead;
+
+    /**
+     * Create new PGN reader
+     *
+     * @param channel The PGN input
+     */
+    public PgnReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.bytes = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        this.chars = CharBuffer.allocate(CHUNK_SIZE);
+        this.chars.flip();
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.token = new StringBuilder(64);
+    }
+
+    /**
+     * Open a PGN file
+     *
+     * @param path The file path
+     * @return The new PGN reader
+     * @throws IOException If the file cannot be opened
+     */
+    public static PgnReader open(Path path) throws IOException {
+        return new PgnReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Read the next game
+     *
+     * @return The game, null at the end of the input
+     * @throws IOException If the input cannot be read
+     */
+    public PgnGame next() throws IOException {
+        PgnGame game = null;
+        boolean inMovetext = false;
+
+        while (true) {
+            skipWhitespace();
+            int c = peek();
+            if (c < 0) {
+                return game;
+            }
+
+            if (c == '[') {
+                if (inMovetext) {
+                    // Missing termination marker : the next game starts
+                    return game;
+                }
+                if (game == null) {
+                    game = new PgnGame();
+                }
+                readTag(game);
+                continue;
+            }
+
+            if (game == null) {
+                game = new PgnGame();
+            }
+            inMovetext = true;
+
+            if (c == '{') {
+                skipUntil('}');
+            } else if (c == ';' || c == '%') {
+                skipUntil('\n');
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == ')' || c == '}' || c == ']') {
+                read();
+            } else {
+                readSymbol();
+                if (isResult(token)) {
+                    game.setResult(token.toString());
+                    return game;
+                }
+                String move = toSanMove(token);
+                if (move != null) {
+                    game.getMoves().add(move);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a tag pair : [Name "Value"]
+     *
+     * @param game The game receiving the tag
+     * @throws IOException If the input cannot be read
+     */
+    private void readTag(PgnGame game) throws IOException {
+        read();
+        skipWhitespace();
+        token.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && c != '"' && c != ']' && !Character.isWhitespace(c)) {
+            token.append((char) read());
+        }
+        String name = token.toString();
+
+        token.setLength(0);
+        skipWhitespace();
+        if (peek() == '"') {
+            read();
+            while ((c = read()) >= 0 && c != '"') {
+                if (c == '\\') {
+                    c = read();
+                }
+                if (c >= 0) {
+                    token.append((char) c);
+                }
+            }
+        }
+        skipUntil(']');
+        game.setTag(name, token.toString());
+    }
+
+    /**
+     * Read a movetext symbol (move, move number, NAG or result) into the token
+     *
+     * @throws IOException If the input cannot be read
+     */
+    private void readSymbol() throws IOException {
+        token.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && !Character.isWhitespace(c) && "[]{}();".indexOf(c) < 0) {
+            token.append((char) read());
+        }
+    }
+
+    /**
+     * Check if a symbol is a game termination marker
+     *
+     * @param symbol The symbol
+     * @return true if "1-0", "0-1", "1/2-1/2" or "*"
+     */
+    private static boolean isResult(CharSequence symbol) {
+        return "1-0".contentEquals(symbol) || "0-1".contentEquals(symbol) || "1/2-1/2".contentEquals(symbol)
+                || PgnGame.UNKNOWN_RESULT.contentEquals(symbol);
+    }
+
+    /**
+     * Remove the move number and the annotations of a symbol
+     *
+     * @param symbol The symbol, for example "12.", "12...Nf6", "e4!?" or "$1"
+     * @return The SAN move, null if the symbol is not a move
+     */
+    private static String toSanMove(CharSequence symbol) {
+        int start = 0;
+        int end = symbol.length();
+        if (end == 0 || symbol.charAt(0) == '$') {
+            return null;
+        }
+        while (start < end && Character.isDigit(symbol.charAt(start))) {
+            start++;
+        }
+        if (start > 0 && (start == end || symbol.charAt(start) != '.')) {
+            // Not a move number
+            start = 0;
+        }
+        while (start < end && symbol.charAt(start) == '.') {
+            start++;
+        }
+        while (end > start && (symbol.charAt(end - 1) == '!' || symbol.charAt(end - 1) == '?')) {
+            end--;
+        }
+        return start == end ? null : symbol.subSequence(start, end).toString();
+    }
+
+    /**
+     * Skip a (nested) variation
+     *
+     * @throws IOException If the input cannot be read
+     */
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    return;
+                }
+            } else if (c == '{') {
+                skipUntil('}');
+            } else if (c == ';') {
+                skipUntil('\n');
+            }
+        }
+    }
+
+    /**
+     * Skip the input up to a char (included)
+     *
+     * @param end The last skipped char
+     * @throws IOException If the input cannot be read
+     */
+    private void skipUntil(char end) throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != end) {
+            // Skipped
+        }
+    }
+
+    /**
+     * Skip the whitespaces
+     *
+     * @throws IOException If the input cannot be read
+     */
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && Character.isWhitespace(c)) {
+            read();
+        }
+    }
+
+    /**
+     * Get the next char without consuming it
+     *
+     * @return The char, -1 at the end of the input
+     * @throws IOException If the input cannot be read
+     */
+    private int peek() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return chars.get(chars.position());
+    }
+
+    /**
+     * Consume the next char
+     *
+     * @return The char, -1 at the end of the input
+     * @throws IOException If the input cannot be read
+     */
+    private int read() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return chars.get();
+    }
+
+    /**
+     * Read and decode the next chunk
+     *
+     * @return false at the end of the input
+     * @throws IOException If the input cannot be read
+     */
+    private boolean fill() throws IOException {
+        if (flushed) {
+            return false;
+        }
+        chars.clear();
+        while (true) {
+            if (!endOfInput) {
+                int count = channel.read(bytes);
+                if (count < 0) {
+                    endOfInput = true;
+                } else {
+                    bytesRead += count;
+                }
+            }
+            bytes.flip();
+            decoder.decode(bytes, chars, endOfInput);
+            bytes.compact();
+            if (endOfInput && bytes.position() == 0) {
+                decoder.flush(chars);
+                flushed = true;
+            }
+            if (chars.position() > 0 || endOfInput) {
+                chars.flip();
+                return chars.hasRemaining();
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes read from the input
+     *
+     * @return The bytes count
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,239 @@
+package fr.romainguilbeau.chess.pgn;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * PGN export : writes the games in the PGN export format (seven tag roster first, movetext wrapped at 80 columns)
+ */
+public class PgnWriter implements Closeable, Flushable {
+
+    /**
+     * Max movetext line length
+     */
+    private static final int MAX_LINE_LENGTH = 79;
+    /**
+     * Max digits of a FEN fullmove number
+     */
+    private static final int MAX_MOVE_NUMBER_DIGITS = 6;
+    /**
+     * Seven tag roster names, in export order
+     */
+    private static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+    /**
+     * Seven tag roster values of the missing tags
+     */
+    private static final String[] SEVEN_TAG_ROSTER_DEFAULTS = {"?", "?", "????.??.??", "?", "?", "?", PgnGame.UNKNOWN_RESULT};
+
+    /**
+     * The PGN output
+     */
+    private final Writer writer;
+    /**
+     * Movetext line being built
+     */
+    private final StringBuilder line;
+
+    /**
+     * Create new PGN writer
+     *
+     * @param writer The PGN output
+     */
+    public PgnWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 64 * 1024);
+        this.line = new StringBuilder(MAX_LINE_LENGTH + 16);
+    }
+
+    /**
+     * Create a PGN file (replaced if it exists)
+     *
+     * @param path The file path
+     * @return The new PGN writer
+     * @throws IOException If the file cannot be created
+     */
+    public static PgnWriter create(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new PgnWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+    }
+
+    /**
+     * Write a game
+     *
+     * @param game The game
+     * @throws IOException If the output cannot be written
+     */
+    public void write(PgnGame game) throws IOException {
+        Map<String, String> tags = game.getTags();
+        for (int i = 0; i < SEVEN_TAG_ROSTER.length; i++) {
+            String name = SEVEN_TAG_ROSTER[i];
+            String value = name.equals("Result") ? game.getResult() : tags.get(name);
+            writeTag(name, value == null ? SEVEN_TAG_ROSTER_DEFAULTS[i] : value);
+        }
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!isSevenTagRoster(tag.getKey())) {
+                writeTag(tag.getKey(), tag.getValue());
+            }
+        }
+        writer.write('\n');
+
+        // Move numbers follow the FEN tag (side to move and full move number)
+        int moveNumber = 1;
+        boolean whiteToMove = true;
+        String fen = tags.get("FEN");
+        if (fen != null) {
+            int turn = findFenField(fen, 1);
+            whiteToMove = turn < 0 || fen.charAt(turn) != 'b' || findFenFieldEnd(fen, turn) != turn + 1;
+            int fullmoveNumber = findFenField(fen, 5);
+            if (fullmoveNumber >= 0) {
+                moveNumber = parseMoveNumber(fen, fullmoveNumber, findFenFieldEnd(fen, fullmoveNumber));
+            }
+        }
+
+        line.setLength(0);
+        boolean first = true;
+        for (String move : game.getMoves()) {
+            if (whiteToMove) {
+                appendToken(moveNumber + ". " + move);
+            } else if (first) {
+                appendToken(moveNumber + "... " + move);
+            } else {
+                appendToken(move);
+            }
+            if (!whiteToMove) {
+                moveNumber++;
+            }
+            whiteToMove = !whiteToMove;
+            first = false;
+        }
+        appendToken(game.getResult());
+        writer.append(line).write("\n\n");
+    }
+
+    /**
+     * Add a movetext token, the line is written when full
+     *
+     * @param movetextToken The token
+     * @throws IOException If the output cannot be written
+     */
+    private void appendToken(String movetextToken) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + movetextToken.length() > MAX_LINE_LENGTH) {
+            writer.append(line).write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(movetextToken);
+    }
+
+    /**
+     * Write a tag pair
+     *
+     * @param name  The tag name
+     * @param value The tag value (quotes and backslashes are escaped)
+     * @throws IOException If the output cannot be written
+     */
+    private void writeTag(String name, String value) throws IOException {
+        writer.write('[');
+        writer.write(name);
+        writer.write(" \"");
+        writer.write(value.replace("\\", "\\\\").replace("\"", "\\\""));
+        writer.write("\"]\n");
+    }
+
+    /**
+     * Find the start of a FEN field (no regex, the FEN tag is read for every game)
+     *
+     * @param fen   The FEN
+     * @param field The field number (0 = piece placement)
+     * @return The index of its first character, -1 if missing
+     */
+    private static int findFenField(String fen, int field) {
+        int length = fen.length();
+        int i = 0;
+        for (int f = 0; ; f++) {
+            while (i < length && Character.isWhitespace(fen.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                return -1;
+            }
+            if (f == field) {
+                return i;
+            }
+            i = findFenFieldEnd(fen, i);
+        }
+    }
+
+    /**
+     * Find the end of a FEN field
+     *
+     * @param fen   The FEN
+     * @param start The index of the field first character
+     * @return The index after its last character
+     */
+    private static int findFenFieldEnd(String fen, int start) {
+        int i = start;
+        while (i < fen.length() && !Character.isWhitespace(fen.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Parse the fullmove number of a FEN
+     *
+     * @param fen   The FEN
+     * @param start The index of the field first character
+     * @param end   The index after the field last character
+     * @return The move number, 1 if not a number
+     */
+    private static int parseMoveNumber(String fen, int start, int end) {
+        if (end - start > MAX_MOVE_NUMBER_DIGITS) {
+            return 1;
+        }
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            char c = fen.charAt(i);
+            if (c < '0' || c > '9') {
+                return 1;
+            }
+            number = number * 10 + c - '0';
+        }
+        return number;
+    }
+
+    /**
+     * Check if a tag is one of the seven tag roster
+     *
+     * @param name The tag name
+     * @return true if written first
+     */
+    private static boolean isSevenTagRoster(String name) {
+        for (String rosterName : SEVEN_TAG_ROSTER) {
+            if (rosterName.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,244 @@
+package fr.romainguilbeau.chess.pgn;
+
+import fr.romainguilbeau.chess.models.chesspieces.BaseChessPiece;
+import fr.romainguilbeau.chess.models.chesspieces.ChessPieceType;
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+import fr.romainguilbeau.chess.models.game.Pos;
+
+/**
+ * Standard Algebraic Notation (SAN) converter, for example "Nbd7", "exd6", "e8=Q+" or "O-O-O"
+ * <p>
+ * Holds its own move lists : one instance per thread.
+ */
+public class San {
+
+    /**
+     * Candidate moves of the parsed or formatted move
+     */
+    private final MoveList moves;
+    /**
+     * Replies, to detect the checkmates
+     */
+    private final MoveList replies;
+
+    /**
+     * Create new SAN converter
+     */
+    public San() {
+        this.moves = new MoveList();
+        this.replies = new MoveList();
+    }
+
+    /**
+     * Find the legal move of a SAN move, among the moves of the chess pieces of the moved type
+     *
+     * @param game The game (left unchanged)
+     * @param san  The SAN move (check, mate and annotation suffixes are ignored)
+     * @return The encoded move, {@link Move#NONE} if unknown, illegal or ambiguous
+     */
+    public int parse(Game game, CharSequence san) {
+        int length = san.length();
+        while (length > 0 && "+#!?".indexOf(san.charAt(length - 1)) >= 0) {
+            length--;
+        }
+        if (length < 2) {
+            return Move.NONE;
+        }
+
+        Game.ChessColor color = game.getColorTurn();
+        if (san.charAt(0) == 'O' || san.charAt(0) == '0') {
+            int flags = length >= 5 ? Move.QUEEN_CASTLE : Move.KING_CASTLE;
+            int kingSquare = Long.numberOfTrailingZeros(game.getChessPieceBoard(ChessPieceType.KING, color));
+            return findUnique(game, ChessPieceType.KING, color, kingSquare, kingSquare + (flags == Move.KING_CASTLE ? 2 : -2),
+                    null, -1, -1, flags);
+        }
+
+        ChessPieceType type = ChessPieceType.PAWN;
+        int start = 0;
+        if ("NBRQK".indexOf(san.charAt(0)) >= 0) {
+            type = ChessPieceType.fromSymbol(san.charAt(0));
+            start = 1;
+        }
+
+        ChessPieceType promotion = null;
+        char last = san.charAt(length - 1);
+        if ("NBRQ".indexOf(last) >= 0 && type == ChessPieceType.PAWN) {
+            promotion = ChessPieceType.fromSymbol(last);
+            length--;
+            if (length > 0 && san.charAt(length - 1) == '=') {
+                length--;
+            }
+        }
+        if (length - start < 2) {
+            return Move.NONE;
+        }
+
+        int toX = san.charAt(length - 2) - 'a';
+        int toY = '8' - san.charAt(length - 1);
+        if (!Pos.isOnBoard(toX, toY)) {
+            return Move.NONE;
+        }
+
+        // Disambiguation (file and / or rank of the from square)
+        int fromX = -1;
+        int fromY = -1;
+        for (int i = start; i < length - 2; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromX = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromY = '8' - c;
+            } else if (c != 'x' && c != '-') {
+                return Move.NONE;
+            }
+        }
+
+        if (type == ChessPieceType.PAWN && fromX < 0) {
+            // Pawn pushes stay on their file
+            fromX = toX;
+        }
+
+        return findUnique(game, type, color, -1, toY * Pos.BOARD_SIZE.x + toX, promotion, fromX, fromY, -1);
+    }
+
+    /**
+     * Find the only legal move matching a description
+     *
+     * @param game      The game
+     * @param type      The moved chess piece type
+     * @param color     The side to move
+     * @param from      The from square (-1 if any)
+     * @param to        The to square
+     * @param promotion The promotion type (null if not a promotion)
+     * @param fromX     The from file (-1 if any)
+     * @param fromY     The from rank (-1 if any)
+     * @param flags     The exact move flags (-1 if any)
+     * @return The encoded move, {@link Move#NONE} if none or ambiguous
+     */
+    private int findUnique(Game game, ChessPieceType type, Game.ChessColor color, int from, int to, ChessPieceType promotion,
+                           int fromX, int fromY, int flags) {
+        moves.clear();
+        long chessPieces = game.getChessPieceBoard(type, color);
+        while (chessPieces != 0) {
+            int square = Long.numberOfTrailingZeros(chessPieces);
+            chessPieces &= chessPieces - 1;
+            if ((from < 0 || square == from)
+                    && (fromX < 0 || square % Pos.BOARD_SIZE.x == fromX)
+                    && (fromY < 0 || square / Pos.BOARD_SIZE.x == fromY)) {
+                game.generateLegalMoves(square, moves);
+            }
+        }
+
+        int found = Move.NONE;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (Move.getTo(move) != to || Move.getPromotion(move) != promotion || (flags >= 0 && Move.getFlags(move) != flags)) {
+                continue;
+            }
+            if (found != Move.NONE) {
+                return Move.NONE;
+            }
+            found = move;
+        }
+        return found;
+    }
+
+    /**
+     * Get the SAN of a legal move
+     *
+     * @param game The game before the move (left unchanged)
+     * @param move The encoded move (legal)
+     * @return The SAN move with its check or mate suffix
+     */
+    public String format(Game game, int move) {
+        StringBuilder san = new StringBuilder(8);
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        int flags = Move.getFlags(move);
+
+        if (flags == Move.KING_CASTLE) {
+            san.append("O-O");
+        } else if (flags == Move.QUEEN_CASTLE) {
+            san.append("O-O-O");
+        } else {
+            BaseChessPiece chessPiece = game.getChessPiece(from);
+            ChessPieceType type = chessPiece.getType();
+            if (type == ChessPieceType.PAWN) {
+                if (Move.isCapture(move)) {
+                    san.append(Pos.of(from).getName().charAt(0));
+                }
+            } else {
+                san.append(Character.toUpperCase(type.getSymbol()));
+                appendDisambiguation(san, game, type, chessPiece.getChessColor(), from, to);
+            }
+            if (Move.isCapture(move)) {
+                san.append('x');
+            }
+            san.append(Pos.of(to).getName());
+            if (Move.isPromotion(move)) {
+                san.append('=').append(Character.toUpperCase(Move.getPromotion(move).getSymbol()));
+            }
+        }
+
+        Game.ChessColor opponent = game.getColorTurn().getOpponent();
+        game.makeMove(move);
+        if (game.isInCheck(opponent)) {
+            san.append(hasLegalMove(game) ? '+' : '#');
+        }
+        game.unmakeMove();
+        return san.toString();
+    }
+
+    /**
+     * Add the file and / or rank of the from square when another chess piece of the same type can reach the square
+     *
+     * @param san   The SAN being built
+     * @param game  The game
+     * @param type  The moved chess piece type
+     * @param color The moved chess piece color
+     * @param from  The from square
+     * @param to    The to square
+     */
+    private void appendDisambiguation(StringBuilder san, Game game, ChessPieceType type, Game.ChessColor color, int from, int to) {
+        boolean ambiguous = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+
+        long others = game.getChessPieceBoard(type, color) & ~(1L << from);
+        while (others != 0) {
+            int square = Long.numberOfTrailingZeros(others);
+            others &= others - 1;
+            moves.clear();
+            game.generateLegalMoves(square, moves);
+            for (int i = 0; i < moves.size(); i++) {
+                if (Move.getTo(moves.get(i)) == to) {
+                    ambiguous = true;
+                    sameFile |= square % Pos.BOARD_SIZE.x == from % Pos.BOARD_SIZE.x;
+                    sameRank |= square / Pos.BOARD_SIZE.x == from / Pos.BOARD_SIZE.x;
+                    break;
+                }
+            }
+        }
+
+        String name = Pos.of(from).getName();
+        if (ambiguous && (!sameFile || sameRank)) {
+            san.append(name.charAt(0));
+        }
+        if (ambiguous && sameFile) {
+            san.append(name.charAt(1));
+        }
+    }
+
+    /**
+     * Check if the side to move has a legal move
+     *
+     * @param game The game
+     * @return true if at least one legal move
+     */
+    private boolean hasLegalMove(Game game) {
+        game.generateLegalMoves(replies);
+        return replies.size() > 0;
+    }
+}
@@ -0,0 +1,69 @@
+package fr.romainguilbeau.chess.search;
+
+import fr.romainguilbeau.chess.models.chesspieces.BaseChessPiece;
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.PieceSquareTables;
+import fr.romainguilbeau.chess.models.game.Pos;
+
+import java.util.Map;
+
+/**
+ * Static evaluation : material and piece-square values, blended between the middle game and the end game by the
+ * remaining material (tapered evaluation)
+ * <p>
+ * The sums are accumulated by the game on every move and undo, so an evaluation costs a few operations whatever the
+ * number of chess pieces.
+ */
+public final class Evaluator {
+
+    /**
+     * Static methods only
+     */
+    private Evaluator() {
+    }
+
+    /**
+     * Evaluate a position from the game accumulators
+     *
+     * @param game The game
+     * @return The score from the side to move point of view
+     */
+    public static int evaluate(Game game) {
+        int score = blend(game.getMidgameScore(), game.getEndgameScore(), game.getPhase());
+        return game.getColorTurn() == Game.ChessColor.WHITE ? score : -score;
+    }
+
+    /**
+     * Evaluate a position by visiting all the chess pieces (reference for the accumulators and the benchmark)
+     *
+     * @param game The game
+     * @return The score from the side to move point of view, the same as {@link #evaluate(Game)}
+     */
+    public static int evaluateFromScratch(Game game) {
+        int midgame = 0;
+        int endgame = 0;
+        int phase = 0;
+        for (Map.Entry<Pos, BaseChessPiece> entry : game.getChessPieces().entrySet()) {
+            BaseChessPiece chessPiece = entry.getValue();
+            int square = entry.getKey().getIndex();
+            midgame += PieceSquareTables.getMidgameValue(chessPiece.getType(), chessPiece.getChessColor(), square);
+            endgame += PieceSquareTables.getEndgameValue(chessPiece.getType(), chessPiece.getChessColor(), square);
+            phase += PieceSquareTables.getPhase(chessPiece.getType());
+        }
+        int score = blend(midgame, endgame, phase);
+        return game.getColorTurn() == Game.ChessColor.WHITE ? score : -score;
+    }
+
+    /**
+     * Blend the middle game and end game scores by the game phase
+     *
+     * @param midgame The middle game score
+     * @param endgame The end game score
+     * @param phase   The game phase (capped, promotions can exceed the starting material)
+     * @return The blended score
+     */
+    private static int blend(int midgame, int endgame, int phase) {
+        int midgamePhase = Math.min(phase, PieceSquareTables.MAX_PHASE);
+        return (midgame * midgamePhase + endgame * (PieceSquareTables.MAX_PHASE - midgamePhase)) / PieceSquareTables.MAX_PHASE;
+    }
+}
@@ -0,0 +1,621 @@
+package fr.romainguilbeau.chess.search;
+
+import fr.romainguilbeau.chess.models.chesspieces.BaseChessPiece;
+import fr.romainguilbeau.chess.models.chesspieces.ChessPieceType;
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+import fr.romainguilbeau.chess.tablebase.Tablebases;
+
+import java.util.function.Consumer;
+
+/**
+ * Iterative deepening principal variation search (alpha-beta with null window re-searches and aspiration windows)
+ * <p>
+ * All the per ply data (move lists, move scores, principal variations, killer moves) is allocated once, the
+ * search itself does not allocate. One instance searches one game at a time.
+ */
+public class Search {
+
+    /**
+     * Max search depth in plies (extensions and quiescence included)
+     */
+    public static final int MAX_PLY = 128;
+    /**
+     * Score of a mate at the root, a mate in N plies scores MATE - N
+     */
+    public static final int MATE = 31000;
+    /**
+     * Score bigger than any reachable score
+     */
+    private static final int INFINITE = 32000;
+    /**
+     * Half width of the first aspiration window in centipawns
+     */
+    private static final int ASPIRATION_WINDOW = 50;
+    /**
+     * First depth searched with an aspiration window
+     */
+    private static final int ASPIRATION_DEPTH = 4;
+    /**
+     * The stop flag and the clock are checked every (mask + 1) nodes
+     */
+    private static final int TIME_CHECK_MASK = 2047;
+    /**
+     * Move ordering material values in centipawns, indexed by chess piece type
+     */
+    private static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 0};
+    /**
+     * Move ordering score of the hash table move
+     */
+    private static final int HASH_MOVE_SCORE = 1_000_000;
+    /**
+     * Move ordering base score of the captures and promotions
+     */
+    private static final int CAPTURE_SCORE = 100_000;
+    /**
+     * Move ordering score of the first killer move (the second one scores one less)
+     */
+    private static final int KILLER_SCORE = 90_000;
+
+    /**
+     * Hash table, may be shared with other searches
+     */
+    private final TranspositionTable transpositionTable;
+    /**
+     * One move list per ply
+     */
+    private final MoveList[] moveLists;
+    /**
+     * Move ordering scores, same index as the move lists
+     */
+    private final int[][] moveScores;
+    /**
+     * Triangular principal variation table
+     */
+    private final int[][] principalVariations;
+    /**
+     * Principal variation length per ply
+     */
+    private final int[] principalVariationLengths;
+    /**
+     * Two quiet moves per ply which caused a beta cutoff
+     */
+    private final int[][] killerMoves;
+    /**
+     * Quiet move cutoff history, indexed by from and to squares
+     */
+    private final int[][] history;
+    /**
+     * The searched game
+     */
+    private Game game;
+    /**
+     * Searched nodes
+     */
+    private long nodes;
+    /**
+     * Time limit (System.nanoTime), 0 if no limit
+     */
+    private long deadline;
+    /**
+     * Set to abort the search
+     */
+    private volatile boolean stopped;
+    /**
+     * Called after each completed iteration (null if none)
+     */
+    private Consumer<SearchResult> iterationListener;
+    /**
+     * Endgame tablebases probed below the root (null if none)
+     */
+    private Tablebases tablebases;
+
+    /**
+     * Create new search
+     *
+     * @param transpositionTable The hash table
+     */
+    public Search(TranspositionTable transpositionTable) {
+        this.transpositionTable = transpositionTable;
+        this.moveLists = new MoveList[MAX_PLY];
+        this.moveScores = new int[MAX_PLY][MoveList.CAPACITY];
+        this.principalVariations = new int[MAX_PLY][MAX_PLY];
+        this.principalVariationLengths = new int[MAX_PLY];
+        this.killerMoves = new int[MAX_PLY][2];
+        this.history = new int[64][64];
+        for (int i = 0; i < MAX_PLY; i++) {
+            moveLists[i] = new MoveList();
+        }
+    }
+
+    /**
+     * Search the best move
+     *
+     * @param game          The game (left unchanged)
+     * @param maxDepth      The max depth
+     * @param maxTimeMillis The time limit in milliseconds (0 if no limit)
+     * @return The result of the last completed iteration (of the first one, with at least a legal move, if stopped
+     * before it completes)
+     */
+    public SearchResult search(Game game, int maxDepth, long maxTimeMillis) {
+        transpositionTable.newSearch();
+        resetStop();
+        return search(game, 1, maxDepth, maxTimeMillis);
+    }
+
+    /**
+     * Search the best move from a given first iteration (helper threads start deeper than the main one), the
+     * caller starts the new hash table generation and resets the stop flag
+     *
+     * @param game          The game (left unchanged)
+     * @param startDepth    The depth of the first iteration
+     * @param maxDepth      The max depth
+     * @param maxTimeMillis The time limit in milliseconds (0 if no limit)
+     * @return The result of the last completed iteration
+     */
+    SearchResult search(Game game, int startDepth, int maxDepth, long maxTimeMillis) {
+        long start = System.nanoTime();
+        this.game = game;
+        this.nodes = 0;
+        this.deadline = maxTimeMillis > 0 ? start + maxTimeMillis * 1_000_000 : 0;
+        prepareHeuristics();
+
+        SearchResult result = null;
+        int score = 0;
+        for (int depth = Math.max(1, startDepth); depth <= Math.min(maxDepth, MAX_PLY - 1); depth++) {
+            score = searchRoot(depth, score);
+            if (stopped && result != null) {
+                break;
+            }
+
+            int[] principalVariation = new int[principalVariationLengths[0]];
+            System.arraycopy(principalVariations[0], 0, principalVariation, 0, principalVariation.length);
+            if (stopped && principalVariation.length == 0) {
+                // Stopped before any root move was searched : a legal move is still better than none
+                principalVariation = findFirstLegalMove();
+                score = evaluate();
+            }
+            int bestMove = principalVariation.length > 0 ? principalVariation[0] : Move.NONE;
+            result = new SearchResult(bestMove, score, principalVariation, depth, nodes, (System.nanoTime() - start) / 1_000_000);
+            if (iterationListener != null) {
+                iterationListener.accept(result);
+            }
+
+            // No legal move, forced mate found or not enough time for the next iteration
+            if (bestMove == Move.NONE || result.isMate() || stopped
+                    || (deadline != 0 && System.nanoTime() - start > (deadline - start) / 2)) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the first legal move of the root, used when the search is stopped before its first root move
+     *
+     * @return The move alone, empty if no legal move
+     */
+    private int[] findFirstLegalMove() {
+        MoveList moves = moveLists[0];
+        game.generateLegalMoves(moves);
+        return moves.size() > 0 ? new int[]{moves.get(0)} : new int[0];
+    }
+
+    /**
+     * Search the root at one depth, inside an aspiration window around the previous score
+     *
+     * @param depth         The depth
+     * @param previousScore The score of the previous iteration
+     * @return The score
+     */
+    private int searchRoot(int depth, int previousScore) {
+        int delta = ASPIRATION_WINDOW;
+        int alpha = -INFINITE;
+        int beta = INFINITE;
+        if (depth >= ASPIRATION_DEPTH) {
+            alpha = Math.max(previousScore - delta, -INFINITE);
+            beta = Math.min(previousScore + delta, INFINITE);
+        }
+
+        while (true) {
+            int score = alphaBeta(depth, 0, alpha, beta);
+            if (stopped) {
+                return score;
+            }
+            if (score <= alpha) {
+                alpha = Math.max(score - delta, -INFINITE);
+            } else if (score >= beta) {
+                beta = Math.min(score + delta, INFINITE);
+            } else {
+                return score;
+            }
+            delta *= 2;
+        }
+    }
+
+    /**
+     * Clear the stop flag before a new search (before starting the thread, so an early stop is not lost)
+     */
+    void resetStop() {
+        stopped = false;
+    }
+
+    /**
+     * Abort the running search, the result of the last completed iteration is returned
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Set the listener called after each completed iteration (UCI info lines)
+     *
+     * @param iterationListener The listener (null if none)
+     */
+    public void setIterationListener(Consumer<SearchResult> iterationListener) {
+        this.iterationListener = iterationListener;
+    }
+
+    /**
+     * Set the endgame tablebases : the positions they contain are scored by lookup instead of being searched
+     *
+     * @param tablebases The tablebases (null if none)
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Get the searched nodes of the running or last search
+     *
+     * @return The nodes count
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Principal variation search
+     *
+     * @param depth The remaining depth
+     * @param ply   The distance from the root
+     * @param alpha The lower bound
+     * @param beta  The upper bound
+     * @return The score from the side to move point of view
+     */
+    private int alphaBeta(int depth, int ply, int alpha, int beta) {
+        principalVariationLengths[ply] = 0;
+        if (depth <= 0) {
+            return quiescence(ply, alpha, beta);
+        }
+        if ((++nodes & TIME_CHECK_MASK) == 0) {
+            checkTime();
+        }
+        if (stopped) {
+            return 0;
+        }
+        if (ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        if (ply > 0 && (game.getHalfmoveClock() >= Game.FIFTY_MOVE_PLIES || game.isRepetition())) {
+            return 0;
+        }
+
+        if (ply > 0 && tablebases != null) {
+            int value = tablebases.probe(game);
+            if (value != Tablebases.UNKNOWN) {
+                return scoreFromTablebase(value, ply);
+            }
+        }
+
+        boolean principalVariationNode = beta - alpha > 1;
+        long key = game.getPositionKey();
+        long entry = transpositionTable.probe(key);
+        int hashMove = Move.NONE;
+        if (entry != TranspositionTable.NO_ENTRY) {
+            hashMove = TranspositionTable.getMove(entry);
+            if (!principalVariationNode && TranspositionTable.getDepth(entry) >= depth) {
+                int score = scoreFromTable(TranspositionTable.getScore(entry), ply);
+                int bound = TranspositionTable.getBound(entry);
+                if (bound == TranspositionTable.BOUND_EXACT
+                        || (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+                        || (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        Game.ChessColor color = game.getColorTurn();
+        boolean inCheck = game.isInCheck(color);
+        if (inCheck) {
+            depth++;
+        }
+
+        MoveList moves = moveLists[ply];
+        game.generateLegalMoves(moves);
+        scoreMoves(ply, hashMove);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITE;
+        int bestMove = Move.NONE;
+        int legalMoves = 0;
+
+        for (int i = 0; i < moves.size(); i++) {
+            int move = nextMove(ply, i);
+            game.makeMove(move);
+            legalMoves++;
+
+            int score;
+            if (legalMoves == 1) {
+                score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                score = -alphaBeta(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            game.unmakeMove();
+            if (stopped) {
+                // The root keeps the score of the best move searched before the stop
+                return ply == 0 && bestMove != Move.NONE ? bestScore : 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePrincipalVariation(ply, move);
+                    if (score >= beta) {
+                        if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                            updateQuietHeuristics(ply, move, depth);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (legalMoves == 0) {
+            return inCheck ? -MATE + ply : 0;
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.BOUND_LOWER
+                : bestScore > originalAlpha ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+        transpositionTable.store(key, bestMove, scoreToTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    /**
+     * Search the captures and promotions only, until the position is quiet
+     *
+     * @param ply   The distance from the root
+     * @param alpha The lower bound
+     * @param beta  The upper bound
+     * @return The score from the side to move point of view
+     */
+    private int quiescence(int ply, int alpha, int beta) {
+        principalVariationLengths[ply] = 0;
+        if ((++nodes & TIME_CHECK_MASK) == 0) {
+            checkTime();
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        int bestScore = evaluate();
+        if (bestScore >= beta || ply >= MAX_PLY - 1) {
+            return bestScore;
+        }
+        if (bestScore > alpha) {
+            alpha = bestScore;
+        }
+
+        MoveList moves = moveLists[ply];
+        game.generateLegalMoves(moves);
+        scoreMoves(ply, Move.NONE);
+
+        for (int i = 0; i < moves.size(); i++) {
+            int move = nextMove(ply, i);
+            if (moveScores[ply][i] < CAPTURE_SCORE) {
+                // Sorted : only quiet moves left
+                break;
+            }
+            game.makeMove(move);
+            int score = -quiescence(ply + 1, -beta, -alpha);
+            game.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePrincipalVariation(ply, move);
+                    if (score >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    /**
+     * Static evaluation (see {@link Evaluator})
+     *
+     * @return The score from the side to move point of view
+     */
+    private int evaluate() {
+        return Evaluator.evaluate(game);
+    }
+
+    /**
+     * Give an ordering score to each move of a ply : hash move, captures (most valuable victim first, least
+     * valuable attacker first), killer moves then quiet moves by history
+     *
+     * @param ply      The ply
+     * @param hashMove The hash table move ({@link Move#NONE} if none)
+     */
+    private void scoreMoves(int ply, int hashMove) {
+        MoveList moves = moveLists[ply];
+        int[] scores = moveScores[ply];
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (move == hashMove) {
+                scores[i] = HASH_MOVE_SCORE;
+            } else if (Move.isCapture(move) || Move.isPromotion(move)) {
+                int score = CAPTURE_SCORE;
+                if (Move.isCapture(move)) {
+                    BaseChessPiece victim = game.getChessPiece(Move.getTo(move));
+                    int victimValue = victim == null ? PIECE_VALUES[ChessPieceType.PAWN.ordinal()] : PIECE_VALUES[victim.getType().ordinal()];
+                    score += 10 * victimValue - PIECE_VALUES[game.getChessPiece(Move.getFrom(move)).getType().ordinal()] / 10;
+                }
+                if (Move.isPromotion(move)) {
+                    score += PIECE_VALUES[Move.getPromotion(move).ordinal()];
+                }
+                scores[i] = score;
+            } else if (move == killerMoves[ply][0]) {
+                scores[i] = KILLER_SCORE;
+            } else if (move == killerMoves[ply][1]) {
+                scores[i] = KILLER_SCORE - 1;
+            } else {
+                scores[i] = history[Move.getFrom(move)][Move.getTo(move)];
+            }
+        }
+    }
+
+    /**
+     * Move the best scored remaining move to an index (selection sort step)
+     *
+     * @param ply   The ply
+     * @param index The index
+     * @return The move at the index
+     */
+    private int nextMove(int ply, int index) {
+        MoveList moves = moveLists[ply];
+        int[] scores = moveScores[ply];
+        int best = index;
+        for (int i = index + 1; i < moves.size(); i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        if (best != index) {
+            int move = moves.get(best);
+            moves.set(best, moves.get(index));
+            moves.set(index, move);
+            int score = scores[best];
+            scores[best] = scores[index];
+            scores[index] = score;
+        }
+        return moves.get(index);
+    }
+
+    /**
+     * Remember a quiet move which caused a beta cutoff
+     *
+     * @param ply   The ply
+     * @param move  The move
+     * @param depth The remaining depth
+     */
+    private void updateQuietHeuristics(int ply, int move, int depth) {
+        if (killerMoves[ply][0] != move) {
+            killerMoves[ply][1] = killerMoves[ply][0];
+            killerMoves[ply][0] = move;
+        }
+        int[] fromHistory = history[Move.getFrom(move)];
+        int to = Move.getTo(move);
+        fromHistory[to] = Math.min(fromHistory[to] + depth * depth, KILLER_SCORE / 2);
+    }
+
+    /**
+     * Prepend a move to the principal variation of the next ply
+     *
+     * @param ply  The ply
+     * @param move The best move of the ply
+     */
+    private void updatePrincipalVariation(int ply, int move) {
+        int[] principalVariation = principalVariations[ply];
+        principalVariation[0] = move;
+        int childLength = Math.min(principalVariationLengths[ply + 1], MAX_PLY - 1);
+        System.arraycopy(principalVariations[ply + 1], 0, principalVariation, 1, childLength);
+        principalVariationLengths[ply] = childLength + 1;
+    }
+
+    /**
+     * Clear the killer moves and age the history before a new search
+     */
+    private void prepareHeuristics() {
+        for (int[] killers : killerMoves) {
+            killers[0] = Move.NONE;
+            killers[1] = Move.NONE;
+        }
+        for (int[] fromHistory : history) {
+            for (int to = 0; to < fromHistory.length; to++) {
+                fromHistory[to] /= 2;
+            }
+        }
+    }
+
+    /**
+     * Stop the search when the time limit is reached
+     */
+    private void checkTime() {
+        if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+            stopped = true;
+        }
+    }
+
+    /**
+     * Convert a score before storing it : mate scores become relative to the stored position
+     *
+     * @param score The score relative to the root
+     * @param ply   The ply of the position
+     * @return The score to store
+     */
+    private static int scoreToTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score + ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    /**
+     * Convert a stored score : mate scores become relative to the root
+     *
+     * @param score The stored score
+     * @param ply   The ply of the position
+     * @return The score relative to the root
+     */
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score - ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    /**
+     * Convert a tablebase value to a score : mate scores relative to the root
+     *
+     * @param value The probed value, not unknown
+     * @param ply   The ply of the position
+     * @return The score from the side to move point of view
+     */
+    private static int scoreFromTablebase(int value, int ply) {
+        if (value == Tablebases.DRAW) {
+            return 0;
+        }
+        int distance = ply + Tablebases.getDistanceToMate(value);
+        return Tablebases.isWin(value) ? MATE - distance : -MATE + distance;
+    }
+}
@@ -0,0 +1,138 @@
+package fr.romainguilbeau.chess.search;
+
+import fr.romainguilbeau.chess.models.game.Move;
+
+/**
+ * Result of a completed search iteration
+ */
+public class SearchResult {
+
+    /**
+     * The best move (encoded, {@link Move#NONE} if no legal move)
+     */
+    private final int bestMove;
+    /**
+     * The score in centipawns, from the side to move point of view
+     */
+    private final int score;
+    /**
+     * The principal variation (encoded moves)
+     */
+    private final int[] principalVariation;
+    /**
+     * The completed depth
+     */
+    private final int depth;
+    /**
+     * The searched nodes
+     */
+    private final long nodes;
+    /**
+     * The elapsed time in milliseconds
+     */
+    private final long timeMillis;
+
+    /**
+     * Create new search result
+     *
+     * @param bestMove           The best move
+     * @param score              The score
+     * @param principalVariation The principal variation
+     * @param depth              The completed depth
+     * @param nodes              The searched nodes
+     * @param timeMillis         The elapsed time in milliseconds
+     */
+    public SearchResult(int bestMove, int score, int[] principalVariation, int depth, long nodes, long timeMillis) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.principalVariation = principalVariation;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+    }
+
+    /**
+     * Get the best move
+     *
+     * @return The encoded move ({@link Move#NONE} if no legal move)
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Get the score
+     *
+     * @return The score in centipawns, from the side to move point of view
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Get the principal variation
+     *
+     * @return The encoded moves
+     */
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    /**
+     * Get the completed depth
+     *
+     * @return The depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the searched nodes
+     *
+     * @return The nodes count
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Get the elapsed time
+     *
+     * @return The time in milliseconds
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Check if the score is a forced mate
+     *
+     * @return true if mate found (for either side)
+     */
+    public boolean isMate() {
+        return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+    }
+
+    /**
+     * Get the moves before mate
+     *
+     * @return The number of moves (negative if the side to move is mated), 0 if not a mate score
+     */
+    public int getMateIn() {
+        if (!isMate()) {
+            return 0;
+        }
+        int plies = Search.MATE - Math.abs(score);
+        return score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder pv = new StringBuilder();
+        for (int move : principalVariation) {
+            pv.append(' ').append(Move.toUci(move));
+        }
+        return "depth " + depth + " score " + score + " nodes " + nodes + " time " + timeMillis + " pv" + pv;
+    }
+}
@@ -0,0 +1,188 @@
+package fr.romainguilbeau.chess.search;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.tablebase.Tablebases;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Multi-threaded search (Lazy SMP) : helper threads search the same root on their own copy of the game and
+ * fill the shared hash table, the main thread search gives the result
+ * <p>
+ * Half the helpers start one iteration deeper than the main thread so the threads do not all search the same
+ * depth at the same time.
+ */
+public class SmpSearch {
+
+    /**
+     * Shared hash table
+     */
+    private final TranspositionTable transpositionTable;
+    /**
+     * One search (with its own stack) per thread, the first one is the main search
+     */
+    private final Search[] searches;
+    /**
+     * Helper threads (null if single-threaded)
+     */
+    private final ExecutorService helperThreads;
+    /**
+     * Helper tasks of the running search
+     */
+    private final Future<?>[] helperTasks;
+
+    /**
+     * Create new multi-threaded search
+     *
+     * @param transpositionTable The shared hash table
+     * @param threads            The number of threads (main thread included)
+     */
+    public SmpSearch(TranspositionTable transpositionTable, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        this.transpositionTable = transpositionTable;
+        this.searches = new Search[threads];
+        this.helperTasks = new Future<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(transpositionTable);
+        }
+        this.helperThreads = threads > 1 ? Executors.newFixedThreadPool(threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Clear the stop flag before a new search, called before starting the thread that runs {@link #search} so an
+     * early stop is not lost
+     */
+    public void resetStop() {
+        searches[0].resetStop();
+    }
+
+    /**
+     * Search the best move (see {@link #resetStop()} first)
+     *
+     * @param game          The game (left unchanged)
+     * @param maxDepth      The max depth
+     * @param maxTimeMillis The time limit in milliseconds (0 if no limit)
+     * @return The result of the main thread, with the nodes of all the threads (null if max depth below 1)
+     */
+    public SearchResult search(Game game, int maxDepth, long maxTimeMillis) {
+        transpositionTable.newSearch();
+        for (int i = 1; i < searches.length; i++) {
+            Search helper = searches[i];
+            // Helpers are only stopped by this thread, once the main search returns
+            helper.resetStop();
+            Game helperGame = game.copy();
+            int startDepth = 1 + i % 2;
+            helperTasks[i] = helperThreads.submit(() -> helper.search(helperGame, startDepth, Search.MAX_PLY - 1, 0));
+        }
+
+        SearchResult result;
+        try {
+            result = searches[0].search(game, 1, maxDepth, maxTimeMillis);
+        } finally {
+            for (int i = 1; i < searches.length; i++) {
+                searches[i].stop();
+            }
+            for (int i = 1; i < searches.length; i++) {
+                waitHelper(i);
+            }
+        }
+
+        return result == null ? null : withAllNodes(result);
+    }
+
+    /**
+     * Replace the nodes of a main thread result by the nodes of all the threads
+     *
+     * @param result The main thread result
+     * @return The result with all the nodes
+     */
+    private SearchResult withAllNodes(SearchResult result) {
+        return new SearchResult(result.getBestMove(), result.getScore(), result.getPrincipalVariation(),
+                result.getDepth(), getNodes(), result.getTimeMillis());
+    }
+
+    /**
+     * Set the listener called after each completed iteration of the main thread (UCI info lines)
+     *
+     * @param iterationListener The listener, results have the nodes of all the threads (null if none)
+     */
+    public void setIterationListener(Consumer<SearchResult> iterationListener) {
+        searches[0].setIterationListener(iterationListener == null ? null : result -> iterationListener.accept(withAllNodes(result)));
+    }
+
+    /**
+     * Set the endgame tablebases of all the threads
+     *
+     * @param tablebases The tablebases (null if none)
+     */
+    public void setTablebases(Tablebases tablebases) {
+        for (Search search : searches) {
+            search.setTablebases(tablebases);
+        }
+    }
+
+    /**
+     * Wait for the end of a helper task
+     *
+     * @param index The helper index
+     */
+    private void waitHelper(int index) {
+        try {
+            helperTasks[index].get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search helper failed", e.getCause());
+        } finally {
+            helperTasks[index] = null;
+        }
+    }
+
+    /**
+     * Abort the running search, the result of the last completed iteration is returned
+     */
+    public void stop() {
+        searches[0].stop();
+    }
+
+    /**
+     * Get the searched nodes of all the threads for the running or last search
+     *
+     * @return The nodes count
+     */
+    public long getNodes() {
+        long nodes = 0;
+        for (Search search : searches) {
+            nodes += search.getNodes();
+        }
+        return nodes;
+    }
+
+    /**
+     * Get the number of threads
+     *
+     * @return The number of threads (main thread included)
+     */
+    public int getThreads() {
+        return searches.length;
+    }
+
+    /**
+     * Stop the helper threads, the search can no longer be used
+     */
+    public void shutdown() {
+        if (helperThreads != null) {
+            helperThreads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package fr.romainguilbeau.chess.search;
+
+import fr.romainguilbeau.chess.models.game.Move;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size hash table of searched positions, shared without locks by all search threads
+ * <p>
+ * Each entry is two longs in one preallocated array : (key XOR data) then data. A reader checks that both
+ * halves still XOR back to its key, so a torn entry written by another thread reads as a miss instead of a
+ * wrong result. Entries are grouped by buckets of {@link #BUCKET_SIZE}, the replaced one is the empty or
+ * the least valuable entry (shallow depth, old search).
+ */
+public class TranspositionTable {
+
+    /**
+     * Exact score
+     */
+    public static final int BOUND_EXACT = 1;
+    /**
+     * Score is a lower bound (fail high)
+     */
+    public static final int BOUND_LOWER = 2;
+    /**
+     * Score is an upper bound (fail low)
+     */
+    public static final int BOUND_UPPER = 3;
+    /**
+     * Probe result when the position is not in the table
+     */
+    public static final long NO_ENTRY = 0L;
+    /**
+     * Entries per bucket
+     */
+    private static final int BUCKET_SIZE = 4;
+    /**
+     * Bytes used by one entry
+     */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    /**
+     * Search generations wrap on 6 bits
+     */
+    private static final int AGE_MASK = 0x3F;
+    /**
+     * Max buckets (keeps the entries array under the max array size)
+     */
+    private static final int MAX_BUCKETS = 1 << 27;
+    /**
+     * Data bit offset of the score (the move uses the first 16 bits)
+     */
+    private static final int SCORE_SHIFT = 16;
+    /**
+     * Data bit offset of the depth
+     */
+    private static final int DEPTH_SHIFT = 32;
+    /**
+     * Data bit offset of the bound
+     */
+    private static final int BOUND_SHIFT = 40;
+    /**
+     * Data bit offset of the search generation
+     */
+    private static final int AGE_SHIFT = 42;
+
+    /**
+     * Entries, two longs each
+     */
+    private long[] entries;
+    /**
+     * Current search generation
+     */
+    private volatile int age;
+    /**
+     * Probes that found the position
+     */
+    private final LongAdder hits;
+    /**
+     * Probes that did not find the position
+     */
+    private final LongAdder misses;
+    /**
+     * Stores that replaced another position still in use
+     */
+    private final LongAdder collisions;
+
+    /**
+     * Create new transposition table
+     *
+     * @param megabytes The table size in MB (rounded down to a power of two of buckets)
+     */
+    public TranspositionTable(int megabytes) {
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.collisions = new LongAdder();
+        resize(megabytes);
+    }
+
+    /**
+     * Reallocate the table (must not be called while searching)
+     *
+     * @param megabytes The table size in MB
+     */
+    public void resize(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Table size must be at least 1 MB");
+        }
+        long buckets = Long.highestOneBit((long) megabytes * 1024 * 1024 / (ENTRY_BYTES * BUCKET_SIZE));
+        this.entries = new long[(int) Math.min(buckets, MAX_BUCKETS) * BUCKET_SIZE * 2];
+        this.age = 0;
+        resetCounters();
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        Arrays.fill(entries, 0L);
+        age = 0;
+        resetCounters();
+    }
+
+    /**
+     * Start a new search : older entries become the first to be replaced
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    /**
+     * Find a position
+     *
+     * @param key The position key
+     * @return The entry data (decode with the static getters), {@link #NO_ENTRY} if not found
+     */
+    public long probe(long key) {
+        long[] table = entries;
+        int first = bucketIndex(key, table);
+        for (int slot = first; slot < first + BUCKET_SIZE * 2; slot += 2) {
+            long data = table[slot + 1];
+            if ((table[slot] ^ data) == key && data != NO_ENTRY) {
+                hits.increment();
+                return data;
+            }
+        }
+        misses.increment();
+        return NO_ENTRY;
+    }
+
+    /**
+     * Save a searched position
+     *
+     * @param key   The position key
+     * @param move  The best move (encoded, {@link Move#NONE} if unknown)
+     * @param score The score
+     * @param depth The searched depth
+     * @param bound The score bound ({@link #BOUND_EXACT}, {@link #BOUND_LOWER} or {@link #BOUND_UPPER})
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        long[] table = entries;
+        int first = bucketIndex(key, table);
+        int currentAge = age;
+        int replaced = first;
+        int replacedValue = Integer.MAX_VALUE;
+
+        for (int slot = first; slot < first + BUCKET_SIZE * 2; slot += 2) {
+            long data = table[slot + 1];
+            if (data == NO_ENTRY) {
+                replaced = slot;
+                replacedValue = Integer.MIN_VALUE;
+                break;
+            }
+            if ((table[slot] ^ data) == key) {
+                // Same position : keep the known best move if the new search has none
+                if (move == Move.NONE) {
+                    move = getMove(data);
+                }
+                replaced = slot;
+                replacedValue = Integer.MIN_VALUE;
+                break;
+            }
+            int entryAge = (currentAge - getAge(data)) & AGE_MASK;
+            int value = getDepth(data) - 8 * entryAge;
+            if (value < replacedValue) {
+                replaced = slot;
+                replacedValue = value;
+            }
+        }
+
+        if (replacedValue != Integer.MIN_VALUE) {
+            collisions.increment();
+        }
+
+        long data = (move & 0xFFFFL)
+                | ((score & 0xFFFFL) << SCORE_SHIFT)
+                | ((long) Math.max(0, Math.min(depth, 0xFF)) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) currentAge << AGE_SHIFT);
+        table[replaced] = key ^ data;
+        table[replaced + 1] = data;
+    }
+
+    /**
+     * Get the first slot of the bucket of a key
+     *
+     * @param key   The position key
+     * @param table The entries
+     * @return The first slot index in the entries array
+     */
+    private static int bucketIndex(long key, long[] table) {
+        int buckets = table.length / (BUCKET_SIZE * 2);
+        return ((int) (key ^ (key >>> 32)) & (buckets - 1)) * BUCKET_SIZE * 2;
+    }
+
+    /**
+     * Get the best move of an entry
+     *
+     * @param data The entry data
+     * @return The encoded move
+     */
+    public static int getMove(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    /**
+     * Get the score of an entry
+     *
+     * @param data The entry data
+     * @return The score
+     */
+    public static int getScore(long data) {
+        return (short) (data >>> SCORE_SHIFT);
+    }
+
+    /**
+     * Get the searched depth of an entry
+     *
+     * @param data The entry data
+     * @return The depth
+     */
+    public static int getDepth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    /**
+     * Get the score bound of an entry
+     *
+     * @param data The entry data
+     * @return The bound
+     */
+    public static int getBound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & 0x3;
+    }
+
+    /**
+     * Get the search generation of an entry
+     *
+     * @param data The entry data
+     * @return The age
+     */
+    private static int getAge(long data) {
+        return (int) (data >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    /**
+     * Get the number of probes that found the position
+     *
+     * @return The hits count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of probes that did not find the position
+     *
+     * @return The misses count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of stores that replaced another position still in use
+     *
+     * @return The collisions count
+     */
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    /**
+     * Get the table usage in permill (UCI hashfull), sampled on the first entries
+     *
+     * @return The used entries of the current search per thousand
+     */
+    public int getHashFull() {
+        long[] table = entries;
+        int sample = Math.min(1000, table.length / 2);
+        int used = 0;
+        for (int i = 0; i < sample; i++) {
+            long data = table[2 * i + 1];
+            if (data != NO_ENTRY && getAge(data) == age) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    /**
+     * Reset the hit, miss and collision counters
+     */
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        collisions.reset();
+    }
+}
@@ -0,0 +1,187 @@
+package fr.romainguilbeau.chess.server;
+
+import fr.romainguilbeau.chess.models.game.MoveList;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread serving its own connections : a session and its games are only used by this thread, no
+ * lock is needed
+ */
+class EventLoop implements Runnable {
+
+    /**
+     * Selector of the connections
+     */
+    private final Selector selector;
+    /**
+     * Accepted connections waiting to be registered by the loop thread
+     */
+    private final Queue<SocketChannel> pendingChannels;
+    /**
+     * Move list shared by the sessions of the loop
+     */
+    private final MoveList moves;
+    /**
+     * Loop thread
+     */
+    private final Thread thread;
+    /**
+     * Cleared to stop the loop
+     */
+    private volatile boolean running;
+
+    /**
+     * Create new event loop
+     *
+     * @param name The thread name
+     * @throws IOException If the selector cannot be opened
+     */
+    EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+        this.moves = new MoveList();
+        this.thread = new Thread(this, name);
+        this.running = true;
+    }
+
+    /**
+     * Start the loop thread
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Hand an accepted connection to the loop (called by the acceptor thread)
+     *
+     * @param channel The connection
+     */
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Stop the loop and close its connections
+     *
+     * @throws InterruptedException If interrupted while waiting for the loop thread
+     */
+    void close() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPendingChannels();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        closeConnection(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            GameServer.logError("Event loop failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeConnection(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                GameServer.logError("Selector close failed", e);
+            }
+        }
+    }
+
+    /**
+     * Register the connections accepted since the last select
+     *
+     * @throws IOException If a connection cannot be configured
+     */
+    private void registerPendingChannels() throws IOException {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new Session());
+        }
+    }
+
+    /**
+     * Read the received bytes, execute the complete commands and send the answers
+     *
+     * @param key The connection key
+     * @throws IOException If the connection failed
+     */
+    private void read(SelectionKey key) throws IOException {
+        Session session = (Session) key.attachment();
+        if (((SocketChannel) key.channel()).read(session.getInput()) < 0) {
+            closeConnection(key);
+            return;
+        }
+        if (!session.processInput(moves)) {
+            closeConnection(key);
+            return;
+        }
+        write(key);
+    }
+
+    /**
+     * Send the pending answers, then execute the commands left while the output was full
+     *
+     * @param key The connection key
+     * @throws IOException If the connection failed
+     */
+    private void write(SelectionKey key) throws IOException {
+        Session session = (Session) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        boolean pending;
+        do {
+            session.getOutput().flip();
+            channel.write(session.getOutput());
+            session.getOutput().compact();
+            pending = session.getOutput().position() > 0;
+            // Commands left in the input because the output was full
+        } while (!pending && session.getInput().position() > 0 && session.processInput(moves) && session.getOutput().position() > 0);
+
+        // Stop reading while the client does not read its answers
+        key.interestOps(pending ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Close a connection, its games are released
+     *
+     * @param key The connection key
+     */
+    private void closeConnection(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            GameServer.logError("Connection close failed", e);
+        }
+    }
+}
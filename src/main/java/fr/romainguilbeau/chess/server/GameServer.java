@@ -0,0 +1,124 @@
+package fr.romainguilbeau.chess.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking game server : hosts the games of many clients in one JVM
+ * <p>
+ * One acceptor thread spreads the connections over the event loops (round robin), each event loop owns its
+ * connections, their sessions and their games. See {@link Session} for the text protocol.
+ * <p>
+ * Usage : {@code GameServer [port] [event loops]}
+ */
+public class GameServer {
+
+    /**
+     * Default listening port
+     */
+    public static final int DEFAULT_PORT = 7878;
+
+    /**
+     * Listening socket
+     */
+    private final ServerSocketChannel serverChannel;
+    /**
+     * Event loops
+     */
+    private final EventLoop[] eventLoops;
+    /**
+     * Acceptor thread
+     */
+    private final Thread acceptor;
+
+    /**
+     * Create and start new game server
+     *
+     * @param address    The listening address (port 0 for any free port)
+     * @param eventLoops The number of event loop threads
+     * @throws IOException If the address cannot be bound
+     */
+    public GameServer(InetSocketAddress address, int eventLoops) throws IOException {
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException("At least one event loop is required");
+        }
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        this.eventLoops = new EventLoop[eventLoops];
+        for (int i = 0; i < eventLoops; i++) {
+            this.eventLoops[i] = new EventLoop("game-server-loop-" + i);
+            this.eventLoops[i].start();
+        }
+        this.acceptor = new Thread(this::accept, "game-server-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Accept the connections until the server is closed
+     */
+    private void accept() {
+        int next = 0;
+        try {
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            }
+        } catch (ClosedChannelException e) {
+            // Server closed
+        } catch (IOException e) {
+            logError("Accept failed", e);
+        }
+    }
+
+    /**
+     * Get the listening port
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stop accepting, close all the connections and release their games
+     *
+     * @throws IOException          If the listening socket cannot be closed
+     * @throws InterruptedException If interrupted while waiting for the threads
+     */
+    public void close() throws IOException, InterruptedException {
+        serverChannel.close();
+        acceptor.join();
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.close();
+        }
+    }
+
+    /**
+     * Report a server error that cannot be answered to a client (the only error output of the server)
+     *
+     * @param message What failed
+     * @param e       The cause
+     */
+    static void logError(String message, Exception e) {
+        System.err.println(message + " (" + e + ")");
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args {@code [port] [event loops]}
+     * @throws IOException If the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int eventLoops = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameServer server = new GameServer(new InetSocketAddress(port), eventLoops);
+        System.out.println("Game server listening on port " + server.getPort() + " with " + eventLoops + " event loops");
+    }
+}
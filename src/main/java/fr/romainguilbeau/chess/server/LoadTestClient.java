@@ -0,0 +1,301 @@
+package fr.romainguilbeau.chess.server;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback load test of the game server : opens many connections, creates games on each one, plays random legal
+ * moves and prints the move round trip latencies
+ * <p>
+ * Usage : {@code LoadTestClient [--connect host:port] [connections] [games per connection] [moves per game] [client threads]}
+ * (without --connect, an embedded server is started on a free port)
+ */
+public class LoadTestClient {
+
+    /**
+     * Default number of connections
+     */
+    private static final int DEFAULT_CONNECTIONS = 100;
+    /**
+     * Default games per connection
+     */
+    private static final int DEFAULT_GAMES_PER_CONNECTION = 100;
+    /**
+     * Default moves played in each game
+     */
+    private static final int DEFAULT_MOVES_PER_GAME = 20;
+    /**
+     * Default client threads
+     */
+    private static final int DEFAULT_CLIENT_THREADS = 4;
+
+    /**
+     * Static entry point only
+     */
+    private LoadTestClient() {
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args {@code [--connect host:port] [connections] [games per connection] [moves per game] [client threads]}
+     * @throws Exception If the test cannot run
+     */
+    public static void main(String[] args) throws Exception {
+        GameServer server = null;
+        InetSocketAddress address;
+        int first = 0;
+        if (args.length > 1 && args[0].equals("--connect")) {
+            String[] hostPort = args[1].split(":");
+            address = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+            first = 2;
+        } else {
+            server = new GameServer(new InetSocketAddress("127.0.0.1", 0), Runtime.getRuntime().availableProcessors());
+            address = new InetSocketAddress("127.0.0.1", server.getPort());
+        }
+        int connections = args.length > first ? Integer.parseInt(args[first]) : DEFAULT_CONNECTIONS;
+        int gamesPerConnection = args.length > first + 1 ? Integer.parseInt(args[first + 1]) : DEFAULT_GAMES_PER_CONNECTION;
+        int movesPerGame = args.length > first + 2 ? Integer.parseInt(args[first + 2]) : DEFAULT_MOVES_PER_GAME;
+        int clientThreads = Math.min(connections, args.length > first + 3 ? Integer.parseInt(args[first + 3]) : DEFAULT_CLIENT_THREADS);
+
+        System.out.printf("%d connections x %d games = %d simultaneous games, %d moves per game, %d client threads%n",
+                connections, gamesPerConnection, connections * gamesPerConnection, movesPerGame, clientThreads);
+
+        AtomicLong errors = new AtomicLong();
+        long[][] latencies = new long[clientThreads][];
+        Thread[] threads = new Thread[clientThreads];
+        long start = System.nanoTime();
+        for (int t = 0; t < clientThreads; t++) {
+            int index = t;
+            int threadConnections = connections / clientThreads + (t < connections % clientThreads ? 1 : 0);
+            threads[t] = new Thread(() -> {
+                try {
+                    latencies[index] = runClient(address, threadConnections, gamesPerConnection, movesPerGame, index, errors);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "load-test-client-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - start;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d moves in %d ms (%d moves/s), %d errors%n", all.length, nanos / 1_000_000,
+                nanos == 0 ? 0 : all.length * 1_000_000_000L / nanos, errors.get());
+        if (all.length > 0) {
+            System.out.printf("Move round trip (us) : p50 %d  p90 %d  p99 %d  p99.9 %d  max %d%n",
+                    percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1000);
+        }
+
+        if (server != null) {
+            server.close();
+        }
+        if (errors.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run the connections of one client thread
+     *
+     * @param address            The server address
+     * @param connections        The connections of the thread
+     * @param gamesPerConnection The games per connection
+     * @param movesPerGame       The moves per game
+     * @param seed               The random seed
+     * @param errors             The error counter
+     * @return The move round trip latencies in nanoseconds
+     * @throws IOException If a connection failed
+     */
+    private static long[] runClient(InetSocketAddress address, int connections, int gamesPerConnection, int movesPerGame,
+                                    long seed, AtomicLong errors) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        MoveList moves = new MoveList();
+        List<Connection> clients = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            Connection connection = new Connection(address, gamesPerConnection);
+            // Pipelined creation of the games
+            for (int g = 0; g < gamesPerConnection; g++) {
+                connection.send("NEW");
+            }
+            for (int g = 0; g < gamesPerConnection; g++) {
+                String answer = connection.receive();
+                if (!answer.startsWith("OK ")) {
+                    throw new IOException("Cannot create game: " + answer);
+                }
+                connection.gameIds[g] = Integer.parseInt(answer.substring(3));
+            }
+            clients.add(connection);
+        }
+
+        long[] latencies = new long[connections * gamesPerConnection * movesPerGame];
+        int count = 0;
+        for (int m = 0; m < movesPerGame; m++) {
+            for (Connection connection : clients) {
+                for (int g = 0; g < gamesPerConnection; g++) {
+                    Game game = connection.games[g];
+                    int move = randomLegalMove(game, moves, random);
+                    if (move == Move.NONE || game.getGameStatus() != Game.GameStatus.IN_GAME) {
+                        continue;
+                    }
+                    String uci = Move.toUci(move);
+
+                    long start = System.nanoTime();
+                    connection.send("MOVE " + connection.gameIds[g] + " " + uci);
+                    String answer = connection.receive();
+                    latencies[count++] = System.nanoTime() - start;
+
+                    if (!answer.startsWith("OK " + connection.gameIds[g] + " " + uci)) {
+                        errors.incrementAndGet();
+                    }
+                    game.play(move);
+                }
+            }
+        }
+
+        for (Connection connection : clients) {
+            connection.close();
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    /**
+     * Pick a random legal move
+     *
+     * @param game   The game
+     * @param moves  The move list
+     * @param random The random generator
+     * @return The encoded move, {@link Move#NONE} if no legal move
+     */
+    private static int randomLegalMove(Game game, MoveList moves, SplittableRandom random) {
+        game.generateMoves(moves);
+        Game.ChessColor color = game.getColorTurn();
+        int size = moves.size();
+        while (size > 0) {
+            int index = random.nextInt(size);
+            int move = moves.get(index);
+            game.makeMove(move);
+            boolean legal = !game.isInCheck(color);
+            game.unmakeMove();
+            if (legal) {
+                return move;
+            }
+            moves.set(index, moves.get(--size));
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Get a percentile of sorted latencies
+     *
+     * @param sorted   The sorted latencies in nanoseconds
+     * @param fraction The percentile (0 to 1)
+     * @return The latency in microseconds
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)))] / 1000;
+    }
+
+    /**
+     * Blocking client connection with local copies of its games
+     */
+    private static class Connection {
+
+        /**
+         * The socket
+         */
+        private final SocketChannel channel;
+        /**
+         * Received bytes not yet read
+         */
+        private final ByteBuffer input;
+        /**
+         * Server ids of the games
+         */
+        private final int[] gameIds;
+        /**
+         * Local copies of the games
+         */
+        private final Game[] games;
+
+        /**
+         * Open new connection
+         *
+         * @param address The server address
+         * @param games   The number of games
+         * @throws IOException If the connection failed
+         */
+        Connection(InetSocketAddress address, int games) throws IOException {
+            this.channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            this.input = ByteBuffer.allocate(64 * 1024);
+            input.flip();
+            this.gameIds = new int[games];
+            this.games = new Game[games];
+            for (int i = 0; i < games; i++) {
+                this.games[i] = new Game();
+            }
+        }
+
+        /**
+         * Send a command
+         *
+         * @param command The command (without line feed)
+         * @throws IOException If the connection failed
+         */
+        void send(String command) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * Wait for an answer line
+         *
+         * @return The answer (without line feed)
+         * @throws IOException If the connection failed
+         */
+        String receive() throws IOException {
+            while (true) {
+                for (int i = input.position(); i < input.limit(); i++) {
+                    if (input.get(i) == '\n') {
+                        String line = new String(input.array(), input.position(), i - input.position(), StandardCharsets.US_ASCII);
+                        input.position(i + 1);
+                        return line;
+                    }
+                }
+                input.compact();
+                if (channel.read(input) < 0) {
+                    throw new IOException("Connection closed by the server");
+                }
+                input.flip();
+            }
+        }
+
+        /**
+         * Close the connection
+         *
+         * @throws IOException If the socket cannot be closed
+         */
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package fr.romainguilbeau.chess.server;
+
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * One client connection and the games it owns, only used by the event loop thread of the connection
+ * <p>
+ * Protocol : one ASCII command per line, one answer line per command ("OK ..." or "ERR message")
+ * <ul>
+ * <li>{@code NEW [fen]} : {@code OK <id>}</li>
+ * <li>{@code MOVE <id> <uci move>} : {@code OK <id> <move> <status>}</li>
+ * <li>{@code UNDO <id>} : {@code OK <id> <status>}</li>
+ * <li>{@code STATE <id>} : {@code OK <id> <status> <fen>}</li>
+ * <li>{@code CLOSE <id>} : {@code OK <id>}</li>
+ * </ul>
+ */
+class Session {
+
+    /**
+     * Max command line length
+     */
+    static final int MAX_LINE_LENGTH = 256;
+    /**
+     * Max answer line length
+     */
+    private static final int MAX_ANSWER_LENGTH = 256;
+    /**
+     * Max games owned by one connection
+     */
+    private static final int MAX_GAMES = 100_000;
+
+    /**
+     * Received bytes not yet processed
+     */
+    private final ByteBuffer input;
+    /**
+     * Answer bytes not yet sent
+     */
+    private final ByteBuffer output;
+    /**
+     * Games of the connection by id
+     */
+    private final HashMap<Integer, Game> games;
+    /**
+     * Next game id
+     */
+    private int nextGameId;
+
+    /**
+     * Create new session
+     */
+    Session() {
+        this.input = ByteBuffer.allocate(16 * MAX_LINE_LENGTH);
+        this.output = ByteBuffer.allocate(64 * MAX_ANSWER_LENGTH);
+        this.games = new HashMap<>();
+        this.nextGameId = 1;
+    }
+
+    /**
+     * Get the received bytes buffer (write mode)
+     *
+     * @return The input buffer
+     */
+    ByteBuffer getInput() {
+        return input;
+    }
+
+    /**
+     * Get the answer bytes buffer (write mode)
+     *
+     * @return The output buffer
+     */
+    ByteBuffer getOutput() {
+        return output;
+    }
+
+    /**
+     * Get the number of games owned by the connection
+     *
+     * @return The games count
+     */
+    int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * Execute the complete received lines while the output buffer has room for their answers
+     *
+     * @param moves The move list of the event loop (reused by all its sessions)
+     * @return false if the line is too long (the connection must be closed)
+     */
+    boolean processInput(MoveList moves) {
+        input.flip();
+        int lineStart = input.position();
+        boolean lineTooLong = false;
+        while (output.remaining() >= MAX_ANSWER_LENGTH) {
+            int lineEnd = -1;
+            for (int i = lineStart; i < input.limit(); i++) {
+                if (input.get(i) == '\n') {
+                    lineEnd = i;
+                    break;
+                }
+            }
+            if (lineEnd < 0) {
+                lineTooLong = input.limit() - lineStart > MAX_LINE_LENGTH;
+                break;
+            }
+
+            String line = new String(input.array(), lineStart, lineEnd - lineStart, StandardCharsets.US_ASCII).trim();
+            lineStart = lineEnd + 1;
+            if (!line.isEmpty()) {
+                String answer = execute(line, moves);
+                output.put(answer.getBytes(StandardCharsets.US_ASCII), 0, Math.min(answer.length(), MAX_ANSWER_LENGTH - 1));
+                output.put((byte) '\n');
+            }
+        }
+        input.position(lineStart);
+        input.compact();
+        return !lineTooLong;
+    }
+
+    /**
+     * Execute one command, a failing command is answered with an error instead of stopping the event loop
+     *
+     * @param line  The command line
+     * @param moves The move list of the event loop
+     * @return The answer line (without line feed)
+     */
+    String execute(String line, MoveList moves) {
+        try {
+            return executeCommand(line, moves);
+        } catch (RuntimeException e) {
+            GameServer.logError("Command failed: " + line, e);
+            return "ERR internal error";
+        }
+    }
+
+    /**
+     * Execute one command
+     *
+     * @param line  The command line
+     * @param moves The move list of the event loop
+     * @return The answer line (without line feed)
+     */
+    private String executeCommand(String line, MoveList moves) {
+        String[] tokens = line.split(" ", 3);
+        String command = tokens[0].toUpperCase();
+
+        if (command.equals("NEW")) {
+            if (games.size() >= MAX_GAMES) {
+                return "ERR too many games";
+            }
+            Game game;
+            try {
+                game = tokens.length > 1 ? Game.fromFen(line.substring(4)) : new Game();
+            } catch (IllegalArgumentException e) {
+                return "ERR invalid fen";
+            }
+            int id = nextGameId++;
+            games.put(id, game);
+            return "OK " + id;
+        }
+
+        Game game;
+        int id;
+        try {
+            id = Integer.parseInt(tokens.length > 1 ? tokens[1] : "");
+            game = games.get(id);
+        } catch (NumberFormatException e) {
+            return "ERR invalid game id";
+        }
+        if (game == null) {
+            return "ERR unknown game";
+        }
+
+        switch (command) {
+            case "MOVE":
+                if (tokens.length < 3) {
+                    return "ERR missing move";
+                }
+                if (game.getGameStatus() != Game.GameStatus.IN_GAME) {
+                    return "ERR game over";
+                }
+                int move = Move.fromUci(game, tokens[2], moves);
+                if (move == Move.NONE) {
+                    return "ERR illegal move";
+                }
+                game.play(move);
+                return "OK " + id + " " + Move.toUci(move) + " " + game.getGameStatus();
+            case "UNDO":
+                game.undo();
+                return "OK " + id + " " + game.getGameStatus();
+            case "STATE":
+                return "OK " + id + " " + game.getGameStatus() + " " + game.toFen();
+            case "CLOSE":
+                games.remove(id);
+                return "OK " + id;
+            default:
+                return "ERR unknown command";
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package fr.romainguilbeau.chess.tablebase;
+
+import fr.romainguilbeau.chess.models.chesspieces.ChessPieceType;
+import fr.romainguilbeau.chess.models.game.Game;
+
+/**
+ * Material signatures, encoded in an int key : 2 bits per non-king chess piece type and color (count 0 to 3), the
+ * pawn counts above the other ones so that the pawnless keys do not depend on them
+ * <p>
+ * The pieces of a signature are ordered in slots : white king, black king, white pieces then black pieces (queen,
+ * rook, bishop, knight, pawn). The slot order defines the tablebase index.
+ */
+public final class Material {
+
+    /**
+     * Number of possible keys
+     */
+    public static final int KEY_COUNT = 1 << 20;
+    /**
+     * Key of a position that cannot be in a tablebase (more than 3 chess pieces of a type)
+     */
+    public static final int UNSUPPORTED = -1;
+    /**
+     * Non-king types of a signature, in slot order
+     */
+    static final ChessPieceType[] TYPES = {ChessPieceType.QUEEN, ChessPieceType.ROOK, ChessPieceType.BISHOP, ChessPieceType.KNIGHT,
+            ChessPieceType.PAWN};
+    /**
+     * Material values used to choose the stronger side
+     */
+    private static final int[] VALUES = {9, 5, 3, 3, 1};
+    /**
+     * Colors (cached, values() copies the array on each call)
+     */
+    static final Game.ChessColor[] COLORS = Game.ChessColor.values();
+    /**
+     * Index of the pawns in {@link #TYPES}
+     */
+    static final int PAWN = 4;
+    /**
+     * Max count of a chess piece type and color
+     */
+    private static final int MAX_COUNT = 3;
+
+    /**
+     * Static methods only
+     */
+    private Material() {
+    }
+
+    /**
+     * Get the material key of a game
+     *
+     * @param game The game
+     * @return The key, {@link #UNSUPPORTED} if more than 3 chess pieces of a type
+     */
+    public static int of(Game game) {
+        int key = 0;
+        for (Game.ChessColor color : COLORS) {
+            for (int t = 0; t < TYPES.length; t++) {
+                int count = Long.bitCount(game.getChessPieceBoard(TYPES[t], color));
+                if (count > MAX_COUNT) {
+                    return UNSUPPORTED;
+                }
+                key |= count << shift(color, t);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Parse a signature such as "KQvKR"
+     *
+     * @param name The signature, white then black pieces separated by 'v'
+     * @return The key
+     * @throws IllegalArgumentException If invalid signature
+     */
+    public static int parse(String name) throws IllegalArgumentException {
+        int separator = name.indexOf('v');
+        if (separator < 1 || name.charAt(0) != 'K' || separator + 1 >= name.length() || name.charAt(separator + 1) != 'K') {
+            throw new IllegalArgumentException("Invalid material: " + name);
+        }
+        int key = 0;
+        for (int i = 1; i < name.length(); i++) {
+            if (i == separator || i == separator + 1) {
+                continue;
+            }
+            Game.ChessColor color = i < separator ? Game.ChessColor.WHITE : Game.ChessColor.BLACK;
+            int t = typeIndex(Character.toLowerCase(name.charAt(i)));
+            if (t < 0 || count(key, color, t) == MAX_COUNT) {
+                throw new IllegalArgumentException("Invalid material: " + name);
+            }
+            key += 1 << shift(color, t);
+        }
+        return key;
+    }
+
+    /**
+     * Get the signature name of a key
+     *
+     * @param key The key
+     * @return The name, for example "KQvKR"
+     */
+    public static String toString(int key) {
+        StringBuilder name = new StringBuilder("K");
+        for (Game.ChessColor color : new Game.ChessColor[]{Game.ChessColor.WHITE, Game.ChessColor.BLACK}) {
+            if (color == Game.ChessColor.BLACK) {
+                name.append("vK");
+            }
+            for (int t = 0; t < TYPES.length; t++) {
+                for (int i = 0; i < count(key, color, t); i++) {
+                    name.append(Character.toUpperCase(TYPES[t].getSymbol()));
+                }
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Get the number of chess pieces of a type and color
+     *
+     * @param key   The key
+     * @param color The color
+     * @param t     The type index in {@link #TYPES}
+     * @return The count
+     */
+    static int count(int key, Game.ChessColor color, int t) {
+        return (key >>> shift(color, t)) & MAX_COUNT;
+    }
+
+    /**
+     * Get the number of chess pieces, kings included
+     *
+     * @param key The key
+     * @return The count
+     */
+    public static int pieceCount(int key) {
+        int count = 2;
+        for (Game.ChessColor color : COLORS) {
+            for (int t = 0; t < TYPES.length; t++) {
+                count += count(key, color, t);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Swap the colors of a key
+     *
+     * @param key The key
+     * @return The key with white and black exchanged
+     */
+    public static int flip(int key) {
+        int flipped = 0;
+        for (Game.ChessColor color : COLORS) {
+            for (int t = 0; t < TYPES.length; t++) {
+                flipped |= count(key, color, t) << shift(color.getOpponent(), t);
+            }
+        }
+        return flipped;
+    }
+
+    /**
+     * Check if a key has pawns
+     *
+     * @param key The key
+     * @return true if at least one pawn
+     */
+    public static boolean hasPawns(int key) {
+        return count(key, Game.ChessColor.WHITE, PAWN) + count(key, Game.ChessColor.BLACK, PAWN) > 0;
+    }
+
+    /**
+     * Get the orientation of a key stored in the tablebases : the stronger side is white
+     *
+     * @param key The key
+     * @return The key or its flip
+     */
+    public static int canonical(int key) {
+        int flipped = flip(key);
+        long strength = strength(key, Game.ChessColor.WHITE) - strength(key, Game.ChessColor.BLACK);
+        if (strength != 0) {
+            return strength > 0 ? key : flipped;
+        }
+        return Math.max(key, flipped);
+    }
+
+    /**
+     * Get the material value of a side
+     *
+     * @param key   The key
+     * @param color The side
+     * @return The value
+     */
+    private static int strength(int key, Game.ChessColor color) {
+        int strength = 0;
+        for (int t = 0; t < TYPES.length; t++) {
+            strength += count(key, color, t) * VALUES[t];
+        }
+        return strength;
+    }
+
+    /**
+     * Get the key with one chess piece less
+     *
+     * @param key   The key
+     * @param color The captured chess piece color
+     * @param t     The captured chess piece type index in {@link #TYPES}
+     * @return The key after the capture
+     */
+    static int remove(int key, Game.ChessColor color, int t) {
+        return key - (1 << shift(color, t));
+    }
+
+    /**
+     * Get the key after a promotion
+     *
+     * @param key   The key
+     * @param color The pawn color
+     * @param t     The promotion type index in {@link #TYPES}
+     * @return The key with the pawn replaced
+     */
+    static int promote(int key, Game.ChessColor color, int t) {
+        return remove(key, color, PAWN) + (1 << shift(color, t));
+    }
+
+    /**
+     * Get the bit shift of a type and color count
+     *
+     * @param color The color
+     * @param t     The type index in {@link #TYPES}
+     * @return The shift
+     */
+    private static int shift(Game.ChessColor color, int t) {
+        if (t == PAWN) {
+            return 2 * (2 * PAWN + color.ordinal());
+        }
+        return 2 * (color.ordinal() * PAWN + t);
+    }
+
+    /**
+     * Get the index of a type symbol
+     *
+     * @param symbol The lower case symbol
+     * @return The index in {@link #TYPES}, -1 if not a non-king type
+     */
+    private static int typeIndex(char symbol) {
+        for (int t = 0; t < TYPES.length; t++) {
+            if (TYPES[t].getSymbol() == symbol) {
+                return t;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,175 @@
+package fr.romainguilbeau.chess.tablebase;
+
+import fr.romainguilbeau.chess.models.game.Game;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory mapped tablebase of one material signature : one bit-packed value per position (see
+ * {@link Tablebases#probe(Game)} for the values)
+ * <p>
+ * Format (big endian) : magic, version, bits per value, max value, material key, number of positions (long), reserved
+ * bytes up to {@link #HEADER_SIZE}, then the values packed most significant bit first, then 4 padding bytes.
+ */
+public class Tablebase {
+
+    /**
+     * File magic ("CHTB")
+     */
+    private static final int MAGIC = 0x43485442;
+    /**
+     * Format version
+     */
+    private static final short VERSION = 1;
+    /**
+     * Header size, the values follow
+     */
+    private static final int HEADER_SIZE = 32;
+    /**
+     * Tablebase file extension
+     */
+    static final String EXTENSION = ".ctb";
+
+    /**
+     * Position index
+     */
+    private final TablebaseIndex index;
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer data;
+    /**
+     * Bits per value
+     */
+    private final int bits;
+    /**
+     * Mask of a value
+     */
+    private final int mask;
+
+    /**
+     * Create new tablebase
+     *
+     * @param index Position index
+     * @param data  The mapped file
+     * @param bits  Bits per value
+     */
+    private Tablebase(TablebaseIndex index, MappedByteBuffer data, int bits) {
+        this.index = index;
+        this.data = data;
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Map a tablebase file (the mapping is released by the garbage collector)
+     *
+     * @param path The file path
+     * @return The tablebase
+     * @throws IOException If the file cannot be read or is not a tablebase
+     */
+    public static Tablebase open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Not a tablebase: " + path);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (data.getInt(0) != MAGIC || data.getShort(4) != VERSION) {
+                throw new IOException("Not a tablebase: " + path);
+            }
+            int bits = data.get(6);
+            TablebaseIndex index = new TablebaseIndex(data.getInt(8));
+            if (bits < 1 || bits > 8 || data.getLong(12) != index.size
+                    || fileSize != HEADER_SIZE + (index.size * bits + 7) / 8 + 4) {
+                throw new IOException("Corrupted tablebase: " + path);
+            }
+            return new Tablebase(index, data, bits);
+        }
+    }
+
+    /**
+     * Write a tablebase file
+     *
+     * @param path     The file path
+     * @param index    Position index
+     * @param values   The value of each position
+     * @param maxValue The max value
+     * @throws IOException If the file cannot be written
+     */
+    static void write(Path path, TablebaseIndex index, byte[] values, int maxValue) throws IOException {
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024))) {
+            output.writeInt(MAGIC);
+            output.writeShort(VERSION);
+            output.writeByte(bits);
+            output.writeByte(maxValue);
+            output.writeInt(index.key);
+            output.writeLong(index.size);
+            output.write(new byte[HEADER_SIZE - 20]);
+
+            long buffer = 0L;
+            int buffered = 0;
+            for (long i = 0; i < index.size; i++) {
+                buffer = buffer << bits | (values[(int) i] & 0xFF);
+                buffered += bits;
+                if (buffered >= 8) {
+                    buffered -= 8;
+                    output.writeByte((int) (buffer >>> buffered));
+                }
+            }
+            if (buffered > 0) {
+                output.writeByte((int) (buffer << (8 - buffered)));
+            }
+            output.writeInt(0);
+        }
+    }
+
+    /**
+     * Get the value of a game position
+     *
+     * @param game    The game, with the material of the tablebase (or its flip)
+     * @param flipped true if the game colors are the flip of the tablebase colors
+     * @return The value
+     */
+    int probe(Game game, boolean flipped) {
+        return get(index.index(game, flipped));
+    }
+
+    /**
+     * Get the value of a position
+     *
+     * @param position The position index
+     * @return The value
+     */
+    int get(long position) {
+        long bit = position * bits;
+        int word = data.getInt(HEADER_SIZE + (int) (bit >>> 3));
+        return (word >>> (32 - bits - (int) (bit & 7))) & mask;
+    }
+
+    /**
+     * Get the material key
+     *
+     * @return The key
+     */
+    public int getKey() {
+        return index.key;
+    }
+
+    /**
+     * Get the number of chess pieces, kings included
+     *
+     * @return The count
+     */
+    public int getPieceCount() {
+        return index.types.length;
+    }
+}
@@ -0,0 +1,668 @@
+package fr.romainguilbeau.chess.tablebase;
+
+import fr.romainguilbeau.chess.models.chesspieces.ChessPieceType;
+import fr.romainguilbeau.chess.models.chesspieces.King;
+import fr.romainguilbeau.chess.models.chesspieces.Knight;
+import fr.romainguilbeau.chess.models.chesspieces.MagicBitboards;
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retrograde analysis of endgames of 3 to 5 chess pieces, with the rules of {@link Game}
+ * <p>
+ * The positions are solved by increasing distance to mate : checkmates first, then at each level the positions
+ * that may have changed (the un-moves of the positions solved at the previous level, and the positions whose
+ * conversions, captures and promotions, lead to a solved position of that level in another tablebase) are evaluated
+ * again from their legal moves. The positions still unsolved at the end are draws. Each level is spread over the
+ * threads by chunks of positions, the tablebases reached by a conversion are generated first.
+ * <p>
+ * A double pawn push that gives an en passant capture leads to the same position without the right, unless the
+ * capture is better : such positions are evaluated again at every level.
+ * <p>
+ * The generation holds 4 bytes per position : about 21 MB for 4 chess pieces, 1.3 GB for 5 without pawns and up to
+ * 3.2 GB with pawns.
+ * <p>
+ * Usage : {@code TablebaseGenerator <directory> <material>... [--threads n]}, for example "KQvKR"
+ */
+public class TablebaseGenerator {
+
+    /**
+     * Max number of chess pieces, kings included
+     */
+    public static final int MAX_PIECES = 5;
+    /**
+     * Code of an unsolved position (draw at the end)
+     */
+    private static final byte UNSOLVED = 0;
+    /**
+     * Code of a stalemate or of an illegal position
+     */
+    private static final byte FIXED = 1;
+    /**
+     * Code of a solved position, plus its distance to mate in plies
+     */
+    private static final int SOLVED = 2;
+    /**
+     * Max distance to mate (a code fits in a byte)
+     */
+    private static final int MAX_DISTANCE = 0xFF - SOLVED;
+    /**
+     * Positions per parallel task
+     */
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    /**
+     * Tablebase files directory
+     */
+    private final Path directory;
+    /**
+     * Tablebases already generated or loaded
+     */
+    private final Tablebases tablebases;
+    /**
+     * Number of threads
+     */
+    private final int threads;
+
+    /**
+     * Create new tablebase generator
+     *
+     * @param directory Tablebase files directory (the existing tablebases are loaded)
+     * @param threads   Number of threads
+     * @throws IOException If the directory cannot be read
+     */
+    public TablebaseGenerator(Path directory, int threads) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.tablebases = Tablebases.open(directory);
+        this.threads = threads;
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args See the class documentation
+     * @throws Exception If a tablebase cannot be generated
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> materials = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                materials.add(args[i]);
+            }
+        }
+        if (args.length < 2 || materials.isEmpty()) {
+            System.err.println("Usage: TablebaseGenerator <directory> <material>... [--threads n]");
+            System.exit(2);
+        }
+
+        TablebaseGenerator generator = new TablebaseGenerator(Paths.get(args[0]), threads);
+        for (String material : materials) {
+            generator.generate(Material.parse(material));
+        }
+    }
+
+    /**
+     * Generate the tablebase of a material and the missing smaller ones (existing files are kept)
+     *
+     * @param key The material key (any color orientation)
+     * @return The tablebases
+     * @throws IOException              If a file cannot be written
+     * @throws IllegalArgumentException If more than 5 chess pieces
+     */
+    public Tablebases generate(int key) throws IOException, IllegalArgumentException {
+        int pieces = Material.pieceCount(key);
+        if (pieces > MAX_PIECES) {
+            throw new IllegalArgumentException("At most " + MAX_PIECES + " chess pieces: " + Material.toString(key));
+        }
+        key = Material.canonical(key);
+        if (tablebases.contains(key)) {
+            return tablebases;
+        }
+
+        for (Game.ChessColor color : Material.COLORS) {
+            for (int t = 0; t < Material.TYPES.length; t++) {
+                if (Material.count(key, color, t) > 0) {
+                    generate(Material.remove(key, color, t));
+                }
+            }
+            if (Material.count(key, color, Material.PAWN) > 0) {
+                for (int t = 0; t < Material.PAWN; t++) {
+                    if (Material.count(key, color, t) < 3) {
+                        generate(Material.promote(key, color, t));
+                    }
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        TablebaseIndex index = new TablebaseIndex(key);
+        Generation generation = new Generation(index);
+        int maxValue = generation.run();
+        Path path = directory.resolve(Material.toString(key) + Tablebase.EXTENSION);
+        Tablebase.write(path, index, generation.codes, maxValue);
+        tablebases.add(Tablebase.open(path));
+
+        System.out.printf("%s : %d positions, longest mate %d plies, %.1f s, %d bytes%n", Material.toString(key), index.size,
+                Math.max(0, maxValue - 1), (System.nanoTime() - start) / 1e9, Files.size(path));
+        return tablebases;
+    }
+
+    /**
+     * Get the tablebases already generated or loaded
+     *
+     * @return The tablebases
+     */
+    public Tablebases getTablebases() {
+        return tablebases;
+    }
+
+    /**
+     * Generation state of one tablebase
+     */
+    private class Generation {
+
+        /**
+         * Position index
+         */
+        private final TablebaseIndex index;
+        /**
+         * Code of each position (unsolved, fixed, or solved plus distance)
+         */
+        private final byte[] codes;
+        /**
+         * Level where a conversion gives a win (0 if none)
+         */
+        private final byte[] captureWinLevels;
+        /**
+         * Level where the conversion that loses the slowest is solved (0 if none)
+         */
+        private final byte[] captureLossLevels;
+        /**
+         * Positions with a double pawn push giving an en passant capture, one bit each (a word is only written by the
+         * thread of its chunk)
+         */
+        private final long[] enPassantParents;
+        /**
+         * Last level where each position was a candidate
+         */
+        private final byte[] marks;
+        /**
+         * Max capture level
+         */
+        private final AtomicLong maxCaptureLevel;
+        /**
+         * Worker state of each thread
+         */
+        private final ThreadLocal<Worker> workers;
+
+        /**
+         * Create new generation
+         *
+         * @param index Position index
+         */
+        Generation(TablebaseIndex index) {
+            if (index.size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Tablebase too large: " + Material.toString(index.key));
+            }
+            int size = (int) index.size;
+            this.index = index;
+            this.codes = new byte[size];
+            this.captureWinLevels = new byte[size];
+            this.captureLossLevels = new byte[size];
+            this.marks = new byte[size];
+            this.enPassantParents = new long[(size + 63) >>> 6];
+            this.maxCaptureLevel = new AtomicLong();
+            this.workers = ThreadLocal.withInitial(() -> new Worker(index.types.length));
+        }
+
+        /**
+         * Solve all the positions, the codes are then replaced by the final values
+         *
+         * @return The max value
+         */
+        int run() {
+            ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "tablebase");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                long solved = parallel(executor, this::initialize);
+                long previousSolved = solved;
+                for (int level = 1; ; level++) {
+                    if (level > MAX_DISTANCE) {
+                        throw new IllegalStateException("Distance to mate above " + MAX_DISTANCE + " plies");
+                    }
+                    int markLevel = level;
+                    parallel(executor, position -> {
+                        mark(position, markLevel);
+                        return false;
+                    });
+                    solved = parallel(executor, position -> (marks[position] & 0xFF) == markLevel && codes[position] == UNSOLVED
+                            && solve(position, markLevel));
+                    if (solved == 0 && previousSolved == 0 && level > maxCaptureLevel.get()) {
+                        break;
+                    }
+                    previousSolved = solved;
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            int maxValue = 0;
+            for (int i = 0; i < codes.length; i++) {
+                int code = codes[i] & 0xFF;
+                int value = code >= SOLVED ? code - SOLVED + 1 : Tablebases.DRAW;
+                codes[i] = (byte) value;
+                maxValue = Math.max(maxValue, value);
+            }
+            return maxValue;
+        }
+
+        /**
+         * Run a task on every position, by chunks on all the threads
+         *
+         * @param executor The threads
+         * @param task     The task, returns true to count the position
+         * @return The number of counted positions
+         */
+        private long parallel(ExecutorService executor, PositionTask task) {
+            AtomicLong nextChunk = new AtomicLong();
+            AtomicLong count = new AtomicLong();
+            long chunks = (codes.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    long chunk;
+                    while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                        int end = (int) Math.min(codes.length, (chunk + 1) * CHUNK_SIZE);
+                        long chunkCount = 0;
+                        for (int position = (int) (chunk * CHUNK_SIZE); position < end; position++) {
+                            if (task.run(position)) {
+                                chunkCount++;
+                            }
+                        }
+                        count.addAndGet(chunkCount);
+                    }
+                }));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Generation interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Generation failed", e.getCause());
+            }
+            return count.get();
+        }
+
+        /**
+         * Find the illegal positions, the checkmates, the stalemates and the conversion levels of a position
+         *
+         * @param position The position index
+         * @return true if checkmate
+         */
+        private boolean initialize(int position) {
+            Worker worker = workers.get();
+            Game game = worker.game;
+            if (!worker.setUp(index, position)) {
+                codes[position] = FIXED;
+                return false;
+            }
+            Game.ChessColor color = game.getColorTurn();
+            if (game.isInCheck(color.getOpponent())) {
+                codes[position] = FIXED;
+                return false;
+            }
+
+            MoveList moves = worker.moves;
+            game.generateMoves(moves);
+            int legalMoves = 0;
+            int winLevel = Integer.MAX_VALUE;
+            int lossLevel = 0;
+            boolean drawCapture = false;
+            for (int i = 0; i < moves.size(); i++) {
+                int move = moves.get(i);
+                game.makeMove(move);
+                if (!game.isInCheck(color)) {
+                    legalMoves++;
+                    if (Move.getFlags(move) == Move.DOUBLE_PAWN_PUSH) {
+                        int value = enPassantValue(worker);
+                        if (value != Tablebases.UNKNOWN) {
+                            enPassantParents[position >>> 6] |= 1L << position;
+                            if (value != Tablebases.DRAW) {
+                                checkLevel(value);
+                            }
+                        }
+                    } else if (Move.isCapture(move) || Move.isPromotion(move)) {
+                        int value = probe(game);
+                        // Child value : its distance to mate plus one, so our level is the value itself
+                        if (Tablebases.isLoss(value)) {
+                            winLevel = Math.min(winLevel, value);
+                        } else if (Tablebases.isWin(value)) {
+                            lossLevel = Math.max(lossLevel, value);
+                        } else {
+                            drawCapture = true;
+                        }
+                    }
+                }
+                game.unmakeMove();
+            }
+
+            if (legalMoves == 0) {
+                codes[position] = game.isInCheck(color) ? SOLVED : FIXED;
+                return codes[position] == SOLVED;
+            }
+            if (winLevel != Integer.MAX_VALUE) {
+                captureWinLevels[position] = (byte) checkLevel(winLevel);
+            }
+            if (lossLevel > 0 && !drawCapture) {
+                captureLossLevels[position] = (byte) checkLevel(lossLevel);
+            }
+            return false;
+        }
+
+        /**
+         * Probe a position of another tablebase
+         *
+         * @param game The game
+         * @return The value
+         * @throws IllegalStateException If the tablebase is missing
+         */
+        private int probe(Game game) throws IllegalStateException {
+            int value = tablebases.probe(game);
+            if (value == Tablebases.UNKNOWN) {
+                throw new IllegalStateException("Missing tablebase " + Material.toString(Material.of(game)));
+            }
+            return value;
+        }
+
+        /**
+         * Get the value of the en passant captures of a position just reached by a double pawn push
+         *
+         * @param worker The worker, whose game is on the position
+         * @return The best value of the captures for the side to move, {@link Tablebases#UNKNOWN} if none
+         */
+        private int enPassantValue(Worker worker) {
+            Game game = worker.game;
+            MoveList replies = worker.replies;
+            game.generateLegalMoves(replies);
+            int value = Tablebases.UNKNOWN;
+            for (int i = 0; i < replies.size(); i++) {
+                int reply = replies.get(i);
+                if (Move.getFlags(reply) == Move.EN_PASSANT) {
+                    game.makeMove(reply);
+                    int captureValue = probe(game);
+                    game.unmakeMove();
+                    // Value of the capture for the side to move before it
+                    captureValue = captureValue == Tablebases.DRAW ? Tablebases.DRAW : captureValue + 1;
+                    value = value == Tablebases.UNKNOWN ? captureValue : best(value, captureValue);
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Check a capture level and keep the max one
+         *
+         * @param level The level
+         * @return The level
+         */
+        private int checkLevel(int level) {
+            if (level > MAX_DISTANCE) {
+                throw new IllegalStateException("Distance to mate above " + MAX_DISTANCE + " plies");
+            }
+            maxCaptureLevel.accumulateAndGet(level, Math::max);
+            return level;
+        }
+
+        /**
+         * Mark the candidates of a level : the un-moves of a position solved at the previous level, and the position
+         * itself if one of its conversion levels is reached or if it has an en passant child
+         *
+         * @param position The position index
+         * @param level    The level
+         */
+        private void mark(int position, int level) {
+            if ((captureWinLevels[position] & 0xFF) == level || (captureLossLevels[position] & 0xFF) == level
+                    || (enPassantParents[position >>> 6] & 1L << position) != 0) {
+                marks[position] = (byte) level;
+            }
+            if ((codes[position] & 0xFF) != SOLVED + level - 1) {
+                return;
+            }
+
+            Worker worker = workers.get();
+            int[] squares = worker.squares;
+            boolean whiteToMove = index.decode(position, squares);
+            Game.ChessColor mover = whiteToMove ? Game.ChessColor.BLACK : Game.ChessColor.WHITE;
+            long occupancy = 0L;
+            for (int square : squares) {
+                occupancy |= 1L << square;
+            }
+
+            // The previous move was played by the other side, without conversion (it changes the material)
+            for (int slot = 0; slot < squares.length; slot++) {
+                if (index.colors[slot] != mover) {
+                    continue;
+                }
+                int square = squares[slot];
+                long origins = index.types[slot] == ChessPieceType.PAWN
+                        ? pawnOrigins(mover, square, occupancy)
+                        : attacks(index.types[slot], square, occupancy) & ~occupancy;
+                while (origins != 0) {
+                    squares[slot] = Long.numberOfTrailingZeros(origins);
+                    origins &= origins - 1;
+                    marks[(int) index.index(!whiteToMove, squares)] = (byte) level;
+                    long mirror = index.diagonalMirrorIndex(!whiteToMove, squares);
+                    if (mirror >= 0) {
+                        marks[(int) mirror] = (byte) level;
+                    }
+                }
+                squares[slot] = square;
+            }
+        }
+
+        /**
+         * Evaluate a candidate position from its legal moves
+         *
+         * @param position The position index
+         * @param level    The level : odd levels look for a win, even levels for a loss
+         * @return true if solved at this level
+         */
+        private boolean solve(int position, int level) {
+            Worker worker = workers.get();
+            Game game = worker.game;
+            worker.setUp(index, position);
+            Game.ChessColor color = game.getColorTurn();
+            boolean win = (level & 1) == 1;
+
+            MoveList moves = worker.moves;
+            game.generateMoves(moves);
+            boolean solved = !win;
+            for (int i = 0; i < moves.size(); i++) {
+                int move = moves.get(i);
+                game.makeMove(move);
+                if (!game.isInCheck(color)) {
+                    int value;
+                    if (Move.isCapture(move) || Move.isPromotion(move)) {
+                        value = tablebases.probe(game);
+                    } else {
+                        int code = codes[(int) index.index(game, false)] & 0xFF;
+                        value = code >= SOLVED ? code - SOLVED + 1 : Tablebases.DRAW;
+                        if (Move.getFlags(move) == Move.DOUBLE_PAWN_PUSH) {
+                            int captureValue = enPassantValue(worker);
+                            if (captureValue != Tablebases.UNKNOWN) {
+                                value = best(value, captureValue);
+                            }
+                        }
+                    }
+                    if (win && Tablebases.isLoss(value) && value == level) {
+                        solved = true;
+                    } else if (!win && !(Tablebases.isWin(value) && value <= level)) {
+                        solved = false;
+                    }
+                }
+                game.unmakeMove();
+                if (solved == win) {
+                    break;
+                }
+            }
+            if (solved) {
+                codes[position] = (byte) (SOLVED + level);
+            }
+            return solved;
+        }
+    }
+
+    /**
+     * Get the better of two values for the side to move
+     *
+     * @param value The first value
+     * @param other The second value
+     * @return The better value
+     */
+    private static int best(int value, int other) {
+        return Tablebases.rank(other) < Tablebases.rank(value) ? other : value;
+    }
+
+    /**
+     * Get the squares a pawn can come from without capture
+     *
+     * @param color     The pawn color
+     * @param square    The pawn square
+     * @param occupancy The occupied squares
+     * @return The empty squares one push behind, and two pushes from the initial rank
+     */
+    private static long pawnOrigins(Game.ChessColor color, int square, long occupancy) {
+        // White pawns move toward the rank 8, that is toward the low square indexes
+        int forward = color == Game.ChessColor.WHITE ? -8 : 8;
+        int origin = square - forward;
+        int firstRow = color == Game.ChessColor.WHITE ? 7 : 0;
+        if ((origin >>> 3) == firstRow || (occupancy & 1L << origin) != 0) {
+            return 0L;
+        }
+        long origins = 1L << origin;
+        int doubleOrigin = origin - forward;
+        if ((doubleOrigin >>> 3) == firstRow + forward / 8 && (occupancy & 1L << doubleOrigin) == 0) {
+            origins |= 1L << doubleOrigin;
+        }
+        return origins;
+    }
+
+    /**
+     * Get the squares attacked by a chess piece (pawns excluded)
+     *
+     * @param type      The chess piece type
+     * @param square    The chess piece square
+     * @param occupancy The occupied squares
+     * @return The attacked squares
+     */
+    private static long attacks(ChessPieceType type, int square, long occupancy) {
+        switch (type) {
+            case KNIGHT:
+                return Knight.attacks(square);
+            case BISHOP:
+                return MagicBitboards.bishopAttacks(square, occupancy);
+            case ROOK:
+                return MagicBitboards.rookAttacks(square, occupancy);
+            case QUEEN:
+                return MagicBitboards.queenAttacks(square, occupancy);
+            default:
+                return King.attacks(square);
+        }
+    }
+
+    /**
+     * Task run on one position
+     */
+    @FunctionalInterface
+    private interface PositionTask {
+
+        /**
+         * Run the task
+         *
+         * @param position The position index
+         * @return true to count the position
+         */
+        boolean run(int position);
+    }
+
+    /**
+     * Reusable state of a generation thread
+     */
+    private static class Worker {
+
+        /**
+         * Game used to play the positions
+         */
+        private final Game game;
+        /**
+         * Move list
+         */
+        private final MoveList moves;
+        /**
+         * Move list of the replies to a move
+         */
+        private final MoveList replies;
+        /**
+         * Square of each slot
+         */
+        private final int[] squares;
+
+        /**
+         * Create new worker
+         *
+         * @param pieces Number of chess pieces
+         */
+        Worker(int pieces) {
+            this.game = new Game();
+            this.moves = new MoveList();
+            this.replies = new MoveList();
+            this.squares = new int[pieces];
+        }
+
+        /**
+         * Set up the game on a position
+         *
+         * @param index    Position index
+         * @param position The position index
+         * @return false if two chess pieces share a square
+         */
+        boolean setUp(TablebaseIndex index, long position) {
+            boolean whiteToMove = index.decode(position, squares);
+            long occupancy = 0L;
+            for (int square : squares) {
+                if ((occupancy & 1L << square) != 0) {
+                    return false;
+                }
+                occupancy |= 1L << square;
+            }
+            game.clear(whiteToMove ? Game.ChessColor.WHITE : Game.ChessColor.BLACK);
+            for (int slot = 0; slot < squares.length; slot++) {
+                game.addChessPiece(squares[slot], index.types[slot], index.colors[slot]);
+            }
+            return true;
+        }
+    }
+}
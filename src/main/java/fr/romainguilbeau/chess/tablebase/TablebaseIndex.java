@@ -0,0 +1,286 @@
+package fr.romainguilbeau.chess.tablebase;
+
+import fr.romainguilbeau.chess.models.chesspieces.ChessPieceType;
+import fr.romainguilbeau.chess.models.game.Game;
+
+/**
+ * Position index of a material signature : side to move, white king square reduced by symmetry, then the other
+ * chess piece squares (one base 64 digit per slot, base 48 for the pawns that stay on the ranks 2 to 7)
+ * <p>
+ * Without pawns nor castling rights the board has 8 symmetries : the white king is moved to the a1-d1-d4 triangle
+ * (10 squares) by file, rank and diagonal flips, applied to all the chess pieces. The pawns only keep the file flip :
+ * the white king is then moved to the files a to d (32 squares). The en passant right is not indexed.
+ */
+final class TablebaseIndex {
+
+    /**
+     * Number of squares of the white king after symmetry
+     */
+    static final int KING_SQUARES = 10;
+    /**
+     * Number of squares of the white king after symmetry, with pawns
+     */
+    private static final int PAWN_KING_SQUARES = 32;
+    /**
+     * Number of squares of a pawn (ranks 2 to 7)
+     */
+    private static final int PAWN_SQUARES = 48;
+    /**
+     * First square of a pawn (a7)
+     */
+    private static final int FIRST_PAWN_SQUARE = 8;
+    /**
+     * Symmetry of each white king square : 1 = flip files, 2 = flip ranks, 4 = flip along the a1-h8 diagonal (applied
+     * in this order)
+     */
+    private static final int[] KING_SYMMETRIES = new int[64];
+    /**
+     * Index in the triangle of each square (-1 outside)
+     */
+    private static final int[] TRIANGLE_INDEXES = new int[64];
+    /**
+     * Squares of the triangle
+     */
+    static final int[] TRIANGLE_SQUARES = new int[KING_SQUARES];
+
+    static {
+        int count = 0;
+        for (int square = 0; square < 64; square++) {
+            int file = square & 7;
+            int rank = 7 - (square >>> 3);
+            int symmetry = 0;
+            if (file > 3) {
+                symmetry |= 1;
+                file = 7 - file;
+            }
+            if (rank > 3) {
+                symmetry |= 2;
+                rank = 7 - rank;
+            }
+            if (rank > file) {
+                symmetry |= 4;
+            }
+            KING_SYMMETRIES[square] = symmetry;
+            TRIANGLE_INDEXES[square] = symmetry == 0 ? count : -1;
+            if (symmetry == 0) {
+                TRIANGLE_SQUARES[count++] = square;
+            }
+        }
+    }
+
+    /**
+     * Material key
+     */
+    final int key;
+    /**
+     * Chess piece type of each slot
+     */
+    final ChessPieceType[] types;
+    /**
+     * Chess piece color of each slot
+     */
+    final Game.ChessColor[] colors;
+    /**
+     * true if pawns : file flip only
+     */
+    private final boolean pawns;
+    /**
+     * Number of squares of the white king after symmetry
+     */
+    private final int kingSquares;
+    /**
+     * Number of positions
+     */
+    final long size;
+
+    /**
+     * Create new tablebase index
+     *
+     * @param key Material key
+     */
+    TablebaseIndex(int key) {
+        int count = Material.pieceCount(key);
+        this.key = key;
+        this.types = new ChessPieceType[count];
+        this.colors = new Game.ChessColor[count];
+
+        types[0] = ChessPieceType.KING;
+        colors[0] = Game.ChessColor.WHITE;
+        types[1] = ChessPieceType.KING;
+        colors[1] = Game.ChessColor.BLACK;
+        int slot = 2;
+        for (Game.ChessColor color : new Game.ChessColor[]{Game.ChessColor.WHITE, Game.ChessColor.BLACK}) {
+            for (int t = 0; t < Material.TYPES.length; t++) {
+                for (int i = 0; i < Material.count(key, color, t); i++) {
+                    types[slot] = Material.TYPES[t];
+                    colors[slot++] = color;
+                }
+            }
+        }
+        this.pawns = Material.hasPawns(key);
+        this.kingSquares = pawns ? PAWN_KING_SQUARES : KING_SQUARES;
+        long size = 2L * kingSquares;
+        for (slot = 1; slot < count; slot++) {
+            size *= radix(slot);
+        }
+        this.size = size;
+    }
+
+    /**
+     * Get the index of a position
+     *
+     * @param whiteToMove true if white to move
+     * @param squares     The square of each slot (not modified)
+     * @return The index
+     */
+    long index(boolean whiteToMove, int[] squares) {
+        return index(whiteToMove, squares, symmetry(squares[0]));
+    }
+
+    /**
+     * Get the second index of a position whose white king is on the a1-h8 diagonal after symmetry : the position and
+     * its mirror along the diagonal are both indexed, and a probe may use either of them
+     *
+     * @param whiteToMove true if white to move
+     * @param squares     The square of each slot (not modified)
+     * @return The index of the mirror, -1 if the white king is not on the diagonal or if pawns
+     */
+    long diagonalMirrorIndex(boolean whiteToMove, int[] squares) {
+        if (pawns) {
+            return -1;
+        }
+        int symmetry = KING_SYMMETRIES[squares[0]];
+        int king = transform(squares[0], symmetry);
+        if ((king & 7) != 7 - (king >>> 3)) {
+            return -1;
+        }
+        return index(whiteToMove, squares, symmetry ^ 4);
+    }
+
+    /**
+     * Get the index of a position with a given symmetry
+     *
+     * @param whiteToMove true if white to move
+     * @param squares     The square of each slot (not modified)
+     * @param symmetry    The symmetry (see {@link #KING_SYMMETRIES})
+     * @return The index
+     */
+    private long index(boolean whiteToMove, int[] squares, int symmetry) {
+        long index = kingIndex(whiteToMove, transform(squares[0], symmetry));
+        for (int slot = 1; slot < types.length; slot++) {
+            index = index * radix(slot) + digit(slot, transform(squares[slot], symmetry));
+        }
+        return index;
+    }
+
+    /**
+     * Get the index of a game position (no allocation)
+     *
+     * @param game    The game, with this material (or its flip)
+     * @param flipped true if the game colors are the flip of the index colors
+     * @return The index
+     */
+    long index(Game game, boolean flipped) {
+        int flip = flipped ? 56 : 0;
+        long board = 0L;
+        int symmetry = 0;
+        long index = 0L;
+        for (int slot = 0; slot < types.length; slot++) {
+            if (slot == 0 || types[slot] != types[slot - 1] || colors[slot] != colors[slot - 1]) {
+                board = game.getChessPieceBoard(types[slot], flipped ? colors[slot].getOpponent() : colors[slot]);
+            }
+            int square = Long.numberOfTrailingZeros(board) ^ flip;
+            board &= board - 1;
+            if (slot == 0) {
+                symmetry = symmetry(square);
+                boolean whiteToMove = (game.getColorTurn() == Game.ChessColor.WHITE) != flipped;
+                index = kingIndex(whiteToMove, transform(square, symmetry));
+            } else {
+                index = index * radix(slot) + digit(slot, transform(square, symmetry));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Get the position of an index
+     *
+     * @param index   The index
+     * @param squares Receives the square of each slot
+     * @return true if white to move
+     */
+    boolean decode(long index, int[] squares) {
+        for (int slot = types.length - 1; slot > 0; slot--) {
+            int radix = radix(slot);
+            int digit = (int) (index % radix);
+            squares[slot] = types[slot] == ChessPieceType.PAWN ? digit + FIRST_PAWN_SQUARE : digit;
+            index /= radix;
+        }
+        int king = (int) (index % kingSquares);
+        squares[0] = pawns ? (king >>> 2) * 8 + (king & 3) : TRIANGLE_SQUARES[king];
+        return index >= kingSquares;
+    }
+
+    /**
+     * Get the symmetry of a white king square
+     *
+     * @param square The white king square
+     * @return The symmetry (see {@link #KING_SYMMETRIES})
+     */
+    private int symmetry(int square) {
+        return pawns ? KING_SYMMETRIES[square] & 1 : KING_SYMMETRIES[square];
+    }
+
+    /**
+     * Get the first digit of an index
+     *
+     * @param whiteToMove true if white to move
+     * @param king        The white king square, after symmetry
+     * @return The digit
+     */
+    private long kingIndex(boolean whiteToMove, int king) {
+        int kingIndex = pawns ? (king >>> 3) * 4 + (king & 7) : TRIANGLE_INDEXES[king];
+        return (whiteToMove ? kingSquares : 0) + kingIndex;
+    }
+
+    /**
+     * Get the number of squares of a slot
+     *
+     * @param slot The slot (not the white king)
+     * @return 48 for a pawn, else 64
+     */
+    private int radix(int slot) {
+        return types[slot] == ChessPieceType.PAWN ? PAWN_SQUARES : 64;
+    }
+
+    /**
+     * Get the digit of a slot square
+     *
+     * @param slot   The slot (not the white king)
+     * @param square The square, after symmetry
+     * @return The digit
+     */
+    private int digit(int slot, int square) {
+        return types[slot] == ChessPieceType.PAWN ? square - FIRST_PAWN_SQUARE : square;
+    }
+
+    /**
+     * Apply a symmetry to a square
+     *
+     * @param square   The square index
+     * @param symmetry The symmetry (see {@link #KING_SYMMETRIES})
+     * @return The transformed square index
+     */
+    private static int transform(int square, int symmetry) {
+        if ((symmetry & 1) != 0) {
+            square ^= 7;
+        }
+        if ((symmetry & 2) != 0) {
+            square ^= 56;
+        }
+        if ((symmetry & 4) != 0) {
+            square = (7 - (square & 7)) * 8 + 7 - (square >>> 3);
+        }
+        return square;
+    }
+}
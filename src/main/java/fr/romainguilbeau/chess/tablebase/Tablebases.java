@@ -0,0 +1,215 @@
+package fr.romainguilbeau.chess.tablebase;
+
+import fr.romainguilbeau.chess.models.chesspieces.ChessPieceType;
+import fr.romainguilbeau.chess.models.chesspieces.Pawn;
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+import fr.romainguilbeau.chess.models.game.Pos;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Set of endgame tablebases : perfect play lookup by material signature
+ * <p>
+ * A probe returns {@link #UNKNOWN}, {@link #DRAW}, or the distance to mate in plies plus one : odd for a loss of the
+ * side to move (1 when checkmated), even for a win. The positions with castling rights or with an en passant capture
+ * are unknown. Probes allocate nothing and can run on several threads.
+ */
+public class Tablebases {
+
+    /**
+     * Value of the positions without tablebase
+     */
+    public static final int UNKNOWN = -1;
+    /**
+     * Value of the drawn positions
+     */
+    public static final int DRAW = 0;
+
+    /**
+     * Tablebase of each material key (null if none), flipped keys included
+     */
+    private final Tablebase[] tablebases;
+    /**
+     * true if the tablebase of a material key is stored with the colors swapped
+     */
+    private final boolean[] flipped;
+    /**
+     * Max number of chess pieces of the loaded tablebases
+     */
+    private int maxPieces;
+
+    /**
+     * Create new empty tablebase set
+     */
+    public Tablebases() {
+        this.tablebases = new Tablebase[Material.KEY_COUNT];
+        this.flipped = new boolean[Material.KEY_COUNT];
+        this.maxPieces = 2;
+    }
+
+    /**
+     * Load all the tablebase files of a directory
+     *
+     * @param directory The directory
+     * @return The tablebase set
+     * @throws IOException If a file cannot be read
+     */
+    public static Tablebases open(Path directory) throws IOException {
+        Tablebases tablebases = new Tablebases();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Tablebase.EXTENSION)) {
+            for (Path file : files) {
+                tablebases.add(Tablebase.open(file));
+            }
+        }
+        return tablebases;
+    }
+
+    /**
+     * Add a tablebase
+     *
+     * @param tablebase The tablebase
+     */
+    public synchronized void add(Tablebase tablebase) {
+        int key = tablebase.getKey();
+        int flippedKey = Material.flip(key);
+        tablebases[flippedKey] = tablebase;
+        flipped[flippedKey] = flippedKey != key;
+        tablebases[key] = tablebase;
+        flipped[key] = false;
+        maxPieces = Math.max(maxPieces, tablebase.getPieceCount());
+    }
+
+    /**
+     * Check if the tablebase of a material is loaded
+     *
+     * @param key The material key
+     * @return true if loaded (always true for the bare kings)
+     */
+    public boolean contains(int key) {
+        return key == 0 || (key != Material.UNSUPPORTED && tablebases[key] != null);
+    }
+
+    /**
+     * Get the max number of chess pieces of the loaded tablebases
+     *
+     * @return The count, kings included
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Get the value of a position
+     *
+     * @param game The game
+     * @return {@link #UNKNOWN}, {@link #DRAW} or the distance to mate in plies plus one
+     */
+    public int probe(Game game) {
+        if (game.getCastlingRights() != 0 || Long.bitCount(game.getOccupancy()) > maxPieces || canCaptureEnPassant(game)) {
+            return UNKNOWN;
+        }
+        int key = Material.of(game);
+        if (key == 0) {
+            return DRAW;
+        }
+        if (key == Material.UNSUPPORTED || tablebases[key] == null) {
+            return UNKNOWN;
+        }
+        return tablebases[key].probe(game, flipped[key]);
+    }
+
+    /**
+     * Check if the side to move can capture en passant (the tablebases do not index this right)
+     *
+     * @param game The game
+     * @return true if a pawn attacks the en passant square
+     */
+    private static boolean canCaptureEnPassant(Game game) {
+        int square = game.getEnPassantSquare();
+        Game.ChessColor color = game.getColorTurn();
+        return square != Pos.NO_SQUARE
+                && (Pawn.captures(color.getOpponent(), square) & game.getChessPieceBoard(ChessPieceType.PAWN, color)) != 0;
+    }
+
+    /**
+     * Get the best move of a position : the fastest mate, else a draw, else the longest resistance (the moves that
+     * give an en passant capture are skipped)
+     *
+     * @param game  The game
+     * @param moves A move list used while probing
+     * @return The encoded move, {@link Move#NONE} if unknown position or no legal move
+     */
+    public int bestMove(Game game, MoveList moves) {
+        if (probe(game) == UNKNOWN) {
+            return Move.NONE;
+        }
+        game.generateMoves(moves);
+        Game.ChessColor color = game.getColorTurn();
+        int bestMove = Move.NONE;
+        int bestRank = Integer.MIN_VALUE;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            game.makeMove(move);
+            int value = game.isInCheck(color) ? UNKNOWN : probe(game);
+            game.unmakeMove();
+            if (value == UNKNOWN) {
+                continue;
+            }
+            int rank = rank(value);
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestMove = move;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Rank a child position for the side that moved into it
+     *
+     * @param value The child value, for its side to move
+     * @return Higher is better for the mover
+     */
+    static int rank(int value) {
+        if (value == DRAW) {
+            return 0;
+        }
+        // Child lost : win, the faster the better. Child won : loss, the slower the better.
+        return isLoss(value) ? 1000 - value : value - 1000;
+    }
+
+    /**
+     * Check if a value is a win of the side to move
+     *
+     * @param value The probed value
+     * @return true if win
+     */
+    public static boolean isWin(int value) {
+        return value > DRAW && (value & 1) == 0;
+    }
+
+    /**
+     * Check if a value is a loss of the side to move
+     *
+     * @param value The probed value
+     * @return true if loss
+     */
+    public static boolean isLoss(int value) {
+        return value > DRAW && (value & 1) == 1;
+    }
+
+    /**
+     * Get the distance to mate of a decisive value
+     *
+     * @param value The probed value (win or loss)
+     * @return The number of plies to mate
+     */
+    public static int getDistanceToMate(int value) {
+        return value - 1;
+    }
+}
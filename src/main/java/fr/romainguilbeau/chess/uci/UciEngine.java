@@ -0,0 +1,419 @@
+package fr.romainguilbeau.chess.uci;
+
+import fr.romainguilbeau.chess.book.OpeningBook;
+import fr.romainguilbeau.chess.models.game.Game;
+import fr.romainguilbeau.chess.models.game.Move;
+import fr.romainguilbeau.chess.models.game.MoveList;
+import fr.romainguilbeau.chess.search.Search;
+import fr.romainguilbeau.chess.search.SearchResult;
+import fr.romainguilbeau.chess.search.SmpSearch;
+import fr.romainguilbeau.chess.search.TranspositionTable;
+import fr.romainguilbeau.chess.tablebase.Tablebases;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless engine speaking the UCI protocol over stdin / stdout (no JavaFX class is loaded)
+ * <p>
+ * Supported commands : uci, isready, setoption (Hash, Threads, Clear Hash, OwnBook, Book File, Tablebase Path), ucinewgame,
+ * position, go, stop, quit.
+ */
+public class UciEngine {
+
+    /**
+     * Engine name sent to the GUI
+     */
+    private static final String ENGINE_NAME = "CEFIM Chess";
+    /**
+     * Engine author sent to the GUI
+     */
+    private static final String ENGINE_AUTHOR = "Romain Guilbeau";
+    /**
+     * Default hash table size
+     */
+    private static final int DEFAULT_HASH_MEGABYTES = 16;
+    /**
+     * Max hash table size
+     */
+    private static final int MAX_HASH_MEGABYTES = 8192;
+    /**
+     * Max search threads
+     */
+    private static final int MAX_THREADS = 256;
+    /**
+     * Moves to go assumed when the GUI does not send movestogo
+     */
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    /**
+     * Time kept on the clock for the communication delays
+     */
+    private static final long MOVE_OVERHEAD_MILLIS = 50;
+
+    /**
+     * GUI commands
+     */
+    private final BufferedReader input;
+    /**
+     * Engine answers (shared with the search thread)
+     */
+    private final PrintStream output;
+    /**
+     * Hash table
+     */
+    private final TranspositionTable transpositionTable;
+    /**
+     * Search (recreated when the threads option changes)
+     */
+    private SmpSearch search;
+    /**
+     * Current position
+     */
+    private Game game;
+    /**
+     * Running search thread (null if idle)
+     */
+    private Thread searchThread;
+    /**
+     * Released by stop : ends an infinite search
+     */
+    private CountDownLatch stopSignal;
+    /**
+     * Opening book (null if none)
+     */
+    private OpeningBook openingBook;
+    /**
+     * true to play the book moves instead of searching
+     */
+    private boolean ownBook;
+    /**
+     * Move list of the book probes
+     */
+    private final MoveList bookMoves;
+    /**
+     * Endgame tablebases (null if none)
+     */
+    private Tablebases tablebases;
+
+    /**
+     * Create new UCI engine
+     *
+     * @param input  The GUI commands
+     * @param output The engine answers
+     */
+    public UciEngine(InputStream input, PrintStream output) {
+        this.input = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        this.output = output;
+        this.transpositionTable = new TranspositionTable(DEFAULT_HASH_MEGABYTES);
+        this.search = new SmpSearch(transpositionTable, 1);
+        this.game = new Game();
+        this.bookMoves = new MoveList();
+    }
+
+    /**
+     * Read and execute the commands until quit or end of input
+     *
+     * @throws IOException If the input cannot be read
+     */
+    public void run() throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            if (!execute(line.trim())) {
+                break;
+            }
+        }
+        stopSearch();
+        search.shutdown();
+    }
+
+    /**
+     * Execute one command
+     *
+     * @param line The command line
+     * @return false if quit
+     */
+    boolean execute(String line) {
+        String[] tokens = line.split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                send("id name " + ENGINE_NAME);
+                send("id author " + ENGINE_AUTHOR);
+                send("option name Hash type spin default " + DEFAULT_HASH_MEGABYTES + " min 1 max " + MAX_HASH_MEGABYTES);
+                send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                send("option name Clear Hash type button");
+                send("option name OwnBook type check default false");
+                send("option name Book File type string default <empty>");
+                send("option name Tablebase Path type string default <empty>");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "setoption":
+                stopSearch();
+                setOption(line);
+                break;
+            case "ucinewgame":
+                stopSearch();
+                transpositionTable.clear();
+                game = new Game();
+                break;
+            case "position":
+                stopSearch();
+                setPosition(tokens);
+                break;
+            case "go":
+                stopSearch();
+                try {
+                    go(tokens);
+                } catch (NumberFormatException e) {
+                    send("info string Invalid go command: " + line);
+                }
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                return false;
+            default:
+                // Unknown commands are ignored (UCI protocol)
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Change an option : "setoption name [name] value [value]"
+     *
+     * @param line The command line
+     */
+    private void setOption(String line) {
+        int nameIndex = line.indexOf(" name ");
+        if (nameIndex < 0) {
+            return;
+        }
+        int valueIndex = line.indexOf(" value ");
+        String name = (valueIndex < 0 ? line.substring(nameIndex + 6) : line.substring(nameIndex + 6, valueIndex)).trim();
+        String value = valueIndex < 0 ? "" : line.substring(valueIndex + 7).trim();
+
+        try {
+            if (name.equalsIgnoreCase("Hash")) {
+                transpositionTable.resize(Math.max(1, Math.min(Integer.parseInt(value), MAX_HASH_MEGABYTES)));
+            } else if (name.equalsIgnoreCase("Threads")) {
+                search.shutdown();
+                search = new SmpSearch(transpositionTable, Math.max(1, Math.min(Integer.parseInt(value), MAX_THREADS)));
+                search.setTablebases(tablebases);
+            } else if (name.equalsIgnoreCase("Clear Hash")) {
+                transpositionTable.clear();
+            } else if (name.equalsIgnoreCase("OwnBook")) {
+                ownBook = Boolean.parseBoolean(value);
+            } else if (name.equalsIgnoreCase("Book File")) {
+                openingBook = value.isEmpty() || value.equals("<empty>") ? null : OpeningBook.open(Paths.get(value));
+            } else if (name.equalsIgnoreCase("Tablebase Path")) {
+                tablebases = value.isEmpty() || value.equals("<empty>") ? null : Tablebases.open(Paths.get(value));
+                search.setTablebases(tablebases);
+            }
+        } catch (NumberFormatException e) {
+            send("info string Invalid value for " + name + ": " + value);
+        } catch (IOException e) {
+            send("info string Cannot open " + value + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Set the position : "position (startpos | fen [fen]) [moves [moves]]"
+     *
+     * @param tokens The command tokens
+     */
+    private void setPosition(String[] tokens) {
+        int movesIndex = tokens.length;
+        for (int i = 1; i < tokens.length; i++) {
+            if (tokens[i].equals("moves")) {
+                movesIndex = i;
+                break;
+            }
+        }
+
+        try {
+            if (tokens.length > 1 && tokens[1].equals("fen")) {
+                StringBuilder fen = new StringBuilder();
+                for (int i = 2; i < movesIndex; i++) {
+                    fen.append(tokens[i]).append(' ');
+                }
+                game = Game.fromFen(fen.toString());
+            } else {
+                game = new Game();
+            }
+        } catch (IllegalArgumentException e) {
+            send("info string " + e.getMessage());
+            return;
+        }
+
+        for (int i = movesIndex + 1; i < tokens.length; i++) {
+            int move = Move.fromUci(game, tokens[i]);
+            if (move == Move.NONE) {
+                send("info string Illegal move: " + tokens[i]);
+                return;
+            }
+            game.makeMove(move);
+        }
+    }
+
+    /**
+     * Start searching the current position in a background thread
+     * : "go [depth n] [movetime ms] [wtime ms] [btime ms] [winc ms] [binc ms] [movestogo n] [infinite]"
+     *
+     * @param tokens The command tokens
+     */
+    private void go(String[] tokens) {
+        int depth = Search.MAX_PLY - 1;
+        long moveTime = 0;
+        long time = 0;
+        long increment = 0;
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        boolean infinite = false;
+        boolean white = game.getColorTurn() == Game.ChessColor.WHITE;
+
+        for (int i = 1; i < tokens.length; i++) {
+            String value = i + 1 < tokens.length ? tokens[i + 1] : "0";
+            switch (tokens[i]) {
+                case "depth":
+                    depth = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "movetime":
+                    moveTime = Long.parseLong(value);
+                    break;
+                case "wtime":
+                case "btime":
+                    if (tokens[i].charAt(0) == (white ? 'w' : 'b')) {
+                        time = Long.parseLong(value);
+                    }
+                    break;
+                case "winc":
+                case "binc":
+                    if (tokens[i].charAt(0) == (white ? 'w' : 'b')) {
+                        increment = Long.parseLong(value);
+                    }
+                    break;
+                case "movestogo":
+                    movesToGo = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "infinite":
+                    infinite = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Book moves are played at once, except in analysis
+        if (ownBook && openingBook != null && !infinite) {
+            int bookMove = openingBook.probe(game, bookMoves);
+            if (bookMove != Move.NONE) {
+                send("info string book move");
+                send("bestmove " + Move.toUci(bookMove));
+                return;
+            }
+        }
+
+        long timeLimit = moveTime;
+        if (timeLimit == 0 && time > 0) {
+            timeLimit = time / movesToGo + increment * 3 / 4;
+            timeLimit = Math.max(1, Math.min(timeLimit, time - MOVE_OVERHEAD_MILLIS));
+        }
+
+        Game searchedGame = game.copy();
+        SmpSearch searchedBy = search;
+        int maxDepth = depth;
+        long maxTimeMillis = infinite ? 0 : timeLimit;
+        boolean waitStop = infinite;
+        CountDownLatch searchStopSignal = new CountDownLatch(1);
+        stopSignal = searchStopSignal;
+        searchedBy.resetStop();
+
+        searchThread = new Thread(() -> {
+            searchedBy.setIterationListener(this::sendInfo);
+            SearchResult result = searchedBy.search(searchedGame, maxDepth, maxTimeMillis);
+            searchedBy.setIterationListener(null);
+            // UCI : an infinite search never sends bestmove before stop
+            if (waitStop) {
+                try {
+                    searchStopSignal.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            send("bestmove " + (result == null || result.getBestMove() == Move.NONE ? "0000" : Move.toUci(result.getBestMove())));
+        }, "search");
+        searchThread.start();
+    }
+
+    /**
+     * Stop the running search and wait for its bestmove
+     */
+    private void stopSearch() {
+        if (searchThread == null) {
+            return;
+        }
+        stopSignal.countDown();
+        search.stop();
+        try {
+            searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+    }
+
+    /**
+     * Send the info line of a completed iteration
+     *
+     * @param result The iteration result
+     */
+    private void sendInfo(SearchResult result) {
+        StringBuilder info = new StringBuilder("info depth ").append(result.getDepth());
+        if (result.isMate()) {
+            info.append(" score mate ").append(result.getMateIn());
+        } else {
+            info.append(" score cp ").append(result.getScore());
+        }
+        long nodesPerSecond = result.getTimeMillis() == 0 ? 0 : result.getNodes() * 1000 / result.getTimeMillis();
+        info.append(" nodes ").append(result.getNodes())
+                .append(" nps ").append(nodesPerSecond)
+                .append(" time ").append(result.getTimeMillis())
+                .append(" hashfull ").append(transpositionTable.getHashFull())
+                .append(" pv");
+        for (int move : result.getPrincipalVariation()) {
+            info.append(' ').append(Move.toUci(move));
+        }
+        send(info.toString());
+    }
+
+    /**
+     * Send a line to the GUI
+     *
+     * @param line The line
+     */
+    private void send(String line) {
+        synchronized (output) {
+            output.println(line);
+            output.flush();
+        }
+    }
+
+    /**
+     * Headless entry point
+     *
+     * @param args (No args)
+     * @throws IOException If stdin cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        new UciEngine(System.in, System.out).run();
+    }
+}